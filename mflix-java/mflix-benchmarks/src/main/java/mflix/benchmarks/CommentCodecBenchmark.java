@@ -0,0 +1,87 @@
+package mflix.benchmarks;
+
+import com.mongodb.MongoClientSettings;
+import mflix.api.models.Comment;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.codecs.pojo.PojoCodecProvider;
+import org.bson.io.BasicOutputBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
+/**
+ * Encoding and decoding of Comment POJOs from raw BSON, using the same automatic POJO codec
+ * registry as CommentDao.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommentCodecBenchmark {
+
+    private Codec<Comment> commentCodec;
+    private List<byte[]> encodedComments;
+    private List<Comment> comments;
+
+    @Setup
+    public void setup() {
+        CodecRegistry pojoCodecRegistry =
+                fromRegistries(
+                        MongoClientSettings.getDefaultCodecRegistry(),
+                        fromProviders(PojoCodecProvider.builder().automatic(true).build()));
+        commentCodec = pojoCodecRegistry.get(Comment.class);
+        Codec<Document> documentCodec = pojoCodecRegistry.get(Document.class);
+
+        encodedComments = new ArrayList<>();
+        for (Document document : SampleDocuments.comments()) {
+            encodedComments.add(encode(documentCodec, document));
+        }
+        comments = new ArrayList<>();
+        for (byte[] bytes : encodedComments) {
+            comments.add(decode(bytes));
+        }
+    }
+
+    private static <T> byte[] encode(Codec<T> codec, T value) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            codec.encode(writer, value, EncoderContext.builder().build());
+        }
+        return buffer.toByteArray();
+    }
+
+    private Comment decode(byte[] bytes) {
+        try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bytes))) {
+            return commentCodec.decode(reader, DecoderContext.builder().build());
+        }
+    }
+
+    @Benchmark
+    public void decodeComments(Blackhole blackhole) {
+        for (byte[] bytes : encodedComments) {
+            blackhole.consume(decode(bytes));
+        }
+    }
+
+    @Benchmark
+    public void encodeComments(Blackhole blackhole) {
+        for (Comment comment : comments) {
+            blackhole.consume(encode(commentCodec, comment));
+        }
+    }
+}
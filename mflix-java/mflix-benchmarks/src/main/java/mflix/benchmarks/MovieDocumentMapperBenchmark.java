@@ -0,0 +1,42 @@
+package mflix.benchmarks;
+
+import mflix.api.daos.MovieDocumentMapper;
+import mflix.api.models.Movie;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Cost of mapping raw movie documents, as returned by the driver, into the Movie model. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MovieDocumentMapperBenchmark {
+
+    private List<Document> movies;
+
+    @Setup
+    public void setup() {
+        movies = SampleDocuments.movies();
+    }
+
+    @Benchmark
+    public void mapToMovie(Blackhole blackhole) {
+        for (Document document : movies) {
+            Movie movie = MovieDocumentMapper.mapToMovie(document);
+            blackhole.consume(movie);
+        }
+    }
+
+    @Benchmark
+    public void mapToMovieTitle(Blackhole blackhole) {
+        for (Document document : movies) {
+            blackhole.consume(MovieDocumentMapper.mapToMovieTitle(document));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package mflix.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mflix.api.daos.MovieDocumentMapper;
+import mflix.api.models.Movie;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON serialization of a page of movies, with the ObjectMapper configuration Spring MVC uses to
+ * write the api responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MovieJsonSerializationBenchmark {
+
+    @Param({"20"})
+    private int pageSize;
+
+    private ObjectMapper objectMapper;
+    private List<Movie> movies;
+
+    @Setup
+    public void setup() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        movies = new ArrayList<>();
+        for (Document document : SampleDocuments.repeat(SampleDocuments.movies(), pageSize)) {
+            movies.add(MovieDocumentMapper.mapToMovie(document));
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeMovies() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(movies);
+    }
+}
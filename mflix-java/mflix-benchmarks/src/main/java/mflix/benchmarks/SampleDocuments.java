@@ -0,0 +1,67 @@
+package mflix.benchmarks;
+
+import org.bson.Document;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads the sample_mflix documents bundled with the benchmarks. Each resource file holds one
+ * extended JSON document per line, as written by `mongoexport`, so benchmarks run without a
+ * database.
+ */
+public final class SampleDocuments {
+
+    private SampleDocuments() {
+    }
+
+    public static List<Document> movies() {
+        return load("/sample_mflix/movies.json");
+    }
+
+    public static List<Document> comments() {
+        return load("/sample_mflix/comments.json");
+    }
+
+    /**
+     * Repeats the loaded documents until the requested number of documents is reached.
+     *
+     * @param documents - source documents.
+     * @param size      - number of documents to return.
+     * @return list of `size` documents.
+     */
+    public static List<Document> repeat(List<Document> documents, int size) {
+        List<Document> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(documents.get(i % documents.size()));
+        }
+        return result;
+    }
+
+    private static List<Document> load(String resource) {
+        InputStream in = SampleDocuments.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IllegalStateException("Missing sample resource " + resource);
+        }
+        List<Document> documents = new ArrayList<>();
+        try (BufferedReader reader =
+                     new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    documents.add(Document.parse(line));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Collections.unmodifiableList(documents);
+    }
+}
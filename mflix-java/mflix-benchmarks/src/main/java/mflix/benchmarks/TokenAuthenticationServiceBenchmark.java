@@ -0,0 +1,47 @@
+package mflix.benchmarks;
+
+import mflix.api.services.TokenAuthenticationService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+
+import java.util.concurrent.TimeUnit;
+
+/** JWT minting and verification, executed on every login and every authenticated request. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenAuthenticationServiceBenchmark {
+
+    private TokenAuthenticationService tokenService;
+    private String header;
+
+    @Setup
+    public void setup() {
+        tokenService = new TokenAuthenticationService();
+        // the secret and expiration are injected by Spring in the application
+        setField("jwtSecret", "mflix-benchmarks-secret");
+        setField("jwtExpirationInMs", TimeUnit.HOURS.toMillis(1));
+        header = tokenService.mintJWTHeader("andrea_le@fakegmail.com");
+    }
+
+    private void setField(String name, Object value) {
+        Field field = ReflectionUtils.findField(TokenAuthenticationService.class, name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, tokenService, value);
+    }
+
+    @Benchmark
+    public String mintJWTHeader() {
+        return tokenService.mintJWTHeader("andrea_le@fakegmail.com");
+    }
+
+    @Benchmark
+    public String verifyJWTHeader() {
+        return tokenService.getAuthenticationUser(header);
+    }
+}
@@ -0,0 +1,280 @@
+package mflix.generator;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import mflix.api.models.Comment;
+import mflix.api.models.Session;
+import mflix.api.models.User;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.codecs.pojo.PojoCodecProvider;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
+/**
+ * Generates a sample_mflix like dataset of arbitrary size: `movies`, `comments`, `users` and
+ * `sessions`.
+ *
+ * <p>The data is skewed the way production data is: comments follow a Zipf distribution over
+ * movies, so a few movies get most of the comments, cast members have a power-law popularity, and
+ * a minority of users writes most of the comments. Documents are generated and inserted by a
+ * fork/join pool, with unordered bulk inserts, and the same options always generate the same
+ * dataset, apart from the comment ids.
+ *
+ * <p>Run with `java -cp benchmarks.jar mflix.generator.DataGenerator --comments=10000000 ...`,
+ * see {@link GeneratorOptions} for the available options.
+ */
+public class DataGenerator {
+
+    private static final long PROGRESS_INTERVAL_SECONDS = 10;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final MongoDatabase db;
+    private final GeneratorOptions options;
+    private final MongoCollection<Document> moviesCollection;
+    private final MongoCollection<Comment> commentsCollection;
+    private final MongoCollection<User> usersCollection;
+    private final MongoCollection<Session> sessionsCollection;
+    private final DocumentFactory factory;
+    private final ZipfAllocation commentAllocation;
+    private final LongAdder inserted = new LongAdder();
+
+    public DataGenerator(MongoDatabase db, GeneratorOptions options) {
+        this.db = db;
+        this.options = options;
+
+        CodecRegistry pojoCodecRegistry =
+                fromRegistries(
+                        MongoClientSettings.getDefaultCodecRegistry(),
+                        fromProviders(PojoCodecProvider.builder().automatic(true).build()));
+        // bulk loads only need the primary to acknowledge the writes
+        MongoDatabase loadDb = db.withCodecRegistry(pojoCodecRegistry).withWriteConcern(WriteConcern.W1);
+        moviesCollection = loadDb.getCollection("movies");
+        commentsCollection = loadDb.getCollection("comments", Comment.class);
+        usersCollection = loadDb.getCollection("users", User.class);
+        sessionsCollection = loadDb.getCollection("sessions", Session.class);
+
+        factory =
+                new DocumentFactory(
+                        new ZipfSampler(options.getCastSize(), options.getCastExponent()),
+                        new ZipfSampler(options.getUsers(), options.getUserExponent()),
+                        new BCryptPasswordEncoder().encode(options.getPassword()));
+        commentAllocation =
+                new ZipfAllocation(
+                        options.getComments(),
+                        options.getMovies(),
+                        options.getCommentExponent(),
+                        options.getBatchSize());
+    }
+
+    public static void main(String[] args) {
+        GeneratorOptions options = GeneratorOptions.parse(args);
+        try (MongoClient mongoClient = MongoClients.create(options.getMongoUri())) {
+            new DataGenerator(mongoClient.getDatabase(options.getDatabase()), options).generate();
+        }
+    }
+
+    /** Generates the dataset, then creates the indexes the mflix queries rely on. */
+    public void generate() {
+        if (options.isDrop()) {
+            moviesCollection.drop();
+            commentsCollection.drop();
+            usersCollection.drop();
+            sessionsCollection.drop();
+        }
+
+        long start = System.nanoTime();
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+        progress.scheduleAtFixedRate(
+                () -> logProgress(start), PROGRESS_INTERVAL_SECONDS, PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        ForkJoinPool pool = new ForkJoinPool(options.getThreads());
+        try {
+            pool.invoke(new UserTask(0, options.getUsers()));
+            pool.invoke(new MovieTask(0, commentAllocation.getChunkCount()));
+        } finally {
+            pool.shutdown();
+            progress.shutdownNow();
+        }
+        logProgress(start);
+
+        if (options.isIndexes()) {
+            createIndexes();
+        }
+    }
+
+    private void logProgress(long start) {
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+        long documents = inserted.sum();
+        log.info("Inserted {} documents in {} s ({} docs/s)", documents, seconds, documents / seconds);
+    }
+
+    /**
+     * Creates the indexes used by the mflix Daos. Indexes are built after the bulk load, which is
+     * faster than maintaining them during the inserts.
+     */
+    public void createIndexes() {
+        moviesCollection.createIndex(
+                Indexes.compoundIndex(
+                        Indexes.text("title"),
+                        Indexes.text("fullplot"),
+                        Indexes.text("cast"),
+                        Indexes.text("genres")));
+        moviesCollection.createIndex(Indexes.ascending("cast"));
+        moviesCollection.createIndex(Indexes.ascending("genres"));
+        moviesCollection.createIndex(Indexes.ascending("countries"));
+        moviesCollection.createIndex(Indexes.descending("tomatoes.viewer.numReviews"));
+        commentsCollection.createIndex(Indexes.ascending("movie_id", "date"));
+        commentsCollection.createIndex(Indexes.ascending("email"));
+        usersCollection.createIndex(Indexes.ascending("email"), new IndexOptions().unique(true));
+        sessionsCollection.createIndex(Indexes.ascending("user_id"));
+        log.info("Created indexes on database `{}`", db.getName());
+    }
+
+    private <T> void insert(MongoCollection<T> collection, List<T> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        collection.insertMany(batch, new InsertManyOptions().ordered(false));
+        inserted.add(batch.size());
+        batch.clear();
+    }
+
+    private SplittableRandom random(long... keys) {
+        long seed = options.getSeed();
+        for (long key : keys) {
+            seed = seed * 31 + key;
+        }
+        return new SplittableRandom(seed);
+    }
+
+    /** Movies of a range of allocation chunks, with their comments. */
+    private class MovieTask extends RecursiveAction {
+
+        private final int fromChunk;
+        private final int toChunk;
+
+        MovieTask(int fromChunk, int toChunk) {
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk > 1) {
+                int middle = (fromChunk + toChunk) >>> 1;
+                invokeAll(new MovieTask(fromChunk, middle), new MovieTask(middle, toChunk));
+                return;
+            }
+
+            SplittableRandom random = random(1, fromChunk);
+            long[] counts = commentAllocation.allocate(fromChunk);
+            int firstRank = commentAllocation.firstRank(fromChunk);
+            List<Document> movies = new ArrayList<>(counts.length);
+            List<Comment> comments = new ArrayList<>(options.getBatchSize());
+            List<CommentTask> popularMovies = new ArrayList<>();
+            for (int i = 0; i < counts.length; i++) {
+                long rank = firstRank + i;
+                movies.add(factory.movie(rank, counts[i], random));
+                if (counts[i] > options.getBatchSize()) {
+                    // the comments of the most popular movies are split across several tasks
+                    popularMovies.add(new CommentTask(rank, 0, counts[i]));
+                    continue;
+                }
+                ObjectId movieId = DocumentFactory.movieId(rank);
+                for (long j = 0; j < counts[i]; j++) {
+                    comments.add(factory.comment(movieId, random));
+                    if (comments.size() >= options.getBatchSize()) {
+                        insert(commentsCollection, comments);
+                    }
+                }
+            }
+            insert(moviesCollection, movies);
+            insert(commentsCollection, comments);
+            invokeAll(popularMovies);
+        }
+    }
+
+    /** Comments from `from` to `to`, excluded, of a single movie. */
+    private class CommentTask extends RecursiveAction {
+
+        private final long rank;
+        private final long from;
+        private final long to;
+
+        CommentTask(long rank, long from, long to) {
+            this.rank = rank;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > options.getBatchSize()) {
+                long middle = (from + to) >>> 1;
+                invokeAll(new CommentTask(rank, from, middle), new CommentTask(rank, middle, to));
+                return;
+            }
+
+            SplittableRandom random = random(2, rank, from);
+            ObjectId movieId = DocumentFactory.movieId(rank);
+            List<Comment> comments = new ArrayList<>((int) (to - from));
+            for (long i = from; i < to; i++) {
+                comments.add(factory.comment(movieId, random));
+            }
+            insert(commentsCollection, comments);
+        }
+    }
+
+    /** Users from `from` to `to`, excluded, and the sessions of the most active ones. */
+    private class UserTask extends RecursiveAction {
+
+        private final int from;
+        private final int to;
+
+        UserTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > options.getBatchSize()) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new UserTask(from, middle), new UserTask(middle, to));
+                return;
+            }
+
+            SplittableRandom random = random(3, from);
+            List<User> users = new ArrayList<>(to - from);
+            List<Session> sessions = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                users.add(factory.user(i));
+                // user indexes follow the user activity ranks
+                if (i < options.getSessions()) {
+                    sessions.add(factory.session(i, random));
+                }
+            }
+            insert(usersCollection, users);
+            insert(sessionsCollection, sessions);
+        }
+    }
+}
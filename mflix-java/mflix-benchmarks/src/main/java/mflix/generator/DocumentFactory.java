@@ -0,0 +1,153 @@
+package mflix.generator;
+
+import mflix.api.models.Comment;
+import mflix.api.models.Session;
+import mflix.api.models.User;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the generated documents. Movies are built as raw documents with the sample_mflix layout,
+ * since the Movie model is a read only view mapped by MovieDocumentMapper; comments, users and
+ * sessions are built from their models, as the Daos write them.
+ */
+class DocumentFactory {
+
+    /** Fixed timestamp of the generated movie ids: 2018-01-01T00:00:00Z. */
+    private static final int MOVIE_ID_TIMESTAMP = 1514764800;
+    private static final long TWENTY_YEARS_MILLIS = TimeUnit.DAYS.toMillis(365 * 20);
+
+    private final ZipfSampler castSampler;
+    private final ZipfSampler userSampler;
+    private final String hashedPassword;
+    private final long now = System.currentTimeMillis();
+
+    /**
+     * @param castSampler    - popularity of cast members, used to pick the cast of every movie.
+     * @param userSampler    - activity of users, used to pick the author of every comment.
+     * @param hashedPassword - password hash shared by all the generated users.
+     */
+    DocumentFactory(ZipfSampler castSampler, ZipfSampler userSampler, String hashedPassword) {
+        this.castSampler = castSampler;
+        this.userSampler = userSampler;
+        this.hashedPassword = hashedPassword;
+    }
+
+    /**
+     * Movie ids are derived from the movie rank, so that comments can reference their movie
+     * without looking it up.
+     *
+     * @param rank - movie rank, starting at 1.
+     * @return the movie id.
+     */
+    static ObjectId movieId(long rank) {
+        return new ObjectId(ByteBuffer.allocate(12).putInt(MOVIE_ID_TIMESTAMP).putLong(rank).array());
+    }
+
+    Document movie(long rank, long numComments, SplittableRandom random) {
+        int year = 1920 + random.nextInt(100);
+        Calendar released = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        released.clear();
+        released.set(year, random.nextInt(12), 1 + random.nextInt(28));
+        SimpleDateFormat lastUpdated = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS000000");
+
+        return new Document("_id", movieId(rank))
+                .append("title", capitalize(words(1 + random.nextInt(3), random)))
+                .append("year", year)
+                .append("runtime", 30 + random.nextInt(180))
+                .append("released", released.getTime())
+                .append("cast", people(3 + random.nextInt(6), random))
+                .append("directors", people(1, random))
+                .append("writers", people(1 + random.nextInt(2), random))
+                .append("genres", pick(Vocabulary.GENRES, 1 + random.nextInt(3), random))
+                .append("countries", pick(Vocabulary.COUNTRIES, 1 + random.nextInt(2), random))
+                .append("languages", pick(Vocabulary.LANGUAGES, 1 + random.nextInt(2), random))
+                .append("plot", capitalize(words(12 + random.nextInt(12), random)) + ".")
+                .append("fullplot", capitalize(words(40 + random.nextInt(60), random)) + ".")
+                .append("rated", Vocabulary.RATINGS.get(random.nextInt(Vocabulary.RATINGS.size())))
+                .append("type", "movie")
+                .append("metacritic", 1 + random.nextInt(100))
+                .append("num_mflix_comments", (int) numComments)
+                .append("num_comments", (int) numComments)
+                .append("lastupdated", lastUpdated.format(new Date(now - random.nextLong(TWENTY_YEARS_MILLIS))))
+                .append(
+                        "imdb",
+                        new Document("rating", 1 + random.nextInt(90) / 10.0)
+                                .append("votes", random.nextInt(1000000))
+                                .append("id", (int) rank))
+                .append(
+                        "tomatoes",
+                        new Document(
+                                "viewer",
+                                new Document("rating", 1 + random.nextInt(40) / 10.0)
+                                        .append("numReviews", random.nextInt(1000000))
+                                        .append("meter", random.nextInt(101)))
+                                .append("lastUpdated", new Date(now)));
+    }
+
+    Comment comment(ObjectId movieId, SplittableRandom random) {
+        int user = userSampler.sample(random) - 1;
+        Date date = new Date(now - random.nextLong(TWENTY_YEARS_MILLIS));
+        Comment comment = new Comment();
+        comment.setOid(new ObjectId(date));
+        comment.setMovieObjectId(movieId);
+        comment.setName(Vocabulary.userName(user));
+        comment.setEmail(Vocabulary.userEmail(user));
+        comment.setText(capitalize(words(10 + random.nextInt(30), random)) + ".");
+        comment.setDate(date);
+        return comment;
+    }
+
+    User user(int index) {
+        User user = new User();
+        user.setName(Vocabulary.userName(index));
+        user.setEmail(Vocabulary.userEmail(index));
+        user.setHashedpw(hashedPassword);
+        return user;
+    }
+
+    Session session(int index, SplittableRandom random) {
+        Session session = new Session();
+        session.setUserId(Vocabulary.userEmail(index));
+        session.setJwt(Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()));
+        return session;
+    }
+
+    /** Picks distinct people, popular cast members being picked more often. */
+    private List<String> people(int count, SplittableRandom random) {
+        int wanted = Math.min(count, castSampler.getNumberOfElements());
+        Set<String> people = new LinkedHashSet<>();
+        while (people.size() < wanted) {
+            people.add(Vocabulary.personName(castSampler.sample(random) - 1));
+        }
+        return new ArrayList<>(people);
+    }
+
+    private static List<String> pick(List<String> values, int count, SplittableRandom random) {
+        Set<String> picked = new LinkedHashSet<>();
+        while (picked.size() < count) {
+            picked.add(values.get(random.nextInt(values.size())));
+        }
+        return new ArrayList<>(picked);
+    }
+
+    private static String words(int count, SplittableRandom random) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(Vocabulary.WORDS.get(random.nextInt(Vocabulary.WORDS.size())));
+        }
+        return builder.toString();
+    }
+
+    private static String capitalize(String text) {
+        return Character.toUpperCase(text.charAt(0)) + text.substring(1);
+    }
+}
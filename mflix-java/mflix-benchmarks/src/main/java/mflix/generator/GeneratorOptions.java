@@ -0,0 +1,251 @@
+package mflix.generator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** Data generator settings, read from `--name=value` command line arguments. */
+public class GeneratorOptions {
+
+    private String mongoUri = "mongodb://localhost:27017";
+    private String database = "mflix_generated";
+    private int movies = 100000;
+    private long comments = 1000000;
+    private int users = 50000;
+    private int sessions = 5000;
+    private int castSize = 50000;
+    private double commentExponent = 1.0;
+    private double castExponent = 1.2;
+    private double userExponent = 0.8;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int batchSize = 1000;
+    private String password = "mflix-generated";
+    private long seed = 42;
+    private boolean drop = true;
+    private boolean indexes = true;
+
+    /**
+     * Parses the command line arguments.
+     *
+     * @param args - `--name=value` arguments.
+     * @return the options, with defaults for the arguments that are not set.
+     * @throws IllegalArgumentException if an argument is unknown or malformed.
+     */
+    public static GeneratorOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected `--name=value` argument, got " + arg);
+            }
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        GeneratorOptions options = new GeneratorOptions();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            String value = entry.getValue();
+            switch (entry.getKey()) {
+                case "mongo-uri":
+                    options.mongoUri = value;
+                    break;
+                case "database":
+                    options.database = value;
+                    break;
+                case "movies":
+                    options.movies = Integer.parseInt(value);
+                    break;
+                case "comments":
+                    options.comments = Long.parseLong(value);
+                    break;
+                case "users":
+                    options.users = Integer.parseInt(value);
+                    break;
+                case "sessions":
+                    options.sessions = Integer.parseInt(value);
+                    break;
+                case "cast-size":
+                    options.castSize = Integer.parseInt(value);
+                    break;
+                case "comment-exponent":
+                    options.commentExponent = Double.parseDouble(value);
+                    break;
+                case "cast-exponent":
+                    options.castExponent = Double.parseDouble(value);
+                    break;
+                case "user-exponent":
+                    options.userExponent = Double.parseDouble(value);
+                    break;
+                case "threads":
+                    options.threads = Integer.parseInt(value);
+                    break;
+                case "batch-size":
+                    options.batchSize = Integer.parseInt(value);
+                    break;
+                case "password":
+                    options.password = value;
+                    break;
+                case "seed":
+                    options.seed = Long.parseLong(value);
+                    break;
+                case "drop":
+                    options.drop = Boolean.parseBoolean(value);
+                    break;
+                case "indexes":
+                    options.indexes = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option --" + entry.getKey());
+            }
+        }
+        return options;
+    }
+
+    public String getMongoUri() {
+        return mongoUri;
+    }
+
+    public GeneratorOptions setMongoUri(String mongoUri) {
+        this.mongoUri = mongoUri;
+        return this;
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    public GeneratorOptions setDatabase(String database) {
+        this.database = database;
+        return this;
+    }
+
+    public int getMovies() {
+        return movies;
+    }
+
+    public GeneratorOptions setMovies(int movies) {
+        this.movies = movies;
+        return this;
+    }
+
+    public long getComments() {
+        return comments;
+    }
+
+    public GeneratorOptions setComments(long comments) {
+        this.comments = comments;
+        return this;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public GeneratorOptions setUsers(int users) {
+        this.users = users;
+        return this;
+    }
+
+    /** @return number of users, among the most active ones, that have an open session. */
+    public int getSessions() {
+        return sessions;
+    }
+
+    public GeneratorOptions setSessions(int sessions) {
+        this.sessions = sessions;
+        return this;
+    }
+
+    /** @return number of distinct cast and crew members. */
+    public int getCastSize() {
+        return castSize;
+    }
+
+    public GeneratorOptions setCastSize(int castSize) {
+        this.castSize = castSize;
+        return this;
+    }
+
+    /** @return skew of the number of comments per movie. */
+    public double getCommentExponent() {
+        return commentExponent;
+    }
+
+    public GeneratorOptions setCommentExponent(double commentExponent) {
+        this.commentExponent = commentExponent;
+        return this;
+    }
+
+    /** @return skew of the number of movies per cast member. */
+    public double getCastExponent() {
+        return castExponent;
+    }
+
+    public GeneratorOptions setCastExponent(double castExponent) {
+        this.castExponent = castExponent;
+        return this;
+    }
+
+    /** @return skew of the number of comments per user. */
+    public double getUserExponent() {
+        return userExponent;
+    }
+
+    public GeneratorOptions setUserExponent(double userExponent) {
+        this.userExponent = userExponent;
+        return this;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public GeneratorOptions setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public GeneratorOptions setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /** @return clear text password of every generated user. */
+    public String getPassword() {
+        return password;
+    }
+
+    public GeneratorOptions setPassword(String password) {
+        this.password = password;
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public GeneratorOptions setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public boolean isDrop() {
+        return drop;
+    }
+
+    public GeneratorOptions setDrop(boolean drop) {
+        this.drop = drop;
+        return this;
+    }
+
+    public boolean isIndexes() {
+        return indexes;
+    }
+
+    public GeneratorOptions setIndexes(boolean indexes) {
+        this.indexes = indexes;
+        return this;
+    }
+}
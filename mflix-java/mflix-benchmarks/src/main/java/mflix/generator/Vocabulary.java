@@ -0,0 +1,96 @@
+package mflix.generator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/** Values the generated documents are built from. */
+public final class Vocabulary {
+
+    public static final List<String> GENRES =
+            Collections.unmodifiableList(
+                    Arrays.asList(
+                            "Action", "Adventure", "Animation", "Comedy", "Crime", "Documentary",
+                            "Drama", "Family", "Fantasy", "History", "Horror", "Musical", "Mystery",
+                            "Romance", "Sci-Fi", "Short", "Thriller", "War", "Western"));
+
+    public static final List<String> COUNTRIES =
+            Collections.unmodifiableList(
+                    Arrays.asList(
+                            "USA", "UK", "France", "Germany", "Italy", "Japan", "Canada", "India",
+                            "Spain", "Australia", "Sweden", "Mexico", "Brazil", "Denmark", "Russia"));
+
+    public static final List<String> LANGUAGES =
+            Collections.unmodifiableList(
+                    Arrays.asList("English", "French", "German", "Italian", "Japanese", "Spanish", "Hindi"));
+
+    public static final List<String> RATINGS =
+            Collections.unmodifiableList(Arrays.asList("G", "PG", "PG-13", "R", "UNRATED"));
+
+    public static final List<String> WORDS =
+            Collections.unmodifiableList(
+                    Arrays.asList(
+                            "love", "war", "city", "night", "king", "family", "secret", "journey",
+                            "murder", "dream", "river", "ghost", "island", "summer", "winter",
+                            "detective", "robot", "space", "heist", "revenge", "school", "train",
+                            "music", "ocean", "mountain", "empire", "shadow", "fire", "queen", "road"));
+
+    private static final List<String> FIRST_NAMES =
+            Collections.unmodifiableList(
+                    Arrays.asList(
+                            "Andrea", "Brienne", "Carlos", "Daenerys", "Emma", "Farid", "Grace",
+                            "Hiro", "Ines", "Jaime", "Kofi", "Lena", "Mercedes", "Nikolaj", "Olga",
+                            "Priya", "Quentin", "Rose", "Samwell", "Taylor", "Uma", "Victor", "Wei",
+                            "Ximena", "Yusuf", "Zoe"));
+
+    private static final List<String> LAST_NAMES =
+            Collections.unmodifiableList(
+                    Arrays.asList(
+                            "Le", "Tyler", "Hill", "Patel", "Garcia", "Kim", "Nakamura", "Okafor",
+                            "Rossi", "Schmidt", "Silva", "Smith", "Tanaka", "Walker", "Young"));
+
+    private Vocabulary() {
+    }
+
+    /**
+     * Builds the name of a cast member or crew member. Names are unique per index.
+     *
+     * @param index - person index.
+     * @return the person name.
+     */
+    public static String personName(int index) {
+        return fullName(index) + (index < FIRST_NAMES.size() * LAST_NAMES.size() ? "" : " " + suffix(index));
+    }
+
+    /**
+     * Builds the name of a user, unique per index.
+     *
+     * @param index - user index.
+     * @return the user name.
+     */
+    public static String userName(int index) {
+        return fullName(index) + " " + index;
+    }
+
+    /**
+     * Builds the email of a user, unique per index.
+     *
+     * @param index - user index.
+     * @return the user email.
+     */
+    public static String userEmail(int index) {
+        return fullName(index).toLowerCase(Locale.ROOT).replace(' ', '_') + "_" + index + "@fakegmail.com";
+    }
+
+    private static String fullName(int index) {
+        String first = FIRST_NAMES.get(index % FIRST_NAMES.size());
+        String last = LAST_NAMES.get((index / FIRST_NAMES.size()) % LAST_NAMES.size());
+        return first + " " + last;
+    }
+
+    /** Base 36 suffix that tells apart people that share a first and last name. */
+    private static String suffix(int index) {
+        return Integer.toString(index / (FIRST_NAMES.size() * LAST_NAMES.size()), 36).toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,93 @@
+package mflix.generator;
+
+/**
+ * Splits a total number of items, e.g. comments, over `n` ranked owners, e.g. movies, so that the
+ * owner of rank `k` gets a share proportional to `k^-exponent`.
+ *
+ * <p>Shares are rounded so that they always add up to the exact total. Ranks are processed in
+ * chunks; the cumulative weight at each chunk boundary is computed once, so chunks can be
+ * allocated independently and in parallel.
+ */
+public class ZipfAllocation {
+
+    private final long total;
+    private final int numberOfElements;
+    private final int chunkSize;
+    private final double exponent;
+    private final double[] chunkPrefix;
+    private final double totalWeight;
+
+    /**
+     * @param total            - number of items to allocate.
+     * @param numberOfElements - number of ranks.
+     * @param exponent         - skew of the allocation, 0 spreads the items evenly.
+     * @param chunkSize        - number of ranks per chunk.
+     */
+    public ZipfAllocation(long total, int numberOfElements, double exponent, int chunkSize) {
+        if (numberOfElements <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("numberOfElements and chunkSize must be positive");
+        }
+        this.total = total;
+        this.numberOfElements = numberOfElements;
+        this.chunkSize = chunkSize;
+        this.exponent = exponent;
+
+        int chunks = getChunkCount();
+        chunkPrefix = new double[chunks + 1];
+        double sum = 0;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            chunkPrefix[chunk] = sum;
+            sum = accumulate(sum, chunk, null);
+        }
+        chunkPrefix[chunks] = sum;
+        totalWeight = sum;
+    }
+
+    public int getChunkCount() {
+        return (numberOfElements + chunkSize - 1) / chunkSize;
+    }
+
+    /** @return the rank, starting at 1, of the first element of the chunk. */
+    public int firstRank(int chunk) {
+        return chunk * chunkSize + 1;
+    }
+
+    /**
+     * Allocates the items of one chunk.
+     *
+     * @param chunk - chunk index, between 0 and {@link #getChunkCount()} excluded.
+     * @return number of items of every rank of the chunk, in rank order.
+     */
+    public long[] allocate(int chunk) {
+        int first = firstRank(chunk);
+        int last = Math.min(first + chunkSize - 1, numberOfElements);
+        long[] counts = new long[last - first + 1];
+        accumulate(chunkPrefix[chunk], chunk, counts);
+        return counts;
+    }
+
+    /**
+     * Adds the weights of the chunk to `prefix`, in rank order so that the result is the same
+     * whether it is computed upfront or when allocating the chunk.
+     */
+    private double accumulate(double prefix, int chunk, long[] counts) {
+        int first = firstRank(chunk);
+        int last = Math.min(first + chunkSize - 1, numberOfElements);
+        double sum = prefix;
+        for (int rank = first; rank <= last; rank++) {
+            long before = counts == null ? 0 : allocated(sum);
+            sum += Math.pow(rank, -exponent);
+            if (counts != null) {
+                counts[rank - first] = allocated(sum) - before;
+            }
+        }
+        return sum;
+    }
+
+    private long allocated(double prefix) {
+        if (prefix >= totalWeight) {
+            return total;
+        }
+        return (long) Math.floor(total * (prefix / totalWeight));
+    }
+}
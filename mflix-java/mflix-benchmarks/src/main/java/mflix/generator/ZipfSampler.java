@@ -0,0 +1,103 @@
+package mflix.generator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Samples ranks from a Zipf distribution over `1..n`, where rank `k` has a probability
+ * proportional to `k^-exponent`.
+ *
+ * <p>Uses the rejection-inversion method of Hörmann and Derflinger ("Rejection-inversion to
+ * generate variates from monotone discrete distributions", 1996), which takes constant time and
+ * memory per sample, whatever the number of elements. The sampler is immutable and can be shared
+ * between threads, each thread using its own random source.
+ */
+public class ZipfSampler {
+
+    private final int numberOfElements;
+    private final double exponent;
+    private final double hIntegralX1;
+    private final double hIntegralNumberOfElements;
+    private final double s;
+
+    /**
+     * @param numberOfElements - number of ranks, must be positive.
+     * @param exponent         - skew of the distribution, must be positive. 1 is the classic Zipf
+     *                         law, larger values concentrate the samples on the first ranks.
+     */
+    public ZipfSampler(int numberOfElements, double exponent) {
+        if (numberOfElements <= 0) {
+            throw new IllegalArgumentException("numberOfElements must be positive: " + numberOfElements);
+        }
+        if (exponent <= 0) {
+            throw new IllegalArgumentException("exponent must be positive: " + exponent);
+        }
+        this.numberOfElements = numberOfElements;
+        this.exponent = exponent;
+        this.hIntegralX1 = hIntegral(1.5) - 1d;
+        this.hIntegralNumberOfElements = hIntegral(numberOfElements + 0.5);
+        this.s = 2d - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    /**
+     * Draws a rank.
+     *
+     * @param random - random source of the calling thread.
+     * @return rank between 1 and the number of elements.
+     */
+    public int sample(SplittableRandom random) {
+        while (true) {
+            double u =
+                    hIntegralNumberOfElements
+                            + random.nextDouble() * (hIntegralX1 - hIntegralNumberOfElements);
+            double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if (k < 1) {
+                k = 1;
+            } else if (k > numberOfElements) {
+                k = numberOfElements;
+            }
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                return k;
+            }
+        }
+    }
+
+    public int getNumberOfElements() {
+        return numberOfElements;
+    }
+
+    /** Antiderivative of `h`, shifted so that it is well defined for an exponent of 1. */
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return helper2((1d - exponent) * logX) * logX;
+    }
+
+    private double h(double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = x * (1d - exponent);
+        if (t < -1d) {
+            // numerical safety net, t is always >= -1 for valid inputs
+            t = -1d;
+        }
+        return Math.exp(helper1(t) * x);
+    }
+
+    /** log1p(x) / x, with its Taylor expansion near 0. */
+    private static double helper1(double x) {
+        if (Math.abs(x) > 1e-8) {
+            return Math.log1p(x) / x;
+        }
+        return 1d - x * (0.5 - x * (1d / 3d - x * 0.25));
+    }
+
+    /** expm1(x) / x, with its Taylor expansion near 0. */
+    private static double helper2(double x) {
+        if (Math.abs(x) > 1e-8) {
+            return Math.expm1(x) / x;
+        }
+        return 1d + x * 0.5 * (1d + x * (1d / 3d) * (1d + x * 0.25));
+    }
+}
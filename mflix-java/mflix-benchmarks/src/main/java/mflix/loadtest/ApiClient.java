@@ -0,0 +1,76 @@
+package mflix.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal HTTP client for the mflix api. Response bodies are always fully read, so that the JDK
+ * keeps the connection alive and reuses it for the next request of the worker.
+ */
+class ApiClient {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String baseUrl;
+    private String authToken;
+
+    ApiClient(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * Sends the request, refreshing the stored auth token when the response carries one.
+     *
+     * @param request - request to send.
+     * @return the response status code.
+     * @throws IOException if the request fails at the network level.
+     */
+    int send(ApiRequest request) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + request.path).openConnection();
+        connection.setRequestMethod(request.method);
+        connection.setRequestProperty("Accept", "application/json");
+        if (request.authenticated && authToken != null) {
+            connection.setRequestProperty("Authorization", "Bearer " + authToken);
+        }
+        if (request.body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(request.body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        byte[] response = readFully(in);
+        if (request.body != null && status < 400) {
+            JsonNode token = MAPPER.readTree(response).get("auth_token");
+            if (token != null && token.isTextual()) {
+                authToken = token.asText().replace("Bearer", "").trim();
+            }
+        }
+        return status;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        if (in == null) {
+            return new byte[0];
+        }
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
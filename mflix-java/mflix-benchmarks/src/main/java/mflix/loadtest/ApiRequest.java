@@ -0,0 +1,29 @@
+package mflix.loadtest;
+
+/** HTTP request to the mflix api. */
+class ApiRequest {
+
+    final String method;
+    final String path;
+    final String body;
+    final boolean authenticated;
+
+    private ApiRequest(String method, String path, String body, boolean authenticated) {
+        this.method = method;
+        this.path = path;
+        this.body = body;
+        this.authenticated = authenticated;
+    }
+
+    static ApiRequest get(String path) {
+        return new ApiRequest("GET", path, null, false);
+    }
+
+    static ApiRequest post(String path, String body) {
+        return new ApiRequest("POST", path, body, false);
+    }
+
+    static ApiRequest authenticated(String method, String path, String body) {
+        return new ApiRequest(method, path, body, true);
+    }
+}
@@ -0,0 +1,58 @@
+package mflix.loadtest;
+
+import mflix.generator.Vocabulary;
+import org.bson.types.ObjectId;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Values of the seeded dataset that the load test uses to build request parameters that match
+ * the seeded documents.
+ */
+public class Dataset {
+
+    public static final String USER_PASSWORD = "loadtest-password";
+
+    private final List<ObjectId> movieIds;
+    private final List<String> castNames;
+    private final List<String> userEmails;
+
+    Dataset(List<ObjectId> movieIds, List<String> castNames, List<String> userEmails) {
+        this.movieIds = movieIds;
+        this.castNames = castNames;
+        this.userEmails = userEmails;
+    }
+
+    private static <T> T pick(List<T> values, Random random) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    public String randomMovieId(Random random) {
+        return pick(movieIds, random).toHexString();
+    }
+
+    public String randomCast(Random random) {
+        return pick(castNames, random);
+    }
+
+    public String randomGenre(Random random) {
+        return pick(Vocabulary.GENRES, random);
+    }
+
+    public String randomCountry(Random random) {
+        return pick(Vocabulary.COUNTRIES, random);
+    }
+
+    public String randomWord(Random random) {
+        return pick(Vocabulary.WORDS, random);
+    }
+
+    public String userEmail(Random random) {
+        return pick(userEmails, random);
+    }
+
+    public int getMovieCount() {
+        return movieIds.size();
+    }
+}
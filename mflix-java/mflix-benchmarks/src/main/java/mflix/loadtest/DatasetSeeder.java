@@ -0,0 +1,75 @@
+package mflix.loadtest;
+
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Projections;
+import mflix.generator.DataGenerator;
+import mflix.generator.GeneratorOptions;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fills the `movies`, `comments` and `users` collections with generated documents that have the
+ * sample_mflix layout, and creates the indexes the mflix queries rely on.
+ */
+public class DatasetSeeder {
+
+    private final MongoDatabase db;
+    private final long seed;
+
+    /**
+     * @param db   - database to seed.
+     * @param seed - random seed, so that the same options generate the same dataset.
+     */
+    public DatasetSeeder(MongoDatabase db, long seed) {
+        this.db = db;
+        this.seed = seed;
+    }
+
+    /**
+     * Drops and regenerates the mflix collections.
+     *
+     * @param movies   - number of movies.
+     * @param comments - number of comments, spread over the movies.
+     * @param users    - number of users, which all share the {@link Dataset#USER_PASSWORD}
+     *                 password.
+     * @return the seeded dataset.
+     */
+    public Dataset seed(int movies, int comments, int users) {
+        GeneratorOptions options =
+                new GeneratorOptions()
+                        .setMovies(movies)
+                        .setComments(comments)
+                        .setUsers(users)
+                        .setSessions(0)
+                        .setCastSize(Math.max(100, movies / 4))
+                        .setPassword(Dataset.USER_PASSWORD)
+                        .setSeed(seed);
+        new DataGenerator(db, options).generate();
+        return load();
+    }
+
+    /**
+     * Reads the vocabulary of a dataset seeded by a previous run.
+     *
+     * @return the dataset.
+     */
+    public Dataset load() {
+        List<ObjectId> movieIds = new ArrayList<>();
+        try (MongoCursor<Document> cursor =
+                     db.getCollection("movies").find().projection(Projections.include("_id")).iterator()) {
+            cursor.forEachRemaining(doc -> movieIds.add(doc.getObjectId("_id")));
+        }
+        List<String> cast = new ArrayList<>();
+        db.getCollection("movies").distinct("cast", String.class).into(cast);
+        List<String> emails = new ArrayList<>();
+        db.getCollection("users").distinct("email", String.class).into(emails);
+        if (movieIds.isEmpty() || emails.isEmpty()) {
+            throw new IllegalStateException("Database `" + db.getName() + "` has not been seeded");
+        }
+        return new Dataset(movieIds, cast, emails);
+    }
+}
@@ -0,0 +1,107 @@
+package mflix.loadtest;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodProcess;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.IMongodConfig;
+import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.config.Storage;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+import org.bson.Document;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local, throw away `mongod` process used as a stand-in for the Atlas cluster. The MongoDB binaries
+ * are downloaded on first use and cached in `~/.embedmongo`.
+ *
+ * <p>The process runs as a single node replica set, so that the change stream of the movie filter
+ * index and the causally consistent sessions behave as on Atlas. The embedded distributions stop at
+ * 3.6, which has no multi-document transactions: users are deleted by the non transactional
+ * fallback, and there are no secondaries for the routed reads to go to.
+ */
+public class EmbeddedMongo implements AutoCloseable {
+
+    private static final String REPLICA_SET = "rs0";
+    private static final long ELECTION_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final MongodExecutable executable;
+    private final MongodProcess process;
+    private final int port;
+
+    private EmbeddedMongo(MongodExecutable executable, MongodProcess process, int port) {
+        this.executable = executable;
+        this.process = process;
+        this.port = port;
+    }
+
+    /**
+     * Starts a `mongod` 3.6, the first version that supports client sessions and change streams, on
+     * a free local port, and initiates it as the only member of a replica set.
+     *
+     * @return the running instance, once it is primary.
+     * @throws IOException if the binaries cannot be extracted, the process does not start or does
+     *                     not become primary.
+     */
+    public static EmbeddedMongo start() throws IOException {
+        int port = Network.getFreeServerPort();
+        IMongodConfig config =
+                new MongodConfigBuilder()
+                        .version(Version.Main.V3_6)
+                        .net(new Net("localhost", port, Network.localhostIsIPv6()))
+                        .replication(new Storage(null, REPLICA_SET, 0))
+                        .build();
+        MongodExecutable executable = MongodStarter.getDefaultInstance().prepare(config);
+        EmbeddedMongo mongo = new EmbeddedMongo(executable, executable.start(), port);
+        try {
+            mongo.initiateReplicaSet();
+        } catch (RuntimeException | IOException e) {
+            mongo.close();
+            throw e;
+        }
+        return mongo;
+    }
+
+    private void initiateReplicaSet() throws IOException {
+        // a single host without replicaSet connects directly, as the member is not initiated yet
+        try (MongoClient client = MongoClients.create("mongodb://localhost:" + port)) {
+            MongoDatabase admin = client.getDatabase("admin");
+            Document member = new Document("_id", 0).append("host", "localhost:" + port);
+            admin.runCommand(
+                    new Document(
+                            "replSetInitiate",
+                            new Document("_id", REPLICA_SET)
+                                    .append("members", Collections.singletonList(member))));
+
+            long deadline = System.currentTimeMillis() + ELECTION_TIMEOUT_MILLIS;
+            while (!Boolean.TRUE.equals(admin.runCommand(new Document("isMaster", 1)).get("ismaster"))) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("replica set " + REPLICA_SET + " did not elect a primary");
+                }
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while waiting for a primary", e);
+                }
+            }
+        }
+    }
+
+    public String getConnectionString() {
+        return "mongodb://localhost:" + port + "/?replicaSet=" + REPLICA_SET;
+    }
+
+    @Override
+    public void close() {
+        process.stop();
+        executable.stop();
+    }
+}
@@ -0,0 +1,113 @@
+package mflix.loadtest;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Random;
+
+/** mflix api endpoints exercised by the load test. */
+public enum Endpoint {
+    BROWSE("browse") {
+        @Override
+        ApiRequest request(Dataset dataset, Random random) {
+            return ApiRequest.get("/api/v1/movies/");
+        }
+    },
+    DETAIL("detail") {
+        @Override
+        ApiRequest request(Dataset dataset, Random random) {
+            return ApiRequest.get("/api/v1/movies/id/" + dataset.randomMovieId(random));
+        }
+    },
+    TEXT("text") {
+        @Override
+        ApiRequest request(Dataset dataset, Random random) {
+            return ApiRequest.get(
+                    "/api/v1/movies/search?text=" + encode(dataset.randomWord(random)) + "&page=" + page(random));
+        }
+    },
+    CAST("cast") {
+        @Override
+        ApiRequest request(Dataset dataset, Random random) {
+            return ApiRequest.get("/api/v1/movies/search?cast=" + encode(dataset.randomCast(random)));
+        }
+    },
+    GENRE("genre") {
+        @Override
+        ApiRequest request(Dataset dataset, Random random) {
+            return ApiRequest.get(
+                    "/api/v1/movies/search?genre=" + encode(dataset.randomGenre(random)) + "&page=" + page(random));
+        }
+    },
+    COUNTRIES("countries") {
+        @Override
+        ApiRequest request(Dataset dataset, Random random) {
+            return ApiRequest.get("/api/v1/movies/countries?countries=" + encode(dataset.randomCountry(random)));
+        }
+    },
+    FACET("facet") {
+        @Override
+        ApiRequest request(Dataset dataset, Random random) {
+            return ApiRequest.get("/api/v1/movies/facet-search?cast=" + encode(dataset.randomCast(random)));
+        }
+    },
+    COMMENT("comment") {
+        @Override
+        ApiRequest request(Dataset dataset, Random random) {
+            return ApiRequest.authenticated(
+                    "POST",
+                    "/api/v1/movies/comment",
+                    "{\"movie_id\": \"" + dataset.randomMovieId(random) + "\", \"comment\": \"load test comment "
+                            + dataset.randomWord(random) + "\"}");
+        }
+    },
+    LOGIN("login") {
+        @Override
+        ApiRequest request(Dataset dataset, Random random) {
+            return ApiRequest.post(
+                    "/api/v1/user/login",
+                    "{\"email\": \"" + dataset.userEmail(random) + "\", \"password\": \""
+                            + Dataset.USER_PASSWORD + "\"}");
+        }
+    };
+
+    private final String name;
+
+    Endpoint(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Builds a request to this endpoint, with parameters picked from the seeded dataset.
+     *
+     * @param dataset - seeded dataset.
+     * @param random  - random source of the calling worker.
+     * @return the request to send.
+     */
+    abstract ApiRequest request(Dataset dataset, Random random);
+
+    public String getName() {
+        return name;
+    }
+
+    public static Endpoint fromName(String name) {
+        for (Endpoint endpoint : values()) {
+            if (endpoint.name.equals(name)) {
+                return endpoint;
+            }
+        }
+        throw new IllegalArgumentException("Unknown endpoint `" + name + "`");
+    }
+
+    private static int page(Random random) {
+        // most users never go past the first results page
+        return random.nextInt(10) < 8 ? 0 : 1 + random.nextInt(4);
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package mflix.loadtest;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import mflix.Application;
+import mflix.api.metrics.LatencyHistogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * End to end load test of the mflix api.
+ *
+ * <p>Starts the Spring Boot application against a seeded MongoDB database, either an embedded
+ * `mongod` or the one given by `--mongo-uri`, and drives a weighted mix of read and write requests
+ * from `--concurrency` workers. Requests sent during the warmup period are not measured. Once the
+ * run completes, the throughput and latency percentiles of every endpoint are printed.
+ *
+ * <p>See {@link LoadTestOptions} for the available options.
+ */
+public class LoadTest {
+
+    private final LoadTestOptions options;
+    private final Dataset dataset;
+    private final String baseUrl;
+    private final Map<Endpoint, EndpointStats> stats = new EnumMap<>(Endpoint.class);
+    private final Endpoint[] endpoints;
+    private final int[] cumulativeWeights;
+
+    LoadTest(LoadTestOptions options, Dataset dataset, String baseUrl) {
+        this.options = options;
+        this.dataset = dataset;
+        this.baseUrl = baseUrl;
+
+        Map<Endpoint, Integer> mix = options.getMix();
+        endpoints = mix.keySet().toArray(new Endpoint[0]);
+        cumulativeWeights = new int[endpoints.length];
+        int total = 0;
+        for (int i = 0; i < endpoints.length; i++) {
+            total += mix.get(endpoints[i]);
+            cumulativeWeights[i] = total;
+            stats.put(endpoints[i], new EndpointStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+
+        EmbeddedMongo embeddedMongo = null;
+        String mongoUri = options.getMongoUri();
+        if (mongoUri == null) {
+            embeddedMongo = EmbeddedMongo.start();
+            mongoUri = embeddedMongo.getConnectionString();
+        }
+
+        try {
+            Dataset dataset;
+            try (MongoClient mongoClient = MongoClients.create(mongoUri)) {
+                DatasetSeeder seeder = new DatasetSeeder(mongoClient.getDatabase(options.getDatabase()), 42);
+                dataset =
+                        options.isSeed()
+                                ? seeder.seed(options.getMovies(), options.getComments(), options.getUsers())
+                                : seeder.load();
+            }
+
+            ConfigurableApplicationContext app =
+                    SpringApplication.run(
+                            Application.class,
+                            "--spring.mongodb.uri=" + mongoUri,
+                            "--spring.mongodb.database=" + options.getDatabase(),
+                            "--server.port=0",
+                            "--jwtSecret=mflix-loadtest-secret");
+            try {
+                String port = app.getEnvironment().getProperty("local.server.port");
+                new LoadTest(options, dataset, "http://localhost:" + port).run();
+            } finally {
+                app.close();
+            }
+        } finally {
+            if (embeddedMongo != null) {
+                embeddedMongo.close();
+            }
+        }
+    }
+
+    void run() throws InterruptedException {
+        long warmupNanos = TimeUnit.SECONDS.toNanos(options.getWarmupSeconds());
+        long durationNanos = TimeUnit.SECONDS.toNanos(options.getDurationSeconds());
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long deadline = measureFrom + durationNanos;
+
+        ExecutorService workers = Executors.newFixedThreadPool(options.getConcurrency());
+        for (int i = 0; i < options.getConcurrency(); i++) {
+            final long seed = i;
+            workers.execute(() -> work(new Random(seed), measureFrom, deadline));
+        }
+        workers.shutdown();
+        workers.awaitTermination(warmupNanos + durationNanos + TimeUnit.MINUTES.toNanos(1), TimeUnit.NANOSECONDS);
+
+        report(options.getDurationSeconds());
+    }
+
+    private void work(Random random, long measureFrom, long deadline) {
+        ApiClient client = new ApiClient(baseUrl);
+        try {
+            // authenticated endpoints need a token from the start
+            client.send(Endpoint.LOGIN.request(dataset, random));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to log in worker", e);
+        }
+
+        long now;
+        while ((now = System.nanoTime()) < deadline) {
+            Endpoint endpoint = nextEndpoint(random);
+            ApiRequest request = endpoint.request(dataset, random);
+            boolean failed;
+            try {
+                failed = client.send(request) >= 400;
+            } catch (IOException e) {
+                failed = true;
+            }
+            if (now >= measureFrom) {
+                stats.get(endpoint).record(System.nanoTime() - now, failed);
+            }
+        }
+    }
+
+    private Endpoint nextEndpoint(Random random) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return endpoints[i];
+            }
+        }
+        return endpoints[endpoints.length - 1];
+    }
+
+    private void report(int durationSeconds) {
+        System.out.printf(
+                "%nmflix load test: %d movies, %d workers, %d s%n%n",
+                dataset.getMovieCount(), options.getConcurrency(), durationSeconds);
+        System.out.printf(
+                "%-10s %10s %8s %10s %10s %10s %10s %10s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        long totalRequests = 0;
+        long totalErrors = 0;
+        for (Endpoint endpoint : endpoints) {
+            EndpointStats endpointStats = stats.get(endpoint);
+            LatencyHistogram latency = endpointStats.latency;
+            long requests = latency.getCount();
+            long errors = endpointStats.errors.sum();
+            totalRequests += requests;
+            totalErrors += errors;
+            System.out.printf(
+                    "%-10s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                    endpoint.getName(),
+                    requests,
+                    errors,
+                    (double) requests / durationSeconds,
+                    latency.percentile(0.5) / 1000.0,
+                    latency.percentile(0.99) / 1000.0,
+                    latency.percentile(0.999) / 1000.0,
+                    latency.percentile(1.0) / 1000.0);
+        }
+        System.out.printf(
+                "%-10s %10d %8d %10.1f%n",
+                "total", totalRequests, totalErrors, (double) totalRequests / durationSeconds);
+    }
+
+    private static class EndpointStats {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        void record(long nanos, boolean failed) {
+            latency.record(nanos, TimeUnit.NANOSECONDS);
+            if (failed) {
+                errors.increment();
+            }
+        }
+    }
+}
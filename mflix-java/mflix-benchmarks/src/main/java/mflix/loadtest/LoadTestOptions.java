@@ -0,0 +1,146 @@
+package mflix.loadtest;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Load test settings, read from `--name=value` command line arguments.
+ *
+ * <p>`--mix` sets the relative weight of each endpoint, as a comma separated list of
+ * `endpoint:weight` pairs, e.g. `--mix=browse:50,detail:30,comment:20`. Endpoints not listed in
+ * the mix are not exercised.
+ */
+public class LoadTestOptions {
+
+    private static final String DEFAULT_MIX =
+            "browse:25,detail:25,text:10,cast:10,genre:10,countries:5,facet:5,comment:8,login:2";
+
+    private String mongoUri;
+    private String database = "mflix_loadtest";
+    private int movies = 20000;
+    private int comments = 100000;
+    private int users = 500;
+    private boolean seed = true;
+    private int concurrency = 16;
+    private int warmupSeconds = 10;
+    private int durationSeconds = 60;
+    private Map<Endpoint, Integer> mix = parseMix(DEFAULT_MIX);
+
+    /**
+     * Parses the command line arguments.
+     *
+     * @param args - `--name=value` arguments.
+     * @return the options, with defaults for the arguments that are not set.
+     * @throws IllegalArgumentException if an argument is unknown or malformed.
+     */
+    public static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected `--name=value` argument, got " + arg);
+            }
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        LoadTestOptions options = new LoadTestOptions();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            String value = entry.getValue();
+            switch (entry.getKey()) {
+                case "mongo-uri":
+                    options.mongoUri = value;
+                    break;
+                case "database":
+                    options.database = value;
+                    break;
+                case "movies":
+                    options.movies = Integer.parseInt(value);
+                    break;
+                case "comments":
+                    options.comments = Integer.parseInt(value);
+                    break;
+                case "users":
+                    options.users = Integer.parseInt(value);
+                    break;
+                case "seed":
+                    options.seed = Boolean.parseBoolean(value);
+                    break;
+                case "concurrency":
+                    options.concurrency = Integer.parseInt(value);
+                    break;
+                case "warmup-seconds":
+                    options.warmupSeconds = Integer.parseInt(value);
+                    break;
+                case "duration-seconds":
+                    options.durationSeconds = Integer.parseInt(value);
+                    break;
+                case "mix":
+                    options.mix = parseMix(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option --" + entry.getKey());
+            }
+        }
+        return options;
+    }
+
+    private static Map<Endpoint, Integer> parseMix(String value) {
+        Map<Endpoint, Integer> mix = new LinkedHashMap<>();
+        for (String pair : value.split(",")) {
+            String[] parts = pair.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected `endpoint:weight` mix entry, got " + pair);
+            }
+            int weight = Integer.parseInt(parts[1]);
+            if (weight > 0) {
+                mix.put(Endpoint.fromName(parts[0]), weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("The endpoint mix is empty");
+        }
+        return mix;
+    }
+
+    /** @return the MongoDB connection string, or null to start an embedded `mongod`. */
+    public String getMongoUri() {
+        return mongoUri;
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    public int getMovies() {
+        return movies;
+    }
+
+    public int getComments() {
+        return comments;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public boolean isSeed() {
+        return seed;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public Map<Endpoint, Integer> getMix() {
+        return mix;
+    }
+}
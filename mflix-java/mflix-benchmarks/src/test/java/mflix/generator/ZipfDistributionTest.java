@@ -0,0 +1,52 @@
+package mflix.generator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+public class ZipfDistributionTest {
+
+  @Test
+  public void testAllocationAddsUpToTotal() {
+    ZipfAllocation allocation = new ZipfAllocation(1000003, 2501, 1.0, 100);
+    Assert.assertEquals(26, allocation.getChunkCount());
+
+    long total = 0;
+    long previous = Long.MAX_VALUE - 1;
+    for (int chunk = 0; chunk < allocation.getChunkCount(); chunk++) {
+      for (long count : allocation.allocate(chunk)) {
+        Assert.assertTrue("counts should not increase with the rank", count <= previous + 1);
+        previous = count;
+        total += count;
+      }
+    }
+    Assert.assertEquals(1000003, total);
+  }
+
+  @Test
+  public void testAllocationIsSkewed() {
+    ZipfAllocation allocation = new ZipfAllocation(1000000, 1000, 1.0, 1000);
+    long[] counts = allocation.allocate(0);
+    // with an exponent of 1, rank 1 gets twice as many items as rank 2, ten times rank 10
+    Assert.assertEquals(2.0, (double) counts[0] / counts[1], 0.01);
+    Assert.assertEquals(10.0, (double) counts[0] / counts[9], 0.05);
+  }
+
+  @Test
+  public void testSamplerFollowsPowerLaw() {
+    ZipfSampler sampler = new ZipfSampler(100000, 1.2);
+    SplittableRandom random = new SplittableRandom(7);
+    int samples = 1000000;
+    int[] frequencies = new int[4];
+    for (int i = 0; i < samples; i++) {
+      int rank = sampler.sample(random);
+      Assert.assertTrue(rank >= 1 && rank <= 100000);
+      if (rank <= 3) {
+        frequencies[rank]++;
+      }
+    }
+    Assert.assertEquals(Math.pow(2, 1.2), (double) frequencies[1] / frequencies[2], 0.05);
+    Assert.assertEquals(Math.pow(3, 1.2), (double) frequencies[1] / frequencies[3], 0.1);
+  }
+}
@@ -0,0 +1,181 @@
+package mflix.api.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Size bounded cache whose entries expire a fixed time after they were stored. When full, the
+ * least recently used entry is evicted.
+ *
+ * <p>All operations lock the cache, but values are loaded outside of the lock: two threads missing
+ * the same key concurrently both load it, and the last one stored wins. A value loaded while an
+ * invalidation happened is returned but not cached, as it may predate the invalidated change.
+ * Null values are not cached.
+ *
+ * @param <K> - key type.
+ * @param <V> - value type.
+ */
+public class BoundedTtlCache<K, V> {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier nanoTime;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    // incremented by every invalidation, guarded by `entries`
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize - maximum number of entries, 0 disables the cache.
+     * @param ttl     - time to live of the entries.
+     * @param unit    - time unit of `ttl`.
+     */
+    public BoundedTtlCache(int maxSize, long ttl, TimeUnit unit) {
+        this(maxSize, ttl, unit, System::nanoTime);
+    }
+
+    BoundedTtlCache(int maxSize, long ttl, TimeUnit unit, LongSupplier nanoTime) {
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.nanoTime = nanoTime;
+        this.entries =
+                new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                        if (size() > BoundedTtlCache.this.maxSize) {
+                            evictions.increment();
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+    }
+
+    /**
+     * Returns the cached value of a key.
+     *
+     * @param key - cache key.
+     * @return the value, or null if it is not cached or has expired.
+     */
+    public V get(K key) {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expiresAt - nanoTime.getAsLong() > 0) {
+                hits.increment();
+                return entry.value;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Returns the cached value of a key, loading and caching it on a miss.
+     *
+     * @param key    - cache key.
+     * @param loader - computes the value of a missing key, may return null.
+     * @return the cached or loaded value.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        long loadGeneration;
+        synchronized (entries) {
+            loadGeneration = generation;
+        }
+        value = loader.apply(key);
+        if (value != null && maxSize > 0) {
+            Entry<V> entry = new Entry<>(value, nanoTime.getAsLong() + ttlNanos);
+            synchronized (entries) {
+                if (generation == loadGeneration) {
+                    entries.put(key, entry);
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Caches a value.
+     *
+     * @param key   - cache key.
+     * @param value - value, not cached if null.
+     */
+    public void put(K key, V value) {
+        if (value == null || maxSize <= 0) {
+            return;
+        }
+        Entry<V> entry = new Entry<>(value, nanoTime.getAsLong() + ttlNanos);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Removes a key from the cache.
+     *
+     * @param key - cache key.
+     */
+    public void invalidate(K key) {
+        synchronized (entries) {
+            generation++;
+            entries.remove(key);
+        }
+    }
+
+    /** Removes every entry. */
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation++;
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Summarizes the cache activity.
+     *
+     * @return Map with the number of entries, hits, misses and evictions, and the hit ratio.
+     */
+    public Map<String, Object> snapshot() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("size", size());
+        snapshot.put("max_size", maxSize);
+        snapshot.put("hits", hitCount);
+        snapshot.put("misses", missCount);
+        snapshot.put("evictions", evictions.sum());
+        snapshot.put(
+                "hit_ratio", hitCount + missCount == 0 ? 0 : (double) hitCount / (hitCount + missCount));
+        return snapshot;
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package mflix.api.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent identical calls: while a call for a key is in flight, other calls for the
+ * same key wait for it and receive its result, or its exception, instead of running again. Nothing
+ * is cached once the call completes.
+ *
+ * <p>The result instance is shared by all the callers of a flight, so it must not be modified.
+ *
+ * @param <K> - call key type.
+ * @param <V> - call result type.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+
+    /**
+     * Runs a call, or joins the identical call in flight.
+     *
+     * @param key  - identifies the call.
+     * @param call - the call.
+     * @return the call result.
+     */
+    public V run(K key, Supplier<V> call) {
+        calls.increment();
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            collapsed.increment();
+            try {
+                return leader.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            V result = call.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Summarizes the collapsed calls.
+     *
+     * @return Map with the number of calls, of calls that joined another call, and of calls in
+     * flight.
+     */
+    public Map<String, Object> snapshot() {
+        long callCount = calls.sum();
+        long collapsedCount = collapsed.sum();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("calls", callCount);
+        snapshot.put("collapsed", collapsedCount);
+        snapshot.put("collapsed_ratio", callCount == 0 ? 0 : (double) collapsedCount / callCount);
+        snapshot.put("in_flight", inFlight.size());
+        return snapshot;
+    }
+}
@@ -0,0 +1,271 @@
+package mflix.api.controllers;
+
+import mflix.api.daos.CommentCountBuffer;
+import mflix.api.daos.CommentWriteCoalescer;
+import mflix.api.daos.DaoProfiler;
+import mflix.api.daos.MovieFilterIndex;
+import mflix.api.metrics.MongoDriverMetrics;
+import mflix.api.models.User;
+import mflix.api.services.FacetedSearchService;
+import mflix.api.services.MoviesService;
+import mflix.api.services.PasswordHashingService;
+import mflix.api.services.ResponseVersions;
+import mflix.api.services.SearchResultCache;
+import mflix.api.services.SerializedResponseCache;
+import mflix.api.services.TopMoviesFeed;
+import mflix.api.services.UserDeletionService;
+import mflix.api.services.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+@CrossOrigin(origins = "*")
+@RequestMapping(path = "/api/v1/admin")
+@RestController
+public class AdminController extends ApiController {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserDeletionService userDeletionService;
+
+    @Autowired
+    private PasswordHashingService passwordHashingService;
+
+    @Autowired
+    private SearchResultCache searchResultCache;
+
+    @Autowired
+    private SerializedResponseCache responseCache;
+
+    @Autowired
+    private ResponseVersions responseVersions;
+
+    @Autowired
+    private FacetedSearchService facetedSearchService;
+
+    @Autowired
+    private MovieFilterIndex movieFilterIndex;
+
+    @Autowired
+    private TopMoviesFeed topMoviesFeed;
+
+    @Autowired
+    private MoviesService moviesService;
+
+    @Autowired
+    private DaoProfiler daoProfiler;
+
+    @Autowired
+    private MongoDriverMetrics driverMetrics;
+
+    @Autowired
+    private CommentCountBuffer commentCountBuffer;
+
+    @Autowired
+    private CommentWriteCoalescer commentWriteCoalescer;
+
+    public AdminController() {
+        super();
+    }
+
+    private boolean isAdmin(String authorizationToken) {
+        String email = getEmailFromRequest(authorizationToken);
+        if (email == null) {
+            return false;
+        }
+        User user = userService.loadUser(email);
+        return user != null && user.isAdmin();
+    }
+
+    private ResponseEntity<Map> unauthorized() {
+        Map<String, Object> results = new HashMap<>();
+        results.put("status", "fail");
+        return ResponseEntity.status(401).body(results);
+    }
+
+    @GetMapping("/dao-latency")
+    public ResponseEntity<Map> daoLatency(
+            @RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        Map<String, Object> results = new HashMap<>();
+        results.put("latencies", daoProfiler.getLatencies());
+        return ResponseEntity.ok(results);
+    }
+
+    @GetMapping("/slow-queries")
+    public ResponseEntity<Map> slowQueries(
+            @RequestHeader("Authorization") String authorizationToken,
+            @RequestParam(value = "limit", required = false, defaultValue = "10") Integer limit) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        Map<String, Object> results = new HashMap<>();
+        results.put("slow_queries", daoProfiler.getTopSlowQueries(limit));
+        return ResponseEntity.ok(results);
+    }
+
+    @DeleteMapping("/slow-queries")
+    public ResponseEntity<Map> resetProfiler(
+            @RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        daoProfiler.reset();
+        return ResponseEntity.ok(Collections.singletonMap("status", "reset"));
+    }
+
+    @GetMapping("/driver-metrics")
+    public ResponseEntity<Map> driverMetrics(
+            @RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(driverMetrics.snapshot());
+    }
+
+    @GetMapping("/comment-counts")
+    public ResponseEntity<Map> commentCounts(
+            @RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(commentCountBuffer.snapshot());
+    }
+
+    @PostMapping("/comment-counts/rebuild")
+    public ResponseEntity<Map> rebuildCommentCounts(
+            @RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        long updated = commentCountBuffer.rebuild();
+        // every count may have been rewritten
+        responseVersions.moviesChanged();
+        searchResultCache.countsChanged();
+        return ResponseEntity.ok(Collections.singletonMap("updated", updated));
+    }
+
+    @GetMapping("/comment-writes")
+    public ResponseEntity<Map> commentWrites(
+            @RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(commentWriteCoalescer.snapshot());
+    }
+
+    @GetMapping("/user-cache")
+    public ResponseEntity<Map> userCache(
+            @RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(userService.getUserCacheStats());
+    }
+
+    @GetMapping("/password-hashing")
+    public ResponseEntity<Map> passwordHashing(
+            @RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(passwordHashingService.snapshot());
+    }
+
+    @GetMapping("/search-cache")
+    public ResponseEntity<Map> searchCache(
+            @RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(searchResultCache.snapshot());
+    }
+
+    @DeleteMapping("/search-cache")
+    public ResponseEntity<Map> invalidateSearchCache(
+            @RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        searchResultCache.bumpEpoch();
+        // cached responses of the old epoch would only be dropped when requested again
+        responseCache.invalidateAll();
+        return ResponseEntity.ok(Collections.singletonMap("status", "invalidated"));
+    }
+
+    @GetMapping("/response-cache")
+    public ResponseEntity<Map> responseCache(
+            @RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(responseCache.snapshot());
+    }
+
+    @GetMapping("/facets")
+    public ResponseEntity<Map> facets(@RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(facetedSearchService.snapshot());
+    }
+
+    @GetMapping("/filter-index")
+    public ResponseEntity<Map> filterIndex(
+            @RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(movieFilterIndex.snapshot());
+    }
+
+    @GetMapping("/top-movies")
+    public ResponseEntity<Map> topMovies(@RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(topMoviesFeed.snapshot());
+    }
+
+    @PostMapping("/top-movies/refresh")
+    public ResponseEntity<Map> refreshTopMovies(
+            @RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        topMoviesFeed.refresh();
+        return ResponseEntity.ok(topMoviesFeed.snapshot());
+    }
+
+    @GetMapping("/collapsed-calls")
+    public ResponseEntity<Map> collapsedCalls(
+            @RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(moviesService.getCollapsedCallStats());
+    }
+
+    @GetMapping("/user-deletions")
+    public ResponseEntity<Map> userDeletions(
+            @RequestHeader("Authorization") String authorizationToken) {
+        if (!isAdmin(authorizationToken)) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(
+                Collections.singletonMap("deletions", userDeletionService.getDeletionsInProgress()));
+    }
+
+    @Override
+    ResponseEntity<Map> index() {
+        return ResponseEntity.ok(Collections.emptyMap());
+    }
+}
@@ -4,11 +4,14 @@ import mflix.api.services.TokenAuthenticationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -35,6 +38,43 @@ public abstract class ApiController {
         return tokenProvider.getAuthenticationUser(jwt);
     }
 
+    /**
+     * Checks the conditional headers of a request against the current version of the response.
+     * `If-None-Match` takes precedence over `If-Modified-Since`, and ETags are compared weakly.
+     *
+     * @param request      - incoming request.
+     * @param eTag         - current ETag of the response.
+     * @param lastModified - current modification time of the response, in milliseconds.
+     * @return true if the client copy is up to date and a 304 can be returned.
+     */
+    protected static boolean isNotModified(HttpServletRequest request, String eTag, long lastModified) {
+        Enumeration<String> ifNoneMatch = request.getHeaders(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && ifNoneMatch.hasMoreElements()) {
+            String current = stripWeakPrefix(eTag);
+            while (ifNoneMatch.hasMoreElements()) {
+                for (String tag : ifNoneMatch.nextElement().split(",")) {
+                    String trimmed = tag.trim();
+                    if ("*".equals(trimmed) || stripWeakPrefix(trimmed).equals(current)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP dates have a one second precision
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static String stripWeakPrefix(String eTag) {
+        return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+    }
+
     @GetMapping(value = "/")
-    abstract ResponseEntity<Map> index();
+    abstract ResponseEntity<?> index();
 }
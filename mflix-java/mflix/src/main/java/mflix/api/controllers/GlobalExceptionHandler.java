@@ -1,5 +1,6 @@
 package mflix.api.controllers;
 
+import mflix.api.services.UserDeletionInProgress;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.validation.FieldError;
@@ -52,4 +53,11 @@ public class GlobalExceptionHandler {
                                 })
                         .collect(Collectors.toList()));
     }
+
+    @ExceptionHandler
+    @ResponseBody
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public Map<String, String> handle(UserDeletionInProgress exception) {
+        return Collections.singletonMap("error", exception.getMessage());
+    }
 }
@@ -1,12 +1,20 @@
 package mflix.api.controllers;
 
 import mflix.api.models.Movie;
+import mflix.api.models.MovieSearchQuery;
+import mflix.api.services.FacetedSearchService;
 import mflix.api.services.MoviesService;
+import mflix.api.services.ResponseVersions;
+import mflix.api.services.SerializedResponseCache;
+import mflix.api.services.SerializedResponseCache.SerializedResponse;
+import mflix.api.services.TopMoviesFeed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.Size;
 import java.util.*;
@@ -19,6 +27,18 @@ public class MovieController extends ApiController {
     @Autowired
     private MoviesService moviesService;
 
+    @Autowired
+    private FacetedSearchService facetedSearchService;
+
+    @Autowired
+    private ResponseVersions responseVersions;
+
+    @Autowired
+    private SerializedResponseCache responseCache;
+
+    @Autowired
+    private TopMoviesFeed topMoviesFeed;
+
     @Value("${api.movies.movies_per_page}")
     private int MOVIES_PER_PAGE = 20;
 
@@ -44,6 +64,9 @@ public class MovieController extends ApiController {
         if (moviesResults.containsKey("movies_count")) {
             results.put("total_results", moviesResults.get("movies_count"));
         }
+        if (moviesResults.containsKey("search_token")) {
+            results.put("search_token", moviesResults.get("search_token"));
+        }
 
         results.put("filters", filters);
 
@@ -51,23 +74,62 @@ public class MovieController extends ApiController {
     }
 
     @Override
-    ResponseEntity<Map> index() {
-        return buildOkResponse(moviesService.getMovies(MOVIES_PER_PAGE, 0), 0, Collections.emptyMap());
+    ResponseEntity<?> index() {
+        // the first page only changes with the movies, as tracked by the search epoch, and with the
+        // top movies feed it is served from
+        String tag = responseVersions.searchETag("index@" + topMoviesFeed.getRefreshedAt());
+        SerializedResponse cached = responseCache.get("index", tag);
+        if (cached == null) {
+            cached =
+                    responseCache.put(
+                            "index",
+                            tag,
+                            buildOkResponse(
+                                    moviesService.getMovies(MOVIES_PER_PAGE, 0), 0, Collections.emptyMap())
+                                    .getBody());
+        }
+        return cached.toResponse(ResponseEntity.ok());
     }
 
     @GetMapping(value = "/id/{movieId}")
-    ResponseEntity getMovie(@PathVariable(value = "movieId") String movieId) {
-        HashMap<String, Object> result = new HashMap<>();
-        Movie movie = moviesService.getMovie(movieId);
-        if (movie == null) {
-            result.put("error", "Not found");
-            return ResponseEntity.badRequest().body(result);
+    ResponseEntity getMovie(
+            @PathVariable(value = "movieId") String movieId, HttpServletRequest request) {
+        // a known version answers conditional requests without reading the movie
+        ResponseVersions.Version version = responseVersions.getMovieVersion(movieId);
+        if (version != null) {
+            String eTag = responseVersions.movieETag(version);
+            long lastModified = responseVersions.movieLastModified(version);
+            if (isNotModified(request, eTag, lastModified)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(eTag)
+                        .lastModified(lastModified)
+                        .build();
+            }
+        } else {
+            version = responseVersions.registerMovie(movieId);
         }
 
-        result.put("movie", movie);
-        result.put("api", "java");
-        result.put("updated_type", moviesService.getMovieDocumentFieldType(movieId, "lastupdated"));
-        return ResponseEntity.ok(result);
+        String eTag = responseVersions.movieETag(version);
+        SerializedResponse cached = responseCache.get("movie:" + movieId, eTag);
+        if (cached == null) {
+            HashMap<String, Object> result = new HashMap<>();
+            Movie movie = moviesService.getMovie(movieId, eTag);
+            if (movie == null) {
+                responseVersions.unregisterMovie(movieId);
+                result.put("error", "Not found");
+                return ResponseEntity.badRequest().body(result);
+            }
+
+            result.put("movie", movie);
+            result.put("api", "java");
+            result.put(
+                    "updated_type", moviesService.getMovieDocumentFieldType(movieId, "lastupdated"));
+            cached = responseCache.put("movie:" + movieId, eTag, result);
+        }
+        return cached.toResponse(
+                ResponseEntity.ok()
+                        .eTag(eTag)
+                        .lastModified(responseVersions.movieLastModified(version)));
     }
 
     @GetMapping(value = "/countries")
@@ -81,32 +143,150 @@ public class MovieController extends ApiController {
     }
 
     @GetMapping(value = "/search")
-    public ResponseEntity<Map> search(
+    public ResponseEntity<?> search(
             @RequestParam(value = "page", required = false, defaultValue = "0") @Min(0) Integer page,
             @RequestParam(value = "text", required = false) ArrayList<String> text,
             @RequestParam(value = "cast", required = false) ArrayList<String> cast,
-            @RequestParam(value = "genre", required = false) ArrayList<String> genre) {
+            @RequestParam(value = "genre", required = false) ArrayList<String> genre,
+            @RequestParam(value = "min_year", required = false) Integer minYear,
+            @RequestParam(value = "max_year", required = false) Integer maxYear,
+            @RequestParam(value = "min_rating", required = false) Double minRating,
+            @RequestParam(value = "max_rating", required = false) Double maxRating,
+            @RequestParam(value = "search_token", required = false) String searchToken,
+            HttpServletRequest request) {
+
+        MovieSearchQuery query = new MovieSearchQuery();
+        query.setText(text);
+        query.setCast(cast);
+        query.setGenres(genre);
+        query.setMinYear(minYear);
+        query.setMaxYear(maxYear);
+        query.setMinRating(minRating);
+        query.setMaxRating(maxRating);
+        if (query.getCriteriaCount() == 0) {
+            return index();
+        }
 
-        Map<String, List<String>> filters = new HashMap<>();
-        if (text != null) {
-            filters.put("text", text);
-            return buildOkResponse(
-                    moviesService.getMoviesByText(MOVIES_PER_PAGE, page, text), page, filters);
+        Map<String, List<String>> filters = new TreeMap<>();
+        putFilter(filters, "text", text);
+        putFilter(filters, "cast", cast);
+        putFilter(filters, "genre", genre);
+        putFilter(filters, "min_year", minYear);
+        putFilter(filters, "max_year", maxYear);
+        putFilter(filters, "min_rating", minRating);
+        putFilter(filters, "max_rating", maxRating);
+        // search results only change with the search cache versions, and genre pages with the top
+        // movies feed they are served from
+        String version = filters + "@" + page;
+        if (query.getCriteriaCount() == 1 && !query.getGenres().isEmpty()) {
+            version += "@" + topMoviesFeed.getRefreshedAt();
+        }
+        String eTag = responseVersions.searchETag(version);
+        long lastModified = responseVersions.searchLastModified();
+        if (isNotModified(request, eTag, lastModified)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).lastModified(lastModified).build();
         }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .lastModified(lastModified)
+                .body(search(page, query, searchToken, filters).getBody());
+    }
 
-        if (cast != null) {
-            filters.put("cast", cast);
-            return buildOkResponse(
-                    moviesService.getMoviesByCast(MOVIES_PER_PAGE, page, cast), page, filters);
+    private static void putFilter(Map<String, List<String>> filters, String name, List<String> terms) {
+        if (terms != null && !terms.isEmpty()) {
+            filters.put(name, terms);
+        }
+    }
+
+    private static void putFilter(Map<String, List<String>> filters, String name, Number bound) {
+        if (bound != null) {
+            filters.put(name, Collections.singletonList(bound.toString()));
         }
+    }
 
-        if (genre != null) {
-            filters.put("genre", genre);
+    private ResponseEntity<Map> search(
+            Integer page,
+            MovieSearchQuery query,
+            String searchToken,
+            Map<String, List<String>> filters) {
+        // combined criteria are matched by a single query instead of one per criterion
+        if (query.getCriteriaCount() > 1) {
+            return buildOkResponse(
+                    moviesService.searchMovies(query, MOVIES_PER_PAGE, page), page, filters);
+        }
+        if (query.hasText()) {
+            return buildOkResponse(
+                    moviesService.getMoviesByText(
+                            MOVIES_PER_PAGE, page, new ArrayList<>(query.getText()), searchToken),
+                    page,
+                    filters);
+        }
+        if (!query.getCast().isEmpty()) {
             return buildOkResponse(
-                    moviesService.getMoviesByGenre(MOVIES_PER_PAGE, page, genre), page, filters);
+                    moviesService.getMoviesByCast(MOVIES_PER_PAGE, page, new ArrayList<>(query.getCast())),
+                    page,
+                    filters);
+        }
+        if (!query.getGenres().isEmpty()) {
+            return buildOkResponse(
+                    moviesService.getMoviesByGenre(
+                            MOVIES_PER_PAGE, page, new ArrayList<>(query.getGenres())),
+                    page,
+                    filters);
+        }
+        // a year or rating range alone
+        return buildOkResponse(
+                moviesService.searchMovies(query, MOVIES_PER_PAGE, page), page, filters);
+    }
+
+    @GetMapping(value = "/facets")
+    public ResponseEntity<?> facetedSearch(
+            @RequestParam(value = "page", required = false, defaultValue = "0") @Min(0) Integer page,
+            @RequestParam(value = "text", required = false) ArrayList<String> text,
+            @RequestParam(value = "cast", required = false) ArrayList<String> cast,
+            @RequestParam(value = "genre", required = false) ArrayList<String> genre,
+            @RequestParam(value = "country", required = false) ArrayList<String> country,
+            @RequestParam(value = "min_year", required = false) Integer minYear,
+            @RequestParam(value = "max_year", required = false) Integer maxYear,
+            @RequestParam(value = "min_rating", required = false) Double minRating,
+            @RequestParam(value = "max_rating", required = false) Double maxRating,
+            @RequestParam(value = "min_runtime", required = false) Integer minRuntime,
+            @RequestParam(value = "max_runtime", required = false) Integer maxRuntime,
+            HttpServletRequest request) {
+
+        MovieSearchQuery query = new MovieSearchQuery();
+        query.setText(text);
+        query.setCast(cast);
+        query.setGenres(genre);
+        query.setCountries(country);
+        query.setMinYear(minYear);
+        query.setMaxYear(maxYear);
+        query.setMinRating(minRating);
+        query.setMaxRating(maxRating);
+        query.setMinRuntime(minRuntime);
+        query.setMaxRuntime(maxRuntime);
+
+        Map<String, List<String>> filters = new TreeMap<>();
+        putFilter(filters, "text", text);
+        putFilter(filters, "cast", cast);
+        putFilter(filters, "genre", genre);
+        putFilter(filters, "country", country);
+        putFilter(filters, "min_year", minYear);
+        putFilter(filters, "max_year", maxYear);
+        putFilter(filters, "min_rating", minRating);
+        putFilter(filters, "max_rating", maxRating);
+        putFilter(filters, "min_runtime", minRuntime);
+        putFilter(filters, "max_runtime", maxRuntime);
+        String eTag = responseVersions.searchETag("facets" + filters + "@" + page);
+        long lastModified = responseVersions.searchLastModified();
+        if (isNotModified(request, eTag, lastModified)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).lastModified(lastModified).build();
         }
 
-        return index();
+        Map<String, ?> results = facetedSearchService.search(query, MOVIES_PER_PAGE, page);
+        Map<String, Object> response = new HashMap<>(buildOkResponse(results, page, filters).getBody());
+        response.put("facets", results.get("facets"));
+        return ResponseEntity.ok().eTag(eTag).lastModified(lastModified).body(response);
     }
 
     @RequestMapping(value = "/facet-search", method = RequestMethod.GET)
@@ -171,6 +351,25 @@ public class MovieController extends ApiController {
         return ResponseEntity.ok(results);
     }
 
+    @PostMapping(value = "/comments/bulk")
+    public ResponseEntity addComments(
+            @RequestHeader("Authorization") String authorizationToken,
+            @RequestBody List<Map<String, String>> body) {
+        String email = getEmailFromRequest(authorizationToken);
+        Map<String, Object> results = new HashMap<>();
+        if (email == null) {
+            results.put("error", "email not found");
+            return ResponseEntity.badRequest().body(results);
+        }
+
+        if (!moviesService.addMovieComments(email, body, results)) {
+            return ResponseEntity.badRequest().body(results);
+        }
+
+        results.put("auth_token", tokenProvider.mintJWTHeader(email));
+        return ResponseEntity.ok(results);
+    }
+
     @DeleteMapping(value = "/comment")
     public ResponseEntity deleteComment(
             @RequestHeader("Authorization") String authorizationToken,
@@ -16,6 +16,7 @@ import javax.validation.constraints.Size;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @SuppressWarnings("unchecked")
 @CrossOrigin(origins = "*")
@@ -40,30 +41,46 @@ public class UserController extends ApiController {
         return ResponseEntity.ok(response);
     }
 
+    // the password is hashed or verified without holding the request thread
     @PostMapping("/login")
-    public ResponseEntity authenticateUser(@RequestBody Login login) {
+    public CompletableFuture<ResponseEntity> authenticateUser(@RequestBody Login login) {
 
         Map<String, String> results = new HashMap<>();
 
-        User user = userService.authenticate(login.getEmail(), login.getPassword(), results);
-        if (user == null) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(results);
-        }
-
-        return buildSuccess(results.get("auth_token"), user);
+        return userService
+                .authenticateAsync(login.getEmail(), login.getPassword(), results)
+                .thenApply(
+                        user -> {
+                            if (user == null) {
+                                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(results);
+                            }
+                            return buildSuccess(results.get("auth_token"), user);
+                        });
     }
 
     @PostMapping("/register")
-    public ResponseEntity register(@Valid @RequestBody UserRegistry register) {
+    public CompletableFuture<ResponseEntity> register(@Valid @RequestBody UserRegistry register) {
+        return createAndAuthenticate(register, false);
+    }
 
-        Map<String, String> results = new HashMap<>();
+    private CompletableFuture<ResponseEntity> createAndAuthenticate(
+            UserRegistry register, boolean admin) {
 
-        User user = userService.createUser(register, results);
-        if (user == null || user.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(results);
-        }
+        Map<String, String> results = new HashMap<>();
 
-        return authenticateUser(new Login(register.getEmail(), register.getPassword()));
+        return userService
+                .createUserAsync(register, admin, results)
+                .thenCompose(
+                        user -> {
+                            if (user == null || user.isEmpty()) {
+                                if (admin) {
+                                    results.put("status", "fail");
+                                }
+                                return CompletableFuture.completedFuture(
+                                        ResponseEntity.status(HttpStatus.BAD_REQUEST).body(results));
+                            }
+                            return authenticateUser(new Login(register.getEmail(), register.getPassword()));
+                        });
     }
 
     @PostMapping("/logout")
@@ -108,16 +125,8 @@ public class UserController extends ApiController {
     }
 
     @PostMapping("/make-admin")
-    public ResponseEntity makeUserAdmin(@RequestBody UserRegistry registry) {
-        Map<String, String> results = new HashMap<>();
-        User user = userService.createAdminUser(registry, results);
-
-        if (user == null || user.isEmpty()) {
-            results.put("status", "fail");
-            return ResponseEntity.badRequest().body(results);
-        }
-
-        return authenticateUser(new Login(registry.getEmail(), registry.getPassword()));
+    public CompletableFuture<ResponseEntity> makeUserAdmin(@RequestBody UserRegistry registry) {
+        return createAndAuthenticate(registry, true);
     }
 
     @GetMapping("/comment-report")
@@ -1,18 +1,29 @@
 package mflix.api.daos;
 
+import com.mongodb.ClientSessionOptions;
 import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ReadConcern;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import org.bson.BsonDocument;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @Configuration
 public abstract class AbstractMFlixDao {
@@ -22,6 +33,10 @@ public abstract class AbstractMFlixDao {
     protected MongoClient mongoClient;
     @Value("${spring.mongodb.uri}")
     private String connectionString;
+    private DaoProfiler profiler;
+    private MongoClientSettings clientSettings;
+    private ReadPreferenceRouter readRouter;
+    private volatile Map<String, Object> configuration;
 
     protected AbstractMFlixDao(MongoClient mongoClient, String databaseName) {
         this.mongoClient = mongoClient;
@@ -29,12 +44,221 @@ public abstract class AbstractMFlixDao {
         this.db = this.mongoClient.getDatabase(MFLIX_DATABASE);
     }
 
+    @Autowired(required = false)
+    public void setProfiler(DaoProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    @Autowired(required = false)
+    public void setClientSettings(MongoClientSettings clientSettings) {
+        this.clientSettings = clientSettings;
+    }
+
+    @Autowired(required = false)
+    public void setReadRouter(ReadPreferenceRouter readRouter) {
+        this.readRouter = readRouter;
+    }
+
+    /**
+     * Returns the collection configured with the read preference that matches the read intent.
+     * Without a router, reads go to the collection default, the primary.
+     *
+     * @param collection - collection to be read.
+     * @param intent     - consistency needs of the read.
+     * @param <T>        - collection document type.
+     * @return MongoCollection to read from.
+     */
+    protected <T> MongoCollection<T> forRead(MongoCollection<T> collection, ReadIntent intent) {
+        if (readRouter == null) {
+            return collection;
+        }
+        return collection.withReadPreference(readRouter.route(intent));
+    }
+
+    /**
+     * Starts a causally consistent session. Reads issued in the session after a write observe that
+     * write, even when they are routed to a secondary.
+     *
+     * @return ClientSession to be closed by the caller.
+     */
+    public ClientSession startCausalSession() {
+        return mongoClient.startSession(
+                ClientSessionOptions.builder().causallyConsistent(true).build());
+    }
+
+    /**
+     * Configures a collection for reads within a causally consistent session. Causal guarantees
+     * require majority read concern, which makes those reads safe on any replica set member.
+     *
+     * @param collection - collection to be read.
+     * @param <T>        - collection document type.
+     * @return MongoCollection to read from.
+     */
+    protected <T> MongoCollection<T> causalRead(MongoCollection<T> collection) {
+        return forRead(collection, ReadIntent.CAUSAL).withReadConcern(ReadConcern.MAJORITY);
+    }
+
+    /**
+     * Configures a collection for writes within a causally consistent session, upgrading its
+     * write concern to majority while keeping the configured `wtimeout`.
+     *
+     * @param collection - collection to be written.
+     * @param <T>        - collection document type.
+     * @return MongoCollection to write to.
+     */
+    protected <T> MongoCollection<T> causalWrite(MongoCollection<T> collection) {
+        Integer wtimeout = collection.getWriteConcern().getWTimeout(TimeUnit.MILLISECONDS);
+        WriteConcern majority =
+                wtimeout == null
+                        ? WriteConcern.MAJORITY
+                        : WriteConcern.MAJORITY.withWTimeout(wtimeout, TimeUnit.MILLISECONDS);
+        return collection.withWriteConcern(majority);
+    }
+
+    /**
+     * Runs a Dao operation through the {@link DaoProfiler}, if one is configured.
+     *
+     * @param method    - Dao method name.
+     * @param command   - supplier of the equivalent find, aggregate or write command, used to explain
+     *                  slow operations. Can be null.
+     * @param operation - the Dao operation.
+     * @param <T>       - operation result type.
+     * @return the operation result.
+     */
+    protected <T> T profile(String method, Supplier<Document> command, Supplier<T> operation) {
+        if (profiler == null) {
+            return operation.get();
+        }
+        return profiler.profile(
+                getClass().getSimpleName() + "." + method, db, command, operation);
+    }
+
+    /**
+     * Builds the `find` command document equivalent to a collection find call.
+     *
+     * @param collection - collection name.
+     * @param filter     - query filter.
+     * @param projection - query projection, can be null.
+     * @param sort       - sort criteria, can be null.
+     * @param skip       - number of documents to be skipped.
+     * @param limit      - max number of documents to be returned, 0 for no limit.
+     * @return find command document.
+     */
+    protected static Document findCommand(
+            String collection, Bson filter, Bson projection, Bson sort, int skip, int limit) {
+        Document command = new Document("find", collection).append("filter", toBsonDocument(filter));
+        if (projection != null) {
+            command.append("projection", toBsonDocument(projection));
+        }
+        if (sort != null) {
+            command.append("sort", toBsonDocument(sort));
+        }
+        if (skip > 0) {
+            command.append("skip", skip);
+        }
+        if (limit > 0) {
+            command.append("limit", limit);
+        }
+        return command;
+    }
+
+    /**
+     * Builds the `update` command document equivalent to a collection updateOne or updateMany call.
+     *
+     * @param collection - collection name.
+     * @param filter     - query filter.
+     * @param update     - update operators.
+     * @param multi      - true for updateMany.
+     * @return update command document.
+     */
+    protected static Document updateCommand(String collection, Bson filter, Bson update, boolean multi) {
+        return new Document("update", collection)
+                .append(
+                        "updates",
+                        Collections.singletonList(
+                                new Document("q", toBsonDocument(filter))
+                                        .append("u", toBsonDocument(update))
+                                        .append("multi", multi)));
+    }
+
+    /**
+     * Builds the `delete` command document equivalent to a collection deleteOne or deleteMany call.
+     *
+     * @param collection - collection name.
+     * @param filter     - query filter.
+     * @param multi      - true for deleteMany.
+     * @return delete command document.
+     */
+    protected static Document deleteCommand(String collection, Bson filter, boolean multi) {
+        return new Document("delete", collection)
+                .append(
+                        "deletes",
+                        Collections.singletonList(
+                                new Document("q", toBsonDocument(filter)).append("limit", multi ? 0 : 1)));
+    }
+
+    /**
+     * Builds the `findAndModify` command document equivalent to a collection findOneAndUpdate or
+     * findOneAndDelete call.
+     *
+     * @param collection - collection name.
+     * @param filter     - query filter.
+     * @param update     - update operators, or null for findOneAndDelete.
+     * @return findAndModify command document.
+     */
+    protected static Document findAndModifyCommand(String collection, Bson filter, Bson update) {
+        Document command =
+                new Document("findAndModify", collection).append("query", toBsonDocument(filter));
+        return update == null
+                ? command.append("remove", true)
+                : command.append("update", toBsonDocument(update));
+    }
+
+    /**
+     * Builds the `aggregate` command document equivalent to a collection aggregate call.
+     *
+     * @param collection - collection name.
+     * @param pipeline   - aggregation pipeline stages.
+     * @return aggregate command document.
+     */
+    protected static Document aggregateCommand(String collection, List<? extends Bson> pipeline) {
+        List<BsonDocument> stages = new ArrayList<>();
+        for (Bson stage : pipeline) {
+            stages.add(toBsonDocument(stage));
+        }
+        return new Document("aggregate", collection)
+                .append("pipeline", stages)
+                .append("cursor", new Document());
+    }
+
+    private static BsonDocument toBsonDocument(Bson bson) {
+        return bson.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+    }
+
+    private Integer getMaxPoolSize() {
+        if (clientSettings != null) {
+            return clientSettings.getConnectionPoolSettings().getMaxSize();
+        }
+        return new ConnectionString(connectionString).getMaxConnectionPoolSize();
+    }
+
     public ObjectId generateObjectId() {
         return new ObjectId();
     }
 
+    /**
+     * Collects the authenticated user role and the configured pool size and write concern timeout.
+     * The values do not change while the application runs, so the result is computed once and
+     * served from memory afterwards.
+     *
+     * @return Map with `role`, `pool_size` and `wtimeout` keys, or an empty map if the connected
+     * user has no roles.
+     */
     public Map<String, Object> getConfiguration() {
-        ConnectionString connString = new ConnectionString(connectionString);
+        Map<String, Object> cached = configuration;
+        if (cached != null) {
+            return cached;
+        }
         Bson command = new Document("connectionStatus", 1);
         Document connectionStatus = this.mongoClient.getDatabase(MFLIX_DATABASE).runCommand(command);
 
@@ -46,13 +270,14 @@ public abstract class AbstractMFlixDao {
         if (!authUserRoles.isEmpty()) {
             configuration.put("role", ((Document) authUserRoles.get(0)).getString(
                     "role"));
-            configuration.put("pool_size", connString.getMaxConnectionPoolSize());
+            configuration.put("pool_size", getMaxPoolSize());
             configuration.put(
                     "wtimeout",
                     this.mongoClient
                             .getDatabase(MFLIX_DATABASE)
                             .getWriteConcern()
                             .getWTimeout(TimeUnit.MILLISECONDS));
+            this.configuration = Collections.unmodifiableMap(configuration);
         }
         return configuration;
     }
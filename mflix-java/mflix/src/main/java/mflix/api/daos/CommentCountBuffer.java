@@ -0,0 +1,232 @@
+package mflix.api.daos;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Maintains the `num_comments` field of the movies. Comment writes increment an in-process
+ * LongAdder per movie, which spreads concurrent increments of a hot movie over several cells
+ * instead of contending on a single document. The pending increments are periodically flushed as a
+ * single unordered bulk of `$inc` updates, one per movie.
+ *
+ * <p>Counts are eventually consistent: they lag by up to one flush interval, and increments not
+ * yet flushed are lost if the process is killed. Flush listeners are told which movies had their
+ * count written, to invalidate the responses showing it.
+ */
+@Component
+public class CommentCountBuffer extends AbstractMFlixDao {
+
+    public static final String NUM_COMMENTS_FIELD = "num_comments";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    // entries are never removed: a removed adder could still be incremented by a concurrent writer,
+    // and the map is bounded by the number of movies.
+    private final ConcurrentMap<ObjectId, LongAdder> pending = new ConcurrentHashMap<>();
+    private final MongoCollection<Document> moviesCollection;
+    private final int batchSize;
+    private final LongAdder increments = new LongAdder();
+    private final LongAdder flushedUpdates = new LongAdder();
+    private final List<Consumer<Collection<ObjectId>>> flushListeners = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public CommentCountBuffer(
+            MongoClient mongoClient,
+            @Value("${spring.mongodb.database}") String databaseName,
+            @Value("${mflix.comments.count_flush_batch:500}") int batchSize) {
+        super(mongoClient, databaseName);
+        this.moviesCollection = db.getCollection(MovieDao.MOVIES_COLLECTION);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Records a change of the number of comments of a movie.
+     *
+     * @param movieId - movie identifier.
+     * @param delta   - 1 for an added comment, -1 for a deleted comment.
+     */
+    public void increment(ObjectId movieId, long delta) {
+        pending.computeIfAbsent(movieId, k -> new LongAdder()).add(delta);
+        increments.increment();
+    }
+
+    /**
+     * Registers a listener called after every flush writing counts, on the flushing thread.
+     *
+     * @param listener - receives the ids of the movies whose count was written.
+     */
+    public void addFlushListener(Consumer<Collection<ObjectId>> listener) {
+        flushListeners.add(listener);
+    }
+
+    /**
+     * Takes the pending increments, resetting them.
+     *
+     * @return Map of movie id to non zero count change.
+     */
+    Map<ObjectId, Long> drain() {
+        Map<ObjectId, Long> deltas = new LinkedHashMap<>();
+        pending.forEach(
+                (movieId, adder) -> {
+                    // sumThenReset is not atomic: increments landing between its read and reset of a
+                    // cell would be lost, while subtracting the taken sum keeps them for the next flush
+                    long delta = adder.sum();
+                    if (delta != 0) {
+                        adder.add(-delta);
+                        deltas.put(movieId, delta);
+                    }
+                });
+        return deltas;
+    }
+
+    /** Flushes the pending increments as batched `$inc` updates. */
+    @Scheduled(fixedDelayString = "${mflix.comments.count_flush_ms:1000}")
+    public void flush() {
+        Map<ObjectId, Long> deltas = drain();
+        List<ObjectId> written = new ArrayList<>();
+        List<ObjectId> batch = new ArrayList<>(batchSize);
+        for (ObjectId movieId : deltas.keySet()) {
+            batch.add(movieId);
+            if (batch.size() >= batchSize) {
+                written.addAll(write(batch, deltas));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            written.addAll(write(batch, deltas));
+        }
+        if (!written.isEmpty()) {
+            for (Consumer<Collection<ObjectId>> listener : flushListeners) {
+                listener.accept(written);
+            }
+        }
+    }
+
+    /** @return ids of the movies whose count was written. */
+    List<ObjectId> write(List<ObjectId> movieIds, Map<ObjectId, Long> deltas) {
+        List<WriteModel<Document>> updates = new ArrayList<>(movieIds.size());
+        for (ObjectId movieId : movieIds) {
+            updates.add(
+                    new UpdateOneModel<>(
+                            Filters.eq("_id", movieId), Updates.inc(NUM_COMMENTS_FIELD, deltas.get(movieId))));
+        }
+        try {
+            profile(
+                    "flush",
+                    null,
+                    () -> moviesCollection.bulkWrite(updates, new BulkWriteOptions().ordered(false)));
+            flushedUpdates.add(updates.size());
+            return movieIds;
+        } catch (MongoBulkWriteException e) {
+            // unordered: only the failed updates have to be retried
+            Map<ObjectId, Long> failed = new HashMap<>();
+            for (BulkWriteError error : e.getWriteErrors()) {
+                ObjectId movieId = movieIds.get(error.getIndex());
+                failed.put(movieId, deltas.get(movieId));
+            }
+            log.warn("Unable to update the comment count of {} movies: {}", failed.size(), e.getMessage());
+            restore(failed);
+            flushedUpdates.add(updates.size() - failed.size());
+            List<ObjectId> written = new ArrayList<>(movieIds);
+            written.removeAll(failed.keySet());
+            return written;
+        } catch (Exception e) {
+            log.warn("Unable to flush the comment count of {} movies: {}", movieIds.size(), e.getMessage());
+            Map<ObjectId, Long> failed = new HashMap<>();
+            movieIds.forEach(movieId -> failed.put(movieId, deltas.get(movieId)));
+            restore(failed);
+            return Collections.emptyList();
+        }
+    }
+
+    /** Puts back increments that could not be written, so that the next flush retries them. */
+    void restore(Map<ObjectId, Long> deltas) {
+        deltas.forEach((movieId, delta) -> pending.computeIfAbsent(movieId, k -> new LongAdder()).add(delta));
+    }
+
+    /**
+     * Recomputes `num_comments` of every movie from the `comments` collection, for movies created
+     * before the field existed. Increments recorded while the rebuild runs may be counted twice,
+     * so it should run while comments are not being written.
+     *
+     * @return number of movies updated.
+     */
+    public long rebuild() {
+        flush();
+        List<Document> pipeline =
+                Collections.singletonList(
+                        new Document(
+                                "$group",
+                                new Document("_id", "$movie_id").append("count", new Document("$sum", 1))));
+        List<WriteModel<Document>> updates = new ArrayList<>(batchSize);
+        long updated = 0;
+        for (Document group :
+                db.getCollection(CommentDao.COMMENT_COLLECTION).aggregate(pipeline).allowDiskUse(true)) {
+            updates.add(
+                    new UpdateOneModel<>(
+                            Filters.eq("_id", group.get("_id")),
+                            Updates.set(NUM_COMMENTS_FIELD, group.getInteger("count"))));
+            if (updates.size() >= batchSize) {
+                updated += moviesCollection.bulkWrite(updates, new BulkWriteOptions().ordered(false)).getModifiedCount();
+                updates.clear();
+            }
+        }
+        if (!updates.isEmpty()) {
+            updated += moviesCollection.bulkWrite(updates, new BulkWriteOptions().ordered(false)).getModifiedCount();
+        }
+        updated +=
+                moviesCollection
+                        .updateMany(Filters.exists(NUM_COMMENTS_FIELD, false), Updates.set(NUM_COMMENTS_FIELD, 0))
+                        .getModifiedCount();
+        return updated;
+    }
+
+    /**
+     * Summarizes the buffer activity.
+     *
+     * @return Map with the number of recorded increments, the number of `$inc` updates written, and
+     * the number of movies with increments not flushed yet.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("increments", increments.sum());
+        snapshot.put("flushed_updates", flushedUpdates.sum());
+        snapshot.put(
+                "pending_movies", pending.values().stream().filter(adder -> adder.sum() != 0).count());
+        return snapshot;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
@@ -1,18 +1,24 @@
 package mflix.api.daos;
 
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoClientSettings;
 import com.mongodb.MongoWriteException;
 import com.mongodb.ReadConcern;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndDeleteOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.Sorts;
 import com.mongodb.client.model.Updates;
-import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 import mflix.api.models.Comment;
+import mflix.api.models.CommentBatchResult;
 import mflix.api.models.Critic;
 import org.bson.Document;
 import org.bson.codecs.configuration.CodecRegistry;
@@ -37,10 +43,13 @@ import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
 public class CommentDao extends AbstractMFlixDao {
 
     public static String COMMENT_COLLECTION = "comments";
+
+    public static final String ANONYMIZED_NAME = "[deleted]";
     private final Logger log;
     private MongoCollection<Comment> commentCollection;
     private MongoCollection<Document> commentCollectionAux;
     private CodecRegistry pojoCodecRegistry;
+    private CommentCountBuffer commentCountBuffer;
 
     @Autowired
     public CommentDao(
@@ -57,6 +66,29 @@ public class CommentDao extends AbstractMFlixDao {
         commentCollectionAux = db.getCollection(COMMENT_COLLECTION);
     }
 
+    @Autowired(required = false)
+    public void setCommentCountBuffer(CommentCountBuffer commentCountBuffer) {
+        this.commentCountBuffer = commentCountBuffer;
+    }
+
+    /**
+     * Applies a change to the `num_comments` field of a movie. Changes are buffered and batched
+     * when a CommentCountBuffer is available, and written right away otherwise.
+     *
+     * @param movieId - movie identifier.
+     * @param delta   - count change.
+     */
+    private void countComments(ObjectId movieId, long delta) {
+        if (commentCountBuffer != null) {
+            commentCountBuffer.increment(movieId, delta);
+            return;
+        }
+        db.getCollection(MovieDao.MOVIES_COLLECTION)
+                .updateOne(
+                        Filters.eq("_id", movieId),
+                        Updates.inc(CommentCountBuffer.NUM_COMMENTS_FIELD, delta));
+    }
+
     /**
      * Returns a Comment object that matches the provided id string.
      *
@@ -64,7 +96,26 @@ public class CommentDao extends AbstractMFlixDao {
      * @return Comment object corresponding to the identifier value
      */
     public Comment getComment(String id) {
-        return commentCollection.find(new Document("_id", new ObjectId(id))).first();
+        return getComment(null, id);
+    }
+
+    /**
+     * Returns the Comment object that matches the provided id string, reading within a causally
+     * consistent session.
+     *
+     * @param session - causally consistent session, or null to read outside of a session.
+     * @param id      - comment identifier
+     * @return Comment object corresponding to the identifier value
+     */
+    public Comment getComment(ClientSession session, String id) {
+        Bson idFilter = new Document("_id", new ObjectId(id));
+        return profile(
+                "getComment",
+                () -> findCommand(COMMENT_COLLECTION, idFilter, null, null, 0, 1),
+                () ->
+                        session == null
+                                ? forRead(commentCollection, ReadIntent.DETAIL).find(idFilter).first()
+                                : causalRead(commentCollection).find(session, idFilter).first());
     }
 
     /**
@@ -79,16 +130,126 @@ public class CommentDao extends AbstractMFlixDao {
      * returns the resulting Comment object.
      */
     public Comment addComment(Comment comment) {
+        return addComment(null, comment);
+    }
+
+    /**
+     * Adds a new Comment to the collection within a causally consistent session, so that reads
+     * issued later in the same session observe it.
+     *
+     * @param session - causally consistent session, or null to write outside of a session.
+     * @param comment - Comment object.
+     * @return the inserted Comment object.
+     */
+    public Comment addComment(ClientSession session, Comment comment) {
         if (comment.getId()==null) {
             throw new IncorrectDaoOperation("");
         }
         // TODO> Ticket - Update User reviews: implement the functionality that enables adding a new comment.
-        commentCollection.insertOne(comment);
+        profile(
+                "addComment",
+                null,
+                () -> {
+                    if (session == null) {
+                        commentCollection.insertOne(comment);
+                    } else {
+                        causalWrite(commentCollection).insertOne(session, comment);
+                    }
+                    return comment;
+                });
+        countComments(comment.getMovieObjectId(), 1);
         // TODO> Ticket - Handling Errors: Implement a try catch block to
         // handle a potential write exception when given a wrong commentId.
         return comment;
     }
 
+    /**
+     * Adds a batch of comments with a single unordered insertMany. Comments that fail validation or
+     * that the server rejects are reported individually and do not prevent the insert of the
+     * others. Comments without an id get a new one.
+     *
+     * @param comments - Comment objects.
+     * @return the inserted comments and the failure reason of the others, by batch position.
+     */
+    public CommentBatchResult addComments(List<Comment> comments) {
+        return addComments(null, comments);
+    }
+
+    /**
+     * Adds a batch of comments within a causally consistent session, so that reads issued later in
+     * the same session observe them.
+     *
+     * @param session  - causally consistent session, or null to write outside of a session.
+     * @param comments - Comment objects.
+     * @return the inserted comments and the failure reason of the others, by batch position.
+     */
+    public CommentBatchResult addComments(ClientSession session, List<Comment> comments) {
+        CommentBatchResult result = new CommentBatchResult();
+        List<Comment> valid = new ArrayList<>(comments.size());
+        List<Integer> validPositions = new ArrayList<>(comments.size());
+        for (int i = 0; i < comments.size(); i++) {
+            Comment comment = comments.get(i);
+            String error = validate(comment);
+            if (error != null) {
+                result.addError(i, error);
+                continue;
+            }
+            if (comment.getOid() == null) {
+                comment.setOid(new ObjectId());
+            }
+            valid.add(comment);
+            validPositions.add(i);
+        }
+        if (valid.isEmpty()) {
+            return result;
+        }
+
+        Set<Integer> failed = new HashSet<>();
+        InsertManyOptions options = new InsertManyOptions().ordered(false);
+        try {
+            profile(
+                    "addComments",
+                    null,
+                    () -> {
+                        if (session == null) {
+                            commentCollection.insertMany(valid, options);
+                        } else {
+                            causalWrite(commentCollection).insertMany(session, valid, options);
+                        }
+                        return valid;
+                    });
+        } catch (MongoBulkWriteException e) {
+            for (BulkWriteError error : e.getWriteErrors()) {
+                failed.add(error.getIndex());
+                result.addError(validPositions.get(error.getIndex()), error.getMessage());
+            }
+        }
+        for (int i = 0; i < valid.size(); i++) {
+            if (!failed.contains(i)) {
+                Comment comment = valid.get(i);
+                result.addInserted(comment);
+                countComments(comment.getMovieObjectId(), 1);
+            }
+        }
+        return result;
+    }
+
+    private static String validate(Comment comment) {
+        if (comment == null) {
+            return "missing comment";
+        }
+        if (comment.getMovieObjectId() == null) {
+            return "missing or invalid movie_id";
+        }
+        if (StringUtils.isEmpty(comment.getEmail())) {
+            return "missing email";
+        }
+        if (StringUtils.isEmpty(comment.getText())) {
+            return "missing comment text";
+        }
+        return null;
+    }
+
     /**
      * Updates the comment text matching commentId and user email. This method would be equivalent to
      * running the following mongo shell command:
@@ -103,20 +264,38 @@ public class CommentDao extends AbstractMFlixDao {
      * @return true if successfully updates the comment text.
      */
     public boolean updateComment(String commentId, String text, String email) {
+        return updateComment(null, commentId, text, email);
+    }
 
-        // TODO> Ticket - Update User reviews: implement the functionality that enables updating an user own comments
-        Bson commentFilterId = Filters.eq("_id", new ObjectId(commentId));
-        Comment comment = commentCollection.find(commentFilterId).iterator().tryNext();
-        if (comment==null) {
-            return false;
-        }
-        if (!comment.getEmail().equals(email)) {
-            return false;
-        }
-        commentCollection.updateOne(commentFilterId, set("text", text));
-        // TODO> Ticket - Handling Errors: Implement a try catch block to
-        // handle a potential write exception when given a wrong commentId.
-        return true;
+    /**
+     * Updates the comment text matching commentId and user email within a causally consistent
+     * session.
+     *
+     * @param session   - causally consistent session, or null to write outside of a session.
+     * @param commentId - comment id string value.
+     * @param text      - comment text to be updated.
+     * @param email     - user email.
+     * @return true if successfully updates the comment text.
+     */
+    public boolean updateComment(ClientSession session, String commentId, String text, String email) {
+
+        // a single filtered write: the ownership check is part of the filter, so that a comment
+        // cannot change owner between a read and the update.
+        Bson ownCommentFilter = ownCommentFilter(commentId, email);
+        Bson update = set("text", text);
+        UpdateResult result =
+                profile(
+                        "updateComment",
+                        () -> updateCommand(COMMENT_COLLECTION, ownCommentFilter, update, false),
+                        () ->
+                                session == null
+                                        ? commentCollection.updateOne(ownCommentFilter, update)
+                                        : causalWrite(commentCollection).updateOne(session, ownCommentFilter, update));
+        return result.getMatchedCount() > 0;
+    }
+
+    private static Bson ownCommentFilter(String commentId, String email) {
+        return Filters.and(Filters.eq("_id", new ObjectId(commentId)), Filters.eq("email", email));
     }
 
     /**
@@ -127,24 +306,122 @@ public class CommentDao extends AbstractMFlixDao {
      * @return true if successful deletes the comment.
      */
     public boolean deleteComment(String commentId, String email) {
+        return deleteComment(null, commentId, email);
+    }
+
+    /**
+     * Deletes comment that matches user email and commentId within a causally consistent session.
+     *
+     * @param session   - causally consistent session, or null to write outside of a session.
+     * @param commentId - commentId string value.
+     * @param email     - user email value.
+     * @return true if successful deletes the comment.
+     */
+    public boolean deleteComment(ClientSession session, String commentId, String email) {
+        return findAndDeleteComment(session, commentId, email) != null;
+    }
+
+    /**
+     * Deletes comment that matches user email and commentId within a causally consistent session,
+     * returning the movie it commented.
+     *
+     * @param session   - causally consistent session, or null to write outside of a session.
+     * @param commentId - commentId string value.
+     * @param email     - user email value.
+     * @return the deleted comment, with only its id and movie id, or null if no comment matches.
+     */
+    public Comment findAndDeleteComment(ClientSession session, String commentId, String email) {
         if (StringUtils.isEmpty(commentId)) {
             throw new IllegalArgumentException("");
         }
-        Comment comment = getComment(commentId);
-        if (comment==null || !comment.getEmail().equals(email)){
-            return false;
+        // the deleted document carries the movie id needed to maintain the comment count, which
+        // saves reading the comment first.
+        Bson ownCommentFilter = ownCommentFilter(commentId, email);
+        FindOneAndDeleteOptions options =
+                new FindOneAndDeleteOptions().projection(Projections.include("movie_id"));
+        Comment deleted =
+                profile(
+                        "deleteComment",
+                        () -> findAndModifyCommand(COMMENT_COLLECTION, ownCommentFilter, null),
+                        () ->
+                                session == null
+                                        ? commentCollection.findOneAndDelete(ownCommentFilter, options)
+                                        : causalWrite(commentCollection)
+                                                .findOneAndDelete(session, ownCommentFilter, options));
+        if (deleted == null) {
+            return null;
         }
-        Bson deleteFiler = Filters.eq("_id", new ObjectId(commentId));
-        DeleteResult id = commentCollection.deleteOne(deleteFiler);
-        // TODO> Ticket Handling Errors - Implement a try catch block to
-        // handle a potential write exception when given a wrong commentId.
-        return id.getDeletedCount()>0;
+        countComments(deleted.getMovieObjectId(), -1);
+        return deleted;
+    }
+
+    /**
+     * Counts the comments written by an user.
+     *
+     * @param email - user email.
+     * @return number of comments matching the email.
+     */
+    public long countUserComments(String email) {
+        Bson emailFilter = Filters.eq("email", email);
+        return profile(
+                "countUserComments",
+                () -> findCommand(COMMENT_COLLECTION, emailFilter, null, null, 0, 0),
+                () -> commentCollection.countDocuments(emailFilter));
+    }
+
+    /**
+     * Deletes or anonymizes the next batch of comments of an user. Each batch is a find of at most
+     * `batchSize` comment ids followed by one write on those ids, so that users with very large
+     * comment histories are processed in bounded steps. Anonymized comments keep their text, lose
+     * the email and are renamed to {@link #ANONYMIZED_NAME}.
+     *
+     * @param email     - user email.
+     * @param batchSize - maximum number of comments processed.
+     * @param anonymize - true to anonymize the comments, false to delete them.
+     * @return number of comments processed, 0 once the user has no comments left.
+     */
+    public long removeUserCommentBatch(String email, int batchSize, boolean anonymize) {
+        Bson emailFilter = Filters.eq("email", email);
+        List<Comment> batch = new ArrayList<>(batchSize);
+        // every round trip is profiled under its own name
+        profile(
+                "findUserCommentBatch",
+                () -> findCommand(COMMENT_COLLECTION, emailFilter, null, null, 0, batchSize),
+                () ->
+                        commentCollection
+                                .find(emailFilter)
+                                .projection(Projections.include("movie_id"))
+                                .limit(batchSize)
+                                .into(batch));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        List<ObjectId> ids = new ArrayList<>(batch.size());
+        batch.forEach(comment -> ids.add(comment.getOid()));
+        // the email is kept in the filter, in case a comment changed since it was found
+        Bson batchFilter = Filters.and(Filters.in("_id", ids), emailFilter);
+        if (anonymize) {
+            Bson anonymization = Updates.combine(Updates.unset("email"), set("name", ANONYMIZED_NAME));
+            return profile(
+                    "anonymizeUserCommentBatch",
+                    () -> updateCommand(COMMENT_COLLECTION, batchFilter, anonymization, true),
+                    () -> commentCollection.updateMany(batchFilter, anonymization).getModifiedCount());
+        }
+        long deleted =
+                profile(
+                        "deleteUserCommentBatch",
+                        () -> deleteCommand(COMMENT_COLLECTION, batchFilter, true),
+                        () -> commentCollection.deleteMany(batchFilter).getDeletedCount());
+        // a comment deleted concurrently by its owner is counted twice, which a count rebuild fixes
+        batch.forEach(comment -> countComments(comment.getMovieObjectId(), -1));
+        return deleted;
     }
 
     /**
      * Ticket: User Report - produce a list of users that comment the most in the website. Query the
      * `comments` collection and group the users by number of comments. The list is limited to up most
-     * 20 commenter.
+     * 20 commenter. Comments without an email, anonymized when their author was deleted, are left
+     * out.
      *
      * @return List {@link Critic} objects.
      */
@@ -154,7 +431,11 @@ public class CommentDao extends AbstractMFlixDao {
 
         //Aggregates.group("$group", Aggregates.count());
 
-        List<Document> documents = Arrays.asList(new Document("$group",
+        // anonymized comments of deleted users have no email, and must not add up to a null critic
+        List<Document> documents = Arrays.asList(
+                new Document("$match",
+                        new Document("email", new Document("$exists", true))),
+                new Document("$group",
                         new Document("_id", "$email")
                                 .append("count",
                                         new Document("$count",
@@ -163,7 +444,14 @@ public class CommentDao extends AbstractMFlixDao {
                         new Document("count", -1L)),
                 new Document("$limit", 20L));
         List<Document> documentsList = new ArrayList<>();
-        commentCollectionAux.withReadConcern(ReadConcern.MAJORITY).aggregate(documents).into(documentsList);
+        profile(
+                "mostActiveCommenters",
+                () -> aggregateCommand(COMMENT_COLLECTION, documents),
+                () ->
+                        forRead(commentCollectionAux, ReadIntent.REPORT)
+                                .withReadConcern(ReadConcern.MAJORITY)
+                                .aggregate(documents)
+                                .into(documentsList));
         for (Document comment : documentsList) {
             mostActive.add(new Critic(comment.getString("_id"), comment.getInteger("count")));
         }
@@ -0,0 +1,235 @@
+package mflix.api.daos;
+
+import com.mongodb.client.ClientSession;
+import mflix.api.models.Comment;
+import mflix.api.models.CommentBatchResult;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Groups concurrent single comment inserts into micro-batches, written with one insertMany.
+ *
+ * <p>The first comment of a batch waits at most the latency budget for other comments to join,
+ * then the batch is written by a single background thread within its own causally consistent
+ * session. The operation and cluster times of that session are handed back to every caller, so
+ * that reads issued later in the caller session still observe its comment.
+ *
+ * <p>A latency budget of 0 disables coalescing. When the queue is full, comments are written
+ * directly by the calling thread. Callers wait at most the write timeout for their batch; should
+ * the writer thread die, the pending comments are failed and the next ones are written directly.
+ */
+@Component
+public class CommentWriteCoalescer {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final CommentDao commentDao;
+    private final long latencyBudgetNanos;
+    private final int maxBatchSize;
+    private final long writeTimeoutMillis;
+    private final BlockingQueue<PendingWrite> queue;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder coalescedComments = new LongAdder();
+    private final LongAdder directComments = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    @Autowired
+    public CommentWriteCoalescer(
+            CommentDao commentDao,
+            @Value("${mflix.comments.coalesce_budget_ms:2}") long latencyBudgetMs,
+            @Value("${mflix.comments.coalesce_max_batch:100}") int maxBatchSize,
+            @Value("${mflix.comments.coalesce_queue_size:10000}") int queueSize,
+            @Value("${mflix.comments.coalesce_timeout_ms:5000}") long writeTimeoutMs) {
+        this.commentDao = commentDao;
+        this.latencyBudgetNanos = TimeUnit.MILLISECONDS.toNanos(latencyBudgetMs);
+        this.maxBatchSize = maxBatchSize;
+        this.writeTimeoutMillis = writeTimeoutMs;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.writer = new Thread(this::writeLoop, "comment-write-coalescer");
+        this.writer.setDaemon(true);
+        if (latencyBudgetNanos > 0) {
+            this.writer.start();
+        }
+    }
+
+    /**
+     * Adds a comment, possibly batched with the comments added concurrently by other threads.
+     *
+     * @param session - causally consistent session of the caller, or null.
+     * @param comment - Comment object.
+     * @return the inserted Comment object.
+     * @throws IncorrectDaoOperation if the comment is invalid or was rejected by the server.
+     * @throws DaoOperationTimeout   if the batch of the comment was not written within the write
+     *                               timeout. The comment may still be written afterwards.
+     */
+    public Comment addComment(ClientSession session, Comment comment) {
+        if (latencyBudgetNanos == 0 || !running) {
+            directComments.increment();
+            return commentDao.addComment(session, comment);
+        }
+        PendingWrite write = new PendingWrite(comment);
+        // a comment queued while shutting down may miss the writer thread, take it back in that case
+        if (!queue.offer(write) || (!running && queue.remove(write))) {
+            directComments.increment();
+            return commentDao.addComment(session, comment);
+        }
+
+        BatchOutcome outcome;
+        try {
+            outcome = write.outcome.get(writeTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new IncorrectDaoOperation("Unable to add comment", e.getCause());
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            // still queued: it will not be written anymore
+            if (queue.remove(write)) {
+                throw new IncorrectDaoOperation("Timed out waiting to add comment", e);
+            }
+            throw new DaoOperationTimeout("Timed out adding comment, it may still be added", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IncorrectDaoOperation("Interrupted while adding comment", e);
+        }
+        if (session != null) {
+            if (outcome.operationTime != null) {
+                session.advanceOperationTime(outcome.operationTime);
+            }
+            if (outcome.clusterTime != null) {
+                session.advanceClusterTime(outcome.clusterTime);
+            }
+        }
+        if (outcome.error != null) {
+            throw new IncorrectDaoOperation(outcome.error);
+        }
+        return comment;
+    }
+
+    private void writeLoop() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = first.enqueuedAt + latencyBudgetNanos;
+                while (batch.size() < maxBatchSize) {
+                    long wait = deadline - System.nanoTime();
+                    PendingWrite next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // shutting down: the comments collected so far and the queued ones are still written
+                running = false;
+            }
+            try {
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+            } catch (Throwable e) {
+                // later comments are written directly, the pending ones would never complete
+                running = false;
+                log.error("Comment write coalescer stopped", e);
+                batch.forEach(write -> write.outcome.completeExceptionally(e));
+                List<PendingWrite> queued = new ArrayList<>();
+                queue.drainTo(queued);
+                queued.forEach(write -> write.outcome.completeExceptionally(e));
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingWrite> batch) {
+        List<Comment> comments = new ArrayList<>(batch.size());
+        batch.forEach(write -> comments.add(write.comment));
+        try (ClientSession session = commentDao.startCausalSession()) {
+            CommentBatchResult result = commentDao.addComments(session, comments);
+            BsonTimestamp operationTime = session.getOperationTime();
+            BsonDocument clusterTime = session.getClusterTime();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).outcome.complete(new BatchOutcome(result.getError(i), operationTime, clusterTime));
+            }
+            batches.increment();
+            coalescedComments.add(batch.size());
+        } catch (RuntimeException e) {
+            log.warn("Unable to write a batch of {} comments: {}", batch.size(), e.getMessage());
+            batch.forEach(write -> write.outcome.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Summarizes the coalescing activity.
+     *
+     * @return Map with the number of batches, of comments written in batches and of comments
+     * written directly, and the mean batch size.
+     */
+    public Map<String, Object> snapshot() {
+        long batchCount = batches.sum();
+        long coalesced = coalescedComments.sum();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("batches", batchCount);
+        snapshot.put("coalesced_comments", coalesced);
+        snapshot.put("direct_comments", directComments.sum());
+        snapshot.put("timeouts", timeouts.sum());
+        snapshot.put("mean_batch_size", batchCount == 0 ? 0 : (double) coalesced / batchCount);
+        snapshot.put("queued", queue.size());
+        return snapshot;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private static class PendingWrite {
+
+        private final Comment comment;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<BatchOutcome> outcome = new CompletableFuture<>();
+
+        PendingWrite(Comment comment) {
+            this.comment = comment;
+        }
+    }
+
+    private static class BatchOutcome {
+
+        private final String error;
+        private final BsonTimestamp operationTime;
+        private final BsonDocument clusterTime;
+
+        BatchOutcome(String error, BsonTimestamp operationTime, BsonDocument clusterTime) {
+            this.error = error;
+            this.operationTime = operationTime;
+            this.clusterTime = clusterTime;
+        }
+    }
+}
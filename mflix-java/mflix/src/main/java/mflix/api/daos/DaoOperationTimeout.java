@@ -0,0 +1,18 @@
+package mflix.api.daos;
+
+/**
+ * Runtime exception to be thrown when a Dao layer operation did not complete in time, and may
+ * still complete afterwards.
+ */
+public class DaoOperationTimeout extends IncorrectDaoOperation {
+
+    /**
+     * Creates a exception for timed out Dao layer operations.
+     *
+     * @param message   - inflicting string message that originated the error.
+     * @param exception - exception chain reference.
+     */
+    public DaoOperationTimeout(final String message, Throwable exception) {
+        super(message, exception);
+    }
+}
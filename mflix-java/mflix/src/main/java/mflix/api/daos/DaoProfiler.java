@@ -0,0 +1,272 @@
+package mflix.api.daos;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoDatabase;
+import mflix.api.metrics.LatencyHistogram;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Records the latency of every profiled Dao method call and, for the calls that exceed the slow
+ * query threshold, samples the `executionStats` explain plan of the issued command. Explains are
+ * executed in a background thread, at most once per query shape and sampling interval, so that
+ * profiling does not add round trips to the request path. Writes are explained as the update,
+ * delete or findAndModify command they issue, which the explain evaluates without applying.
+ */
+@Component
+public class DaoProfiler {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SlowQueryShape> slowQueries = new ConcurrentHashMap<>();
+
+    private final long slowQueryNanos;
+    private final long explainIntervalMillis;
+    private final int maxShapes;
+    private final ExecutorService explainExecutor;
+
+    public DaoProfiler(
+            @Value("${mflix.profiler.slow_query_ms:100}") long slowQueryMs,
+            @Value("${mflix.profiler.explain_interval_ms:60000}") long explainIntervalMs,
+            @Value("${mflix.profiler.max_query_shapes:200}") int maxShapes) {
+        this.slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryMs);
+        this.explainIntervalMillis = explainIntervalMs;
+        this.maxShapes = maxShapes;
+        this.explainExecutor =
+                new ThreadPoolExecutor(
+                        1,
+                        1,
+                        0L,
+                        TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(16),
+                        r -> {
+                            Thread thread = new Thread(r, "dao-profiler-explain");
+                            thread.setDaemon(true);
+                            return thread;
+                        },
+                        new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * Executes and times a Dao operation.
+     *
+     * @param method    - qualified name of the profiled Dao method.
+     * @param db        - database the explain command should run against.
+     * @param command   - lazily built find, aggregate or write command that the operation issues, or
+     *                  null if the operation cannot be explained. Explained writes are not applied.
+     * @param operation - the Dao operation.
+     * @param <T>       - operation result type.
+     * @return the operation result.
+     */
+    public <T> T profile(
+            String method, MongoDatabase db, Supplier<Document> command, Supplier<T> operation) {
+        long start = System.nanoTime();
+        try {
+            return operation.get();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            latencies
+                    .computeIfAbsent(method, k -> new LatencyHistogram())
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            if (elapsed >= slowQueryNanos && command != null) {
+                recordSlowQuery(method, db, command.get(), elapsed);
+            }
+        }
+    }
+
+    private void recordSlowQuery(String method, MongoDatabase db, Document command, long elapsed) {
+        BsonDocument bsonCommand =
+                command.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+        String commandShape = shapeOf(bsonCommand);
+        String shapeKey = method + " " + commandShape;
+        SlowQueryShape shape = slowQueries.get(shapeKey);
+        if (shape == null) {
+            if (slowQueries.size() >= maxShapes) {
+                return;
+            }
+            shape = slowQueries.computeIfAbsent(shapeKey, k -> new SlowQueryShape(method, commandShape));
+        }
+        shape.record(elapsed);
+        if (shape.claimExplain(explainIntervalMillis)) {
+            final SlowQueryShape target = shape;
+            explainExecutor.execute(() -> explain(target, db, bsonCommand));
+        }
+    }
+
+    private void explain(SlowQueryShape shape, MongoDatabase db, BsonDocument command) {
+        try {
+            Document explain =
+                    db.runCommand(new Document("explain", command).append("verbosity", "executionStats"));
+            shape.setExplain(summarizeExplain(explain));
+        } catch (Exception e) {
+            log.warn("Unable to explain `{}`: {}", shape.shape, e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces every literal value of the command by a placeholder, keeping field names and
+     * operators, so that queries that only differ in their parameters share the same shape.
+     */
+    static String shapeOf(BsonValue value) {
+        if (value.isDocument()) {
+            BsonDocument document = value.asDocument();
+            StringJoiner joiner = new StringJoiner(", ", "{", "}");
+            for (Map.Entry<String, BsonValue> entry : document.entrySet()) {
+                joiner.add(entry.getKey() + ": " + shapeOf(entry.getValue()));
+            }
+            return joiner.toString();
+        }
+        if (value.isArray()) {
+            BsonArray array = value.asArray();
+            if (array.isEmpty() || !array.get(0).isDocument()) {
+                return "[?]";
+            }
+            return array.stream().map(DaoProfiler::shapeOf).collect(Collectors.joining(", ", "[", "]"));
+        }
+        return "?";
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> summarizeExplain(Document explain) {
+        Document queryPlanner = (Document) explain.get("queryPlanner");
+        Document executionStats = (Document) explain.get("executionStats");
+        // aggregations nest the find explain output in the first $cursor stage
+        List<Document> stages = (List<Document>) explain.get("stages");
+        if (executionStats == null && stages != null && !stages.isEmpty()) {
+            Document cursor = (Document) stages.get(0).get("$cursor");
+            if (cursor != null) {
+                queryPlanner = (Document) cursor.get("queryPlanner");
+                executionStats = (Document) cursor.get("executionStats");
+            }
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        if (queryPlanner != null) {
+            summary.put("winning_plan", planStages((Document) queryPlanner.get("winningPlan")));
+        }
+        if (executionStats != null) {
+            long returned = MovieDocumentMapper.parseInt(executionStats.get("nReturned"));
+            long keysExamined = MovieDocumentMapper.parseInt(executionStats.get("totalKeysExamined"));
+            long docsExamined = MovieDocumentMapper.parseInt(executionStats.get("totalDocsExamined"));
+            summary.put("n_returned", returned);
+            summary.put("keys_examined", keysExamined);
+            summary.put("docs_examined", docsExamined);
+            summary.put("keys_examined_ratio", ratio(keysExamined, returned));
+            summary.put("docs_examined_ratio", ratio(docsExamined, returned));
+            summary.put("execution_time_ms", executionStats.get("executionTimeMillis"));
+        }
+        return summary;
+    }
+
+    private static String planStages(Document plan) {
+        List<String> stages = new ArrayList<>();
+        while (plan != null) {
+            stages.add(plan.getString("stage"));
+            plan = (Document) plan.get("inputStage");
+        }
+        return String.join(" <- ", stages);
+    }
+
+    private static double ratio(long examined, long returned) {
+        return returned == 0 ? examined : (double) examined / returned;
+    }
+
+    /**
+     * Latency summary of every profiled Dao method.
+     *
+     * @return Map of method name to latency histogram snapshot.
+     */
+    public Map<String, Map<String, Object>> getLatencies() {
+        Map<String, Map<String, Object>> result = new TreeMap<>();
+        latencies.forEach((method, histogram) -> result.put(method, histogram.snapshot()));
+        return result;
+    }
+
+    /**
+     * Lists the slow query shapes that accumulated the most time above the slow query threshold.
+     *
+     * @param limit - max number of shapes to return.
+     * @return list of slow query shapes, slowest first.
+     */
+    public List<Map<String, Object>> getTopSlowQueries(int limit) {
+        return slowQueries
+                .values()
+                .stream()
+                .sorted(Comparator.comparingLong(SlowQueryShape::getTotalNanos).reversed())
+                .limit(limit)
+                .map(SlowQueryShape::toMap)
+                .collect(Collectors.toList());
+    }
+
+    /** Clears all recorded latencies and slow query shapes. */
+    public void reset() {
+        latencies.clear();
+        slowQueries.clear();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        explainExecutor.shutdownNow();
+    }
+
+    private static class SlowQueryShape {
+
+        private final String method;
+        private final String shape;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLong lastExplainMillis = new AtomicLong();
+        private volatile Map<String, Object> explain;
+
+        SlowQueryShape(String method, String shape) {
+            this.method = method;
+            this.shape = shape;
+        }
+
+        void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        boolean claimExplain(long intervalMillis) {
+            long now = System.currentTimeMillis();
+            long last = lastExplainMillis.get();
+            return now - last >= intervalMillis && lastExplainMillis.compareAndSet(last, now);
+        }
+
+        void setExplain(Map<String, Object> explain) {
+            this.explain = explain;
+        }
+
+        long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("method", method);
+            map.put("shape", shape);
+            map.put("count", count.get());
+            map.put("total_ms", TimeUnit.NANOSECONDS.toMillis(totalNanos.get()));
+            map.put("max_ms", TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+            map.put("explain", explain);
+            return map;
+        }
+    }
+}
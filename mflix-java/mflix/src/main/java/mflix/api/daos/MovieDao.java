@@ -1,8 +1,10 @@
 package mflix.api.daos;
 
+import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.*;
+import mflix.api.models.MovieSearchQuery;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
@@ -12,8 +14,10 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import static com.mongodb.client.model.Filters.all;
 import static com.mongodb.client.model.Projections.*;
@@ -62,8 +66,20 @@ public class MovieDao extends AbstractMFlixDao {
      * @param movieId - Movie identifier string.
      * @return Document object or null.
      */
-    @SuppressWarnings("UnnecessaryLocalVariable")
     public Document getMovie(String movieId) {
+        return getMovie(null, movieId);
+    }
+
+    /**
+     * Gets a movie object from the database, reading within a causally consistent session so that
+     * comments written earlier in the session are returned.
+     *
+     * @param session - causally consistent session, or null to read outside of a session.
+     * @param movieId - Movie identifier string.
+     * @return Document object or null.
+     */
+    @SuppressWarnings("UnnecessaryLocalVariable")
+    public Document getMovie(ClientSession session, String movieId) {
         if (!validIdValue(movieId)) {
             return null;
         }
@@ -94,7 +110,14 @@ public class MovieDao extends AbstractMFlixDao {
 //        pipeline.add(lookup);
 
         // retrieved with Movies.
-        Document movie = moviesCollection.aggregate(pipeline).first();
+        Document movie =
+                profile(
+                        "getMovie",
+                        () -> aggregateCommand(MOVIES_COLLECTION, pipeline),
+                        () ->
+                                session == null
+                                        ? forRead(moviesCollection, ReadIntent.DETAIL).aggregate(pipeline).first()
+                                        : causalRead(moviesCollection).aggregate(session, pipeline).first());
 
         return movie;
     }
@@ -127,15 +150,16 @@ public class MovieDao extends AbstractMFlixDao {
 
         List<Document> movies = new ArrayList<>();
 
-        moviesCollection
-                .find()
-                .limit(limit)
-                .skip(skip)
-                .sort(sort)
-                .iterator()
-                .forEachRemaining(movies::add);
-
-        return movies;
+        return profile(
+                "getMovies",
+                () -> findCommand(MOVIES_COLLECTION, new Document(), null, sort, skip, limit),
+                () ->
+                        forRead(moviesCollection, ReadIntent.BROWSE)
+                                .find()
+                                .limit(limit)
+                                .skip(skip)
+                                .sort(sort)
+                                .into(movies));
     }
 
     /**
@@ -148,8 +172,14 @@ public class MovieDao extends AbstractMFlixDao {
         Bson projection = fields(include("title"));
         Bson queryFilter = all("countries", country);
         List<Document> movies = new ArrayList<>();
-        moviesCollection.find(queryFilter).projection(projection).into(movies);
-        return movies;
+        return profile(
+                "getMoviesByCountry",
+                () -> findCommand(MOVIES_COLLECTION, queryFilter, projection, null, 0, 0),
+                () ->
+                        forRead(moviesCollection, ReadIntent.BROWSE)
+                                .find(queryFilter)
+                                .projection(projection)
+                                .into(movies));
     }
 
     /**
@@ -166,14 +196,78 @@ public class MovieDao extends AbstractMFlixDao {
         Bson projection = Projections.metaTextScore("score");
         Bson sort = Sorts.metaTextScore("score");
         List<Document> movies = new ArrayList<>();
-        moviesCollection
-                .find(textFilter)
-                .projection(projection)
-                .sort(sort)
-                .skip(skip)
-                .limit(limit)
-                .iterator()
-                .forEachRemaining(movies::add);
+        return profile(
+                "getMoviesByText",
+                () -> findCommand(MOVIES_COLLECTION, textFilter, projection, sort, skip, limit),
+                () ->
+                        forRead(moviesCollection, ReadIntent.SEARCH)
+                                .find(textFilter)
+                                .projection(projection)
+                                .sort(sort)
+                                .skip(skip)
+                                .limit(limit)
+                                .into(movies));
+    }
+
+    /**
+     * Ranks the movies matching a text search, returning only their ids. This method will execute
+     * the following mongo shell query: db.movies.find({"$text": {"$search": `keywords`}}, {"_id": 1,
+     * "score": {"$meta": "textScore"}}).sort({"score": {"$meta": "textScore"}}).limit(`limit`)
+     *
+     * @param keywords - text matching keywords or terms
+     * @param limit    - maximum number of ids returned.
+     * @return ids of the matching movies, best match first.
+     */
+    public List<ObjectId> getRankedTextSearchIds(String keywords, int limit) {
+        Bson textFilter = Filters.text(keywords);
+        Bson projection =
+                Projections.fields(Projections.include("_id"), Projections.metaTextScore("score"));
+        Bson sort = Sorts.metaTextScore("score");
+        List<ObjectId> ids = new ArrayList<>();
+        return profile(
+                "getRankedTextSearchIds",
+                () -> findCommand(MOVIES_COLLECTION, textFilter, projection, sort, 0, limit),
+                () -> {
+                    for (Document movie :
+                            forRead(moviesCollection, ReadIntent.SEARCH)
+                                    .find(textFilter)
+                                    .projection(projection)
+                                    .sort(sort)
+                                    .limit(limit)) {
+                        ids.add(movie.getObjectId("_id"));
+                    }
+                    return ids;
+                });
+    }
+
+    /**
+     * Gets the movies of a list of ids with a single `$in` lookup on `_id`.
+     *
+     * @param ids - movie ids.
+     * @return movie documents, in the order of `ids`. Ids without a movie are skipped.
+     */
+    public List<Document> getMoviesByIds(List<ObjectId> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Bson idFilter = Filters.in("_id", ids);
+        Map<Object, Document> moviesById = new HashMap<>();
+        profile(
+                "getMoviesByIds",
+                () -> findCommand(MOVIES_COLLECTION, idFilter, null, null, 0, ids.size()),
+                () -> {
+                    for (Document movie : forRead(moviesCollection, ReadIntent.SEARCH).find(idFilter)) {
+                        moviesById.put(movie.get("_id"), movie);
+                    }
+                    return moviesById;
+                });
+        List<Document> movies = new ArrayList<>(ids.size());
+        for (ObjectId id : ids) {
+            Document movie = moviesById.get(id);
+            if (movie != null) {
+                movies.add(movie);
+            }
+        }
         return movies;
     }
 
@@ -193,14 +287,16 @@ public class MovieDao extends AbstractMFlixDao {
         //TODO> Ticket: Subfield Text Search - implement the expected cast
         // filter and sort
         List<Document> movies = new ArrayList<>();
-        moviesCollection
-                .find(castFilter)
-                .sort(sort)
-                .limit(limit)
-                .skip(skip)
-                .iterator()
-                .forEachRemaining(movies::add);
-        return movies;
+        return profile(
+                "getMoviesByCast",
+                () -> findCommand(MOVIES_COLLECTION, castFilter, null, sort, skip, limit),
+                () ->
+                        forRead(moviesCollection, ReadIntent.SEARCH)
+                                .find(castFilter)
+                                .sort(sort)
+                                .limit(limit)
+                                .skip(skip)
+                                .into(movies));
     }
 
     /**
@@ -220,9 +316,169 @@ public class MovieDao extends AbstractMFlixDao {
         List<Document> movies = new ArrayList<>();
         // TODO > Ticket: Paging - implement the necessary cursor methods to support simple
         // pagination like skip and limit in the code below
-        moviesCollection.find(castFilter).skip(skip).limit(limit).sort(sort).iterator()
-        .forEachRemaining(movies::add);
-        return movies;
+        return profile(
+                "getMoviesByGenre",
+                () -> findCommand(MOVIES_COLLECTION, castFilter, null, sort, skip, limit),
+                () ->
+                        forRead(moviesCollection, ReadIntent.SEARCH)
+                                .find(castFilter)
+                                .skip(skip)
+                                .limit(limit)
+                                .sort(sort)
+                                .into(movies));
+    }
+
+    /**
+     * Builds the filter of a compound search. The text criterion comes first, as `$text` must be
+     * part of the first `$match` stage of a pipeline.
+     *
+     * @param query - search criteria.
+     * @return filter matching all the criteria set.
+     */
+    static Bson compoundSearchFilter(MovieSearchQuery query) {
+        List<Bson> filters = new ArrayList<>();
+        if (query.hasText()) {
+            filters.add(Filters.text(String.join(" ", query.getText())));
+        }
+        if (!query.getCast().isEmpty()) {
+            filters.add(Filters.in("cast", query.getCast()));
+        }
+        if (!query.getGenres().isEmpty()) {
+            filters.add(Filters.in("genres", query.getGenres()));
+        }
+        if (!query.getCountries().isEmpty()) {
+            filters.add(Filters.in("countries", query.getCountries()));
+        }
+        if (query.getMinYear() != null) {
+            filters.add(Filters.gte("year", query.getMinYear()));
+        }
+        if (query.getMaxYear() != null) {
+            filters.add(Filters.lte("year", query.getMaxYear()));
+        }
+        if (query.getMinRating() != null) {
+            filters.add(Filters.gte("imdb.rating", query.getMinRating()));
+        }
+        if (query.getMaxRating() != null) {
+            filters.add(Filters.lte("imdb.rating", query.getMaxRating()));
+        }
+        if (query.getMinRuntime() != null) {
+            filters.add(Filters.gte("runtime", query.getMinRuntime()));
+        }
+        if (query.getMaxRuntime() != null) {
+            filters.add(Filters.lte("runtime", query.getMaxRuntime()));
+        }
+        return filters.isEmpty() ? new Document() : Filters.and(filters);
+    }
+
+    /**
+     * Runs a compound search, returning a page of results and the total number of matches in one
+     * round trip. This method is the java implementation of the following mongo shell aggregation
+     * pipeline: db.movies.aggregate([ {$match: {$text: ..., cast: {$in: ...}, genres: {$in: ...},
+     * year: {$gte: ..., $lte: ...}, imdb.rating: {$gte: ..., $lte: ...}}}, {$addFields: {score:
+     * {$meta: "textScore"}}}, {$facet: { movies: [{$sort: ...}, {$skip: ...}, {$limit: ...}],
+     * count: [{$count: "count"}] }} ])
+     *
+     * <p>All the criteria are in the leading `$match`, the only stage that can use an index: the
+     * text index when there are keywords, the cast or genres indexes otherwise. Text searches are
+     * sorted by relevance, the others by `sortKey` descending. The sort is followed by the limit
+     * within the `movies` facet, so that only the top `skip + limit` matches are kept in memory.
+     *
+     * @param query   - search criteria.
+     * @param sortKey - sort key of the searches without text.
+     * @param limit   - number of documents to be returned.
+     * @param skip    - number of documents to be skipped.
+     * @return Document with the page of movies under `movies` and the number of matches under
+     * `count`.
+     */
+    public Document searchMovies(MovieSearchQuery query, String sortKey, int limit, int skip) {
+        List<Bson> pipeline = new ArrayList<>();
+        pipeline.add(Aggregates.match(compoundSearchFilter(query)));
+        Bson sort;
+        if (query.hasText()) {
+            // the relevance is stored before the facets, as they only see plain fields
+            pipeline.add(
+                    Aggregates.addFields(new Field<>("score", new Document("$meta", "textScore"))));
+            sort = Sorts.descending("score");
+        } else {
+            sort = Sorts.descending(sortKey);
+        }
+        pipeline.add(
+                Aggregates.facet(
+                        new Facet(
+                                "movies",
+                                Aggregates.sort(sort),
+                                Aggregates.skip(skip),
+                                Aggregates.limit(limit)),
+                        new Facet("count", Aggregates.count("count"))));
+
+        Document facets =
+                profile(
+                        "searchMovies",
+                        () -> aggregateCommand(MOVIES_COLLECTION, pipeline),
+                        () -> forRead(moviesCollection, ReadIntent.SEARCH).aggregate(pipeline).first());
+        Document result = new Document("movies", new ArrayList<Document>()).append("count", 0L);
+        if (facets != null) {
+            result.put("movies", facets.get("movies", List.class));
+            List<?> count = facets.get("count", List.class);
+            if (count != null && !count.isEmpty()) {
+                result.put("count", ((Number) ((Document) count.get(0)).get("count")).longValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts the movies matching a search in every bucket of a numeric field. This method is the
+     * java implementation of the following mongo shell aggregation pipeline: db.movies.aggregate([
+     * {$match: ...}, {$bucket: {groupBy: "$`field`", boundaries: `boundaries`, default: "other",
+     * output: {count: {$sum: 1}}}} ])
+     *
+     * @param query      - search criteria.
+     * @param field      - numeric field to bucket.
+     * @param boundaries - ascending bucket boundaries.
+     * @return one Document per non empty bucket, with its lower boundary under `_id` and its number
+     * of movies under `count`.
+     */
+    public List<Document> getBucketFacet(
+            MovieSearchQuery query, String field, List<? extends Number> boundaries) {
+        BucketOptions bucketOptions = new BucketOptions();
+        bucketOptions.defaultBucket("other");
+        bucketOptions.output(new BsonField("count", new Document("$sum", 1)));
+        List<Bson> pipeline =
+                Arrays.asList(
+                        Aggregates.match(compoundSearchFilter(query)),
+                        Aggregates.bucket("$" + field, boundaries, bucketOptions));
+        List<Document> buckets = new ArrayList<>();
+        return profile(
+                "getBucketFacet",
+                () -> aggregateCommand(MOVIES_COLLECTION, pipeline),
+                () -> forRead(moviesCollection, ReadIntent.FACET).aggregate(pipeline).into(buckets));
+    }
+
+    /**
+     * Counts the movies matching a search for the most frequent values of an array field. This
+     * method is the java implementation of the following mongo shell aggregation pipeline:
+     * db.movies.aggregate([ {$match: ...}, {$unwind: "$`field`"}, {$sortByCount: "$`field`"},
+     * {$limit: `limit`} ])
+     *
+     * @param query - search criteria.
+     * @param field - array field to count the values of.
+     * @param limit - maximum number of values returned.
+     * @return one Document per value, most frequent first, with the value under `_id` and its
+     * number of movies under `count`.
+     */
+    public List<Document> getValueFacet(MovieSearchQuery query, String field, int limit) {
+        List<Bson> pipeline =
+                Arrays.asList(
+                        Aggregates.match(compoundSearchFilter(query)),
+                        Aggregates.unwind("$" + field),
+                        Aggregates.sortByCount("$" + field),
+                        Aggregates.limit(limit));
+        List<Document> values = new ArrayList<>();
+        return profile(
+                "getValueFacet",
+                () -> aggregateCommand(MOVIES_COLLECTION, pipeline),
+                () -> forRead(moviesCollection, ReadIntent.FACET).aggregate(pipeline).into(values));
     }
 
     private ArrayList<Integer> runtimeBoundaries() {
@@ -307,8 +563,10 @@ public class MovieDao extends AbstractMFlixDao {
         pipeline.add(limitStage);
         pipeline.add(facetStage);
 
-        moviesCollection.aggregate(pipeline).iterator().forEachRemaining(movies::add);
-        return movies;
+        return profile(
+                "getMoviesCastFaceted",
+                () -> aggregateCommand(MOVIES_COLLECTION, pipeline),
+                () -> forRead(moviesCollection, ReadIntent.FACET).aggregate(pipeline).into(movies));
     }
 
     /**
@@ -332,7 +590,10 @@ public class MovieDao extends AbstractMFlixDao {
      * @return number of documents in the movies collection.
      */
     public long getMoviesCount() {
-        return this.moviesCollection.countDocuments();
+        return profile(
+                "getMoviesCount",
+                null,
+                () -> forRead(moviesCollection, ReadIntent.BROWSE).countDocuments());
     }
 
     /**
@@ -342,7 +603,11 @@ public class MovieDao extends AbstractMFlixDao {
      * @return number of matching documents.
      */
     public long getTextSearchCount(String keywords) {
-        return this.moviesCollection.countDocuments(Filters.text(keywords));
+        Bson textFilter = Filters.text(keywords);
+        return profile(
+                "getTextSearchCount",
+                () -> findCommand(MOVIES_COLLECTION, textFilter, null, null, 0, 0),
+                () -> forRead(moviesCollection, ReadIntent.SEARCH).countDocuments(textFilter));
     }
 
     /**
@@ -352,7 +617,11 @@ public class MovieDao extends AbstractMFlixDao {
      * @return number of matching documents.
      */
     public long getCastSearchCount(String... cast) {
-        return this.moviesCollection.countDocuments(Filters.in("cast", cast));
+        Bson castFilter = Filters.in("cast", cast);
+        return profile(
+                "getCastSearchCount",
+                () -> findCommand(MOVIES_COLLECTION, castFilter, null, null, 0, 0),
+                () -> forRead(moviesCollection, ReadIntent.SEARCH).countDocuments(castFilter));
     }
 
     /**
@@ -362,6 +631,10 @@ public class MovieDao extends AbstractMFlixDao {
      * @return number of matching documents.
      */
     public long getGenresSearchCount(String... genres) {
-        return this.moviesCollection.countDocuments(Filters.in("genres", genres));
+        Bson genresFilter = Filters.in("genres", genres);
+        return profile(
+                "getGenresSearchCount",
+                () -> findCommand(MOVIES_COLLECTION, genresFilter, null, null, 0, 0),
+                () -> forRead(moviesCollection, ReadIntent.SEARCH).countDocuments(genresFilter));
     }
 }
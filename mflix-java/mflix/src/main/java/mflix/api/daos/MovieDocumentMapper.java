@@ -56,6 +56,10 @@ public class MovieDocumentMapper {
 
             movie.setPoster(document.getString("poster"));
 
+            if (document.containsKey("num_comments")) {
+                movie.setNumComments(parseInt(document.get("num_comments")));
+            }
+
             if (document.containsKey("comments")) {
                 List<Comment> comments = new ArrayList<>();
                 for (Document commentDoc : (List<Document>) document.get("comments")) {
@@ -0,0 +1,503 @@
+package mflix.api.daos;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import mflix.api.index.CompressedBitmap;
+import mflix.api.index.MovieCatalogSnapshot;
+import mflix.api.index.MovieFilterPostings;
+import mflix.api.models.MovieSearchQuery;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In process index of the cast, genres and countries of the movies, answering those filters and
+ * their counts without querying MongoDB. Only the documents of a page of results are then read.
+ *
+ * <p>A background thread opens a change stream on the movies collection, then scans the collection
+ * to build the postings, and applies the changes streamed since. Changes carry the full document
+ * of the movie, so that replaying changes already seen by the scan is harmless. After a failure,
+ * the stream is resumed from its checkpoint, the last change applied or the time it was opened, and
+ * the index is rebuilt if that is not possible. The index answers nothing until it is built, nor
+ * while it is being rebuilt, and callers then fall back to MongoDB.
+ *
+ * <p>When `mflix.index.snapshot_path` is set, the catalog is saved there with its checkpoint, after
+ * every build and at most every `mflix.index.snapshot_interval_seconds` while changes are applied.
+ * At startup, a saved catalog is loaded and the stream resumed from its checkpoint, which catches
+ * up with the changes made while the service was down instead of scanning the collection again.
+ *
+ * <p>Matches are sorted by `tomatoes.viewer.numReviews` descending, the sort of the cast and genre
+ * searches.
+ *
+ * <p>The stream skips the updates touching none of the indexed fields nor `lastupdated`, such as
+ * the `num_comments` increments, which would otherwise each fetch and index the full movie. Change
+ * listeners are told about every applied change and every rebuild, for the caches of responses
+ * built from the movies.
+ */
+@Component
+public class MovieFilterIndex extends AbstractMFlixDao {
+
+    public static final String SORT_KEY = "tomatoes.viewer.numReviews";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final MongoCollection<Document> moviesCollection;
+    private final long retryMillis;
+    private final Path snapshotPath;
+    private final long snapshotIntervalMillis;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // guarded by `lock`
+    private MovieFilterPostings postings = new MovieFilterPostings();
+    private volatile boolean ready;
+    // {resumeAfter: token} or {startAtOperationTime: timestamp}, only set by the updater thread
+    private volatile BsonDocument checkpoint;
+    // changes not saved in the snapshot yet, only used by the updater thread
+    private boolean unsaved;
+    private volatile boolean running = true;
+    private final Thread updater;
+    private final List<Consumer<ObjectId>> changeListeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder changes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder skippedValues = new LongAdder();
+    private final AtomicBoolean skippedValueLogged = new AtomicBoolean();
+    private volatile long builtAt;
+    private volatile long lastChangeAt;
+    private final LongAdder snapshots = new LongAdder();
+    private volatile long snapshotSavedAt;
+    private volatile long snapshotBytes;
+    private volatile long snapshotLoadedAt;
+
+    @Autowired
+    public MovieFilterIndex(
+            MongoClient mongoClient,
+            @Value("${spring.mongodb.database}") String databaseName,
+            @Value("${mflix.index.enabled:true}") boolean enabled,
+            @Value("${mflix.index.retry_seconds:30}") long retrySeconds,
+            @Value("${mflix.index.snapshot_path:}") String snapshotPath,
+            @Value("${mflix.index.snapshot_interval_seconds:300}") long snapshotIntervalSeconds) {
+        super(mongoClient, databaseName);
+        this.moviesCollection = db.getCollection(MovieDao.MOVIES_COLLECTION);
+        this.retryMillis = TimeUnit.SECONDS.toMillis(retrySeconds);
+        this.snapshotPath = snapshotPath.isEmpty() ? null : Paths.get(snapshotPath);
+        this.snapshotIntervalMillis = TimeUnit.SECONDS.toMillis(snapshotIntervalSeconds);
+        this.updater = new Thread(this::updateLoop, "movie-filter-index");
+        this.updater.setDaemon(true);
+        if (enabled) {
+            this.updater.start();
+        }
+    }
+
+    /**
+     * Registers a listener called, on the updater thread, after every movie change applied and
+     * every rebuild of the index.
+     *
+     * @param listener - receives the id of the changed movie, or null when any movie may have
+     *                 changed.
+     */
+    public void addChangeListener(Consumer<ObjectId> listener) {
+        changeListeners.add(listener);
+    }
+
+    private void notifyChange(ObjectId movieId) {
+        for (Consumer<ObjectId> listener : changeListeners) {
+            listener.accept(movieId);
+        }
+    }
+
+    private void updateLoop() {
+        loadSnapshot();
+        while (running) {
+            BsonDocument resumeFrom = checkpoint;
+            try (MongoCursor<ChangeStreamDocument<Document>> stream = openChangeStream(resumeFrom)) {
+                if (!ready) {
+                    build();
+                    saveSnapshot(true);
+                }
+                while (running) {
+                    ChangeStreamDocument<Document> change = stream.tryNext();
+                    if (change != null) {
+                        apply(change);
+                    }
+                    saveSnapshot(false);
+                }
+            } catch (MongoException e) {
+                if (!running) {
+                    // interrupted by the shutdown
+                    break;
+                }
+                failures.increment();
+                if (resumeFrom != null && checkpoint == resumeFrom) {
+                    // the stream could not go on from its checkpoint, start over
+                    ready = false;
+                    checkpoint = null;
+                }
+                log.warn("Movie filter index update failed, retrying in {} ms", retryMillis, e);
+                sleep(retryMillis);
+            } catch (RuntimeException e) {
+                failures.increment();
+                ready = false;
+                checkpoint = null;
+                log.error("Movie filter index update failed, rebuilding in {} ms", retryMillis, e);
+                sleep(retryMillis);
+            }
+        }
+        // the shutdown interrupt would close the snapshot file channel
+        Thread.interrupted();
+        saveSnapshot(true);
+    }
+
+    private void loadSnapshot() {
+        if (snapshotPath == null || !Files.exists(snapshotPath)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        MovieCatalogSnapshot snapshot;
+        try {
+            snapshot = MovieCatalogSnapshot.read(snapshotPath);
+        } catch (IOException e) {
+            log.warn("Ignoring movie catalog snapshot {}", snapshotPath, e);
+            return;
+        }
+        if (snapshot.getCheckpoint() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            postings = snapshot.getPostings();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        checkpoint = snapshot.getCheckpoint();
+        snapshotLoadedAt = System.currentTimeMillis();
+        ready = true;
+        log.info(
+                "Loaded movie filter index of {} movies from {} in {} ms, saved at {}",
+                snapshot.getPostings().getMovieCount(),
+                snapshotPath,
+                snapshotLoadedAt - start,
+                snapshot.getSavedAt());
+    }
+
+    /**
+     * Saves the catalog if it has unsaved changes, and the last save is older than the snapshot
+     * interval or `force` is set.
+     */
+    private void saveSnapshot(boolean force) {
+        long now = System.currentTimeMillis();
+        if (snapshotPath == null
+                || !ready
+                || checkpoint == null
+                || !unsaved
+                || (!force && now - snapshotSavedAt < snapshotIntervalMillis)) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            snapshotBytes = MovieCatalogSnapshot.write(snapshotPath, postings, checkpoint);
+            snapshots.increment();
+            unsaved = false;
+        } catch (IOException e) {
+            log.warn("Unable to save movie catalog snapshot {}", snapshotPath, e);
+        } finally {
+            // failed saves are retried at the next interval
+            snapshotSavedAt = now;
+            lock.readLock().unlock();
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private MongoCursor<ChangeStreamDocument<Document>> openChangeStream(BsonDocument resumeFrom) {
+        List<String> watchedFields =
+                Arrays.asList(
+                        MovieFilterPostings.CAST,
+                        MovieFilterPostings.GENRES,
+                        MovieFilterPostings.COUNTRIES,
+                        "tomatoes",
+                        "tomatoes.viewer",
+                        SORT_KEY,
+                        "lastupdated");
+        List<Bson> watchedUpdates = new ArrayList<>();
+        watchedUpdates.add(Filters.ne("operationType", "update"));
+        for (String field : watchedFields) {
+            watchedUpdates.add(Filters.exists("updateDescription.updatedFields." + field));
+        }
+        watchedUpdates.add(Filters.in("updateDescription.removedFields", watchedFields));
+        List<Bson> pipeline =
+                Collections.singletonList(
+                        Aggregates.match(
+                                Filters.and(
+                                        Filters.in(
+                                                "operationType",
+                                                Arrays.asList(
+                                                        "insert", "update", "replace", "delete", "drop", "invalidate")),
+                                        Filters.or(watchedUpdates))));
+        ChangeStreamIterable<Document> stream =
+                moviesCollection.watch(pipeline).fullDocument(FullDocument.UPDATE_LOOKUP);
+        if (resumeFrom == null) {
+            // a checkpoint for the snapshots saved before the first change
+            BsonTimestamp operationTime = currentOperationTime();
+            if (operationTime == null) {
+                return stream.iterator();
+            }
+            checkpoint = new BsonDocument("startAtOperationTime", operationTime);
+            return stream.startAtOperationTime(operationTime).iterator();
+        }
+        if (resumeFrom.containsKey("resumeAfter")) {
+            return stream.resumeAfter(resumeFrom.getDocument("resumeAfter")).iterator();
+        }
+        return stream.startAtOperationTime(resumeFrom.getTimestamp("startAtOperationTime")).iterator();
+    }
+
+    private BsonTimestamp currentOperationTime() {
+        Object operationTime = db.runCommand(new Document("isMaster", 1)).get("operationTime");
+        return operationTime instanceof BsonTimestamp ? (BsonTimestamp) operationTime : null;
+    }
+
+    private void build() {
+        ready = false;
+        long start = System.currentTimeMillis();
+        Bson projection =
+                Projections.include(
+                        MovieFilterPostings.CAST,
+                        MovieFilterPostings.GENRES,
+                        MovieFilterPostings.COUNTRIES,
+                        SORT_KEY);
+        MovieFilterPostings built = new MovieFilterPostings();
+        profile(
+                "buildMovieFilterIndex",
+                () -> findCommand(MovieDao.MOVIES_COLLECTION, new Document(), projection, null, 0, 0),
+                () -> {
+                    for (Document movie : moviesCollection.find().projection(projection)) {
+                        put(built, movie);
+                    }
+                    return built;
+                });
+        lock.writeLock().lock();
+        try {
+            postings = built;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        unsaved = true;
+        builds.increment();
+        builtAt = System.currentTimeMillis();
+        ready = true;
+        notifyChange(null);
+        log.info(
+                "Built movie filter index of {} movies in {} ms",
+                built.getMovieCount(),
+                builtAt - start);
+    }
+
+    private void apply(ChangeStreamDocument<Document> change) {
+        switch (change.getOperationType()) {
+            case INSERT:
+            case UPDATE:
+            case REPLACE:
+            case DELETE:
+                Document movie = change.getFullDocument();
+                BsonValue id = change.getDocumentKey().get("_id");
+                lock.writeLock().lock();
+                try {
+                    if (movie != null) {
+                        put(postings, movie);
+                    } else if (id != null && id.isObjectId()) {
+                        // deleted, or deleted since updated
+                        postings.remove(id.asObjectId().getValue());
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                notifyChange(id != null && id.isObjectId() ? id.asObjectId().getValue() : null);
+                break;
+            default:
+                // the collection is gone or renamed, and the stream is over
+                throw new IllegalStateException("movies change stream ended by " + change.getOperationType());
+        }
+        checkpoint = new BsonDocument("resumeAfter", change.getResumeToken());
+        unsaved = true;
+        changes.increment();
+        lastChangeAt = System.currentTimeMillis();
+    }
+
+    private void put(MovieFilterPostings postings, Document movie) {
+        Object id = movie.get("_id");
+        if (!(id instanceof ObjectId)) {
+            return;
+        }
+        Map<String, List<String>> fields = new LinkedHashMap<>();
+        for (String field : MovieFilterPostings.FIELDS) {
+            Object values = movie.get(field);
+            if (values instanceof List) {
+                List<String> strings = new ArrayList<>();
+                for (Object value : (List<?>) values) {
+                    if (value instanceof String) {
+                        strings.add((String) value);
+                    } else {
+                        skippedValue(id, field, value);
+                    }
+                }
+                fields.put(field, strings);
+            }
+        }
+        postings.put((ObjectId) id, fields, sortValue(movie));
+    }
+
+    /**
+     * Skips a value that cannot be a search term: failing the movie would fail every rebuild of the
+     * index, as they all read it again.
+     */
+    private void skippedValue(Object movieId, String field, Object value) {
+        skippedValues.increment();
+        if (skippedValueLogged.compareAndSet(false, true)) {
+            log.warn(
+                    "Movie filter index skips the values of cast, genres and countries that are not"
+                            + " strings, such as `{}` in {} of movie {}",
+                    value,
+                    field,
+                    movieId);
+        }
+    }
+
+    private static int sortValue(Document movie) {
+        Object value = movie;
+        for (String key : SORT_KEY.split("\\.")) {
+            if (!(value instanceof Document)) {
+                return Integer.MIN_VALUE;
+            }
+            value = ((Document) value).get(key);
+        }
+        return value instanceof Number ? ((Number) value).intValue() : Integer.MIN_VALUE;
+    }
+
+    /**
+     * Checks whether the index can answer a search.
+     *
+     * @param query - search criteria.
+     * @return true if the index is built and the search only filters on cast, genres or countries.
+     */
+    public boolean supports(MovieSearchQuery query) {
+        return ready
+                && !query.hasText()
+                && query.getMinYear() == null
+                && query.getMaxYear() == null
+                && query.getMinRating() == null
+                && query.getMaxRating() == null
+                && query.getMinRuntime() == null
+                && query.getMaxRuntime() == null;
+    }
+
+    private static Map<String, List<String>> filters(MovieSearchQuery query) {
+        Map<String, List<String>> filters = new LinkedHashMap<>();
+        filters.put(MovieFilterPostings.CAST, query.getCast());
+        filters.put(MovieFilterPostings.GENRES, query.getGenres());
+        filters.put(MovieFilterPostings.COUNTRIES, query.getCountries());
+        return filters;
+    }
+
+    /**
+     * Finds a page of the movies matching a search the index supports, and counts them.
+     *
+     * @param query - search criteria.
+     * @param limit - page size.
+     * @param skip  - number of matches before the page.
+     * @return Map with the ids of the page movies, sorted by SORT_KEY descending, under `ids` and
+     * the number of matches under `count`.
+     */
+    public Map<String, Object> search(MovieSearchQuery query, int limit, int skip) {
+        queries.increment();
+        Map<String, Object> result = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            CompressedBitmap matches = postings.match(filters(query));
+            result.put("ids", postings.page(matches, skip, limit));
+            result.put("count", (long) matches.cardinality());
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Summarizes the index.
+     *
+     * @return Map with the index state, its postings and its update activity.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("ready", ready);
+        lock.readLock().lock();
+        try {
+            snapshot.put("postings", postings.snapshot());
+        } finally {
+            lock.readLock().unlock();
+        }
+        snapshot.put("builds", builds.sum());
+        snapshot.put("built_at", builtAt);
+        snapshot.put("changes", changes.sum());
+        snapshot.put("last_change_at", lastChangeAt);
+        snapshot.put("failures", failures.sum());
+        snapshot.put("queries", queries.sum());
+        snapshot.put("skipped_values", skippedValues.sum());
+        snapshot.put("snapshot_path", snapshotPath == null ? null : snapshotPath.toString());
+        snapshot.put("snapshots", snapshots.sum());
+        snapshot.put("snapshot_saved_at", snapshotSavedAt);
+        snapshot.put("snapshot_bytes", snapshotBytes);
+        snapshot.put("snapshot_loaded_at", snapshotLoadedAt);
+        return snapshot;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        updater.interrupt();
+        // gives the updater the time to save the last changes
+        updater.join(TimeUnit.SECONDS.toMillis(10));
+    }
+}
@@ -0,0 +1,29 @@
+package mflix.api.daos;
+
+/**
+ * Consistency needs declared by Dao read methods. The {@link ReadPreferenceRouter} maps each
+ * intent to the replica set members that are allowed to serve it.
+ */
+public enum ReadIntent {
+
+    /** Landing page and catalog listings, which tolerate slightly stale results. */
+    BROWSE,
+
+    /** Text, cast and genre searches and their counts. */
+    SEARCH,
+
+    /** Faceted search aggregations. */
+    FACET,
+
+    /** Analytical reports, such as the most active commenters. */
+    REPORT,
+
+    /** Single document reads that must reflect the latest writes, like a movie and its comments. */
+    DETAIL,
+
+    /**
+     * Reads issued within a causally consistent session. The session guarantees they observe the
+     * writes that preceded them, whichever member serves them.
+     */
+    CAUSAL
+}
@@ -0,0 +1,62 @@
+package mflix.api.daos;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.TaggableReadPreference;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the read preference for each {@link ReadIntent}, as configured by the
+ * `mflix.reads.*` properties. Any intent not configured is read from the primary.
+ */
+@Component
+public class ReadPreferenceRouter {
+
+    private final Map<ReadIntent, ReadPreference> preferences = new EnumMap<>(ReadIntent.class);
+
+    public ReadPreferenceRouter(
+            @Value("${mflix.reads.browse:primary}") String browse,
+            @Value("${mflix.reads.search:primary}") String search,
+            @Value("${mflix.reads.facet:primary}") String facet,
+            @Value("${mflix.reads.report:primary}") String report,
+            @Value("${mflix.reads.detail:primary}") String detail,
+            @Value("${mflix.reads.causal:primary}") String causal,
+            @Value("${mflix.reads.max_staleness_seconds:0}") long maxStalenessSeconds) {
+        preferences.put(ReadIntent.BROWSE, readPreference(browse, maxStalenessSeconds));
+        preferences.put(ReadIntent.SEARCH, readPreference(search, maxStalenessSeconds));
+        preferences.put(ReadIntent.FACET, readPreference(facet, maxStalenessSeconds));
+        preferences.put(ReadIntent.REPORT, readPreference(report, maxStalenessSeconds));
+        preferences.put(ReadIntent.DETAIL, readPreference(detail, maxStalenessSeconds));
+        preferences.put(ReadIntent.CAUSAL, readPreference(causal, maxStalenessSeconds));
+    }
+
+    /**
+     * Parses a read preference name, applying the max staleness bound to any mode other than
+     * primary. MongoDB requires that bound to be at least 90 seconds.
+     *
+     * @param name                - read preference mode name, e.g. `secondaryPreferred`.
+     * @param maxStalenessSeconds - max replication lag, or 0 for no bound.
+     * @return ReadPreference object.
+     */
+    static ReadPreference readPreference(String name, long maxStalenessSeconds) {
+        ReadPreference preference = ReadPreference.valueOf(name);
+        if (maxStalenessSeconds <= 0 || !(preference instanceof TaggableReadPreference)) {
+            return preference;
+        }
+        if (maxStalenessSeconds < 90) {
+            throw new IllegalArgumentException(
+                    "mflix.reads.max_staleness_seconds must be at least 90 seconds");
+        }
+        return ReadPreference.valueOf(
+                name, Collections.emptyList(), maxStalenessSeconds, TimeUnit.SECONDS);
+    }
+
+    public ReadPreference route(ReadIntent intent) {
+        return preferences.get(intent);
+    }
+}
@@ -1,11 +1,19 @@
 package mflix.api.daos;
 
 import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
 import com.mongodb.MongoWriteException;
+import com.mongodb.ReadConcern;
+import com.mongodb.TransactionOptions;
 import com.mongodb.WriteConcern;
+import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
 import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.Updates;
 import com.mongodb.client.result.DeleteResult;
@@ -33,12 +41,22 @@ import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
 @Configuration
 public class UserDao extends AbstractMFlixDao {
 
+    // error code of the servers that do not support transactions
+    private static final int ILLEGAL_OPERATION_CODE = 20;
+    // wire versions of the first replica sets (4.0) and mongos (4.2) supporting transactions
+    private static final int REPLICA_SET_TRANSACTIONS_WIRE_VERSION = 7;
+    private static final int SHARDED_TRANSACTIONS_WIRE_VERSION = 8;
+    private static final int MAX_TRANSACTION_ATTEMPTS = 3;
+
     private final MongoCollection<User> usersCollection;
-    private final MongoCollection<Document> usersDocumentCollection;
     private final MongoCollection<Session> sessionsCollection;
 
     private final Logger log;
 
+    private volatile boolean transactionsEnabled = true;
+    // null until the deployment has been checked
+    private volatile Boolean transactionsSupported;
+
     @Autowired
     public UserDao(
             MongoClient mongoClient, @Value("${spring.mongodb.database}") String databaseName) {
@@ -51,7 +69,6 @@ public class UserDao extends AbstractMFlixDao {
         usersCollection = db.getCollection("users", User.class).withCodecRegistry(pojoCodecRegistry);
         log = LoggerFactory.getLogger(this.getClass());
         sessionsCollection =  db.getCollection("sessions", Session.class).withCodecRegistry(pojoCodecRegistry);
-        usersDocumentCollection = db.getCollection("users");
     }
 
     /**
@@ -63,7 +80,13 @@ public class UserDao extends AbstractMFlixDao {
     public boolean addUser(User user) {
         //TODO > Ticket: Durable Writes -  you might want to use a more durable write concern here!
         try {
-            usersCollection.insertOne(user);
+            profile(
+                    "addUser",
+                    null,
+                    () -> {
+                        usersCollection.insertOne(user);
+                        return user;
+                    });
             return true;
         } catch (Exception e) {
            throw new IncorrectDaoOperation("Error duplicate key");
@@ -89,10 +112,28 @@ public class UserDao extends AbstractMFlixDao {
         Session session = new Session();
         session.setUserId(userId);
         session.setJwt(jwt);
-        if (sessionsCollection.find(all("user_id", userId)).iterator().tryNext()!=null) {
-            sessionsCollection.updateOne(Filters.eq("user_id", userId), Updates.set("jwt", jwt));
+        Bson sessionFilter = all("user_id", userId);
+        // every round trip is profiled under its own name
+        Session existing =
+                profile(
+                        "findUserSession",
+                        () -> findCommand("sessions", sessionFilter, null, null, 0, 1),
+                        () -> sessionsCollection.find(sessionFilter).iterator().tryNext());
+        if (existing != null) {
+            Bson userFilter = Filters.eq("user_id", userId);
+            Bson update = Updates.set("jwt", jwt);
+            profile(
+                    "updateUserSession",
+                    () -> updateCommand("sessions", userFilter, update, false),
+                    () -> sessionsCollection.updateOne(userFilter, update));
         } else {
-            sessionsCollection.insertOne(session);
+            profile(
+                    "insertUserSession",
+                    null,
+                    () -> {
+                        sessionsCollection.insertOne(session);
+                        return session;
+                    });
         }
         return true;
 
@@ -105,7 +146,11 @@ public class UserDao extends AbstractMFlixDao {
      * @return User object or null.
      */
     public User getUser(String email) {
-        return usersCollection.find(Filters.eq("email", email)).iterator().tryNext();
+        Bson emailFilter = Filters.eq("email", email);
+        return profile(
+                "getUser",
+                () -> findCommand("users", emailFilter, null, null, 0, 1),
+                () -> usersCollection.find(emailFilter).iterator().tryNext());
     }
 
     /**
@@ -115,53 +160,188 @@ public class UserDao extends AbstractMFlixDao {
      * @return Session object or null.
      */
     public Session getUserSession(String userId) {
-        return sessionsCollection.find(Filters.eq("user_id", userId)).iterator().tryNext();
+        Bson sessionFilter = Filters.eq("user_id", userId);
+        return profile(
+                "getUserSession",
+                () -> findCommand("sessions", sessionFilter, null, null, 0, 1),
+                () -> sessionsCollection.find(sessionFilter).iterator().tryNext());
     }
 
     public boolean deleteUserSessions(String userId) {
-        DeleteResult deleteResult = sessionsCollection.deleteOne(Filters.eq("user_id", userId));
+        return deleteUserSessions(null, userId);
+    }
+
+    /**
+     * Removes the sessions of an user, optionally within a transaction.
+     *
+     * @param session - client session holding the transaction, or null.
+     * @param userId  - user string identifier.
+     * @return true if at least one session was removed.
+     */
+    public boolean deleteUserSessions(ClientSession session, String userId) {
+        Bson sessionFilter = Filters.eq("user_id", userId);
+        DeleteResult deleteResult =
+                profile(
+                        "deleteUserSessions",
+                        () -> deleteCommand("sessions", sessionFilter, true),
+                        () ->
+                                session == null
+                                        ? sessionsCollection.deleteMany(sessionFilter)
+                                        : sessionsCollection.deleteMany(session, sessionFilter));
         return deleteResult.getDeletedCount()>0;
     }
 
     /**
-     * Removes the user document that match the provided email.
+     * Enables or disables the use of multi-document transactions to delete users.
+     *
+     * @param transactionsEnabled - false on deployments known not to support transactions.
+     */
+    @Value("${mflix.users.transactions:true}")
+    public void setTransactionsEnabled(boolean transactionsEnabled) {
+        this.transactionsEnabled = transactionsEnabled;
+    }
+
+    /**
+     * Removes the user document that match the provided email, and the user sessions.
      *
      * @param email - of the user to be deleted.
      * @return true if user successfully removed
      */
     public boolean deleteUser(String email) {
-        // remove user sessions
-        DeleteResult deleteResult = usersCollection.deleteMany(Filters.eq("email", email));
         //TODO> Ticket: User Management - implement the delete user method
         //TODO > Ticket: Handling Errors - make this method more robust by
         // handling potential exceptions.
-        deleteUserSessions(email);
+        if (transactionsEnabled && supportsTransactions()) {
+            try {
+                return deleteUserInTransaction(email);
+            } catch (MongoCommandException e) {
+                if (e.getErrorCode() != ILLEGAL_OPERATION_CODE) {
+                    throw e;
+                }
+                // standalone servers do not support transactions: stop trying
+                log.warn("Transactions are not supported, users are deleted without: {}", e.getMessage());
+                transactionsEnabled = false;
+            }
+        }
+        boolean deleted = deleteUser(null, email);
+        deleteUserSessions(null, email);
+        return deleted;
+    }
+
+    /**
+     * Checks once whether the deployment supports multi-document transactions: replica sets from
+     * MongoDB 4.0 and sharded clusters from 4.2. Standalone servers never do.
+     */
+    private boolean supportsTransactions() {
+        Boolean supported = transactionsSupported;
+        if (supported == null) {
+            Document isMaster = db.runCommand(new Document("isMaster", 1));
+            int wireVersion = isMaster.getInteger("maxWireVersion", 0);
+            if ("isdbgrid".equals(isMaster.getString("msg"))) {
+                supported = wireVersion >= SHARDED_TRANSACTIONS_WIRE_VERSION;
+            } else {
+                supported =
+                        isMaster.containsKey("setName")
+                                && wireVersion >= REPLICA_SET_TRANSACTIONS_WIRE_VERSION;
+            }
+            if (!supported) {
+                log.warn("Transactions are not supported, users are deleted without");
+            }
+            transactionsSupported = supported;
+        }
+        return supported;
+    }
+
+    private boolean deleteUserInTransaction(String email) {
+        TransactionOptions options =
+                TransactionOptions.builder()
+                        .readConcern(ReadConcern.SNAPSHOT)
+                        .writeConcern(WriteConcern.MAJORITY)
+                        .build();
+        for (int attempt = 1; ; attempt++) {
+            // closing the session aborts the transaction if it was not committed
+            try (ClientSession session = mongoClient.startSession()) {
+                session.startTransaction(options);
+                boolean deleted = deleteUser(session, email);
+                deleteUserSessions(session, email);
+                session.commitTransaction();
+                return deleted;
+            } catch (MongoException e) {
+                if (attempt >= MAX_TRANSACTION_ATTEMPTS
+                        || !e.hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL)) {
+                    throw e;
+                }
+                log.info("Retrying the deletion of user `{}`: {}", email, e.getMessage());
+            }
+        }
+    }
+
+    private boolean deleteUser(ClientSession session, String email) {
+        Bson emailFilter = Filters.eq("email", email);
+        DeleteResult deleteResult =
+                profile(
+                        "deleteUser",
+                        () -> deleteCommand("users", emailFilter, true),
+                        () ->
+                                session == null
+                                        ? usersCollection.deleteMany(emailFilter)
+                                        : usersCollection.deleteMany(session, emailFilter));
         return deleteResult.getDeletedCount()>0;
     }
 
+    /**
+     * Replaces the password hash of an user, unless the hash changed since it was read.
+     *
+     * @param email       - user email.
+     * @param currentHash - password hash the user is expected to have.
+     * @param newHash     - new password hash.
+     * @return true if the hash was replaced.
+     */
+    public boolean updateHashedPassword(String email, String currentHash, String newHash) {
+        Bson userFilter = Filters.and(Filters.eq("email", email), Filters.eq("hashedpw", currentHash));
+        Bson update = set("hashedpw", newHash);
+        UpdateResult result =
+                profile(
+                        "updateHashedPassword",
+                        () -> updateCommand("users", userFilter, update, false),
+                        () -> usersCollection.updateOne(userFilter, update));
+        return result.getModifiedCount() > 0;
+    }
+
     /**
      * Updates the preferences of an user identified by `email` parameter.
      *
      * @param email           - user to be updated email
      * @param userPreferences - set of preferences that should be stored and replace the existing
      *                        ones. Cannot be set to null value
-     * @return User object that just been updated.
+     * @return true if the user exists and its preferences have been updated.
      */
     public boolean updateUserPreferences(String email, Map<String, ?> userPreferences) {
-        //TODO> Ticket: User Preferences - implement the method that allows for user preferences to
-        // be updated.
+        return findAndUpdateUserPreferences(email, userPreferences) != null;
+    }
 
+    /**
+     * Updates the preferences of an user identified by `email` parameter and returns the updated
+     * user in the same round trip. The `hashedpw` field is not returned.
+     *
+     * @param email           - user to be updated email
+     * @param userPreferences - set of preferences that should be stored and replace the existing
+     *                        ones. Cannot be set to null value
+     * @return User object that just been updated, or null if no user matches the email.
+     */
+    public User findAndUpdateUserPreferences(String email, Map<String, ?> userPreferences) {
         if (userPreferences == null) {
             throw new IncorrectDaoOperation("Preferences can not be null");
         }
-        Bson queryFilter = new Document("email", email);
-        Document userDocument = usersDocumentCollection.find(queryFilter).iterator().tryNext();
-        if (userDocument != null) {
-            usersCollection.updateOne(userDocument, set("preferences", userPreferences));
-            return true;
-        }
-        //TODO > Ticket: Handling Errors - make this method more robust by
-        // handling potential exceptions when updating an entry.
-        return false;
+        Bson emailFilter = Filters.eq("email", email);
+        FindOneAndUpdateOptions options =
+                new FindOneAndUpdateOptions()
+                        .projection(Projections.exclude("hashedpw"))
+                        .returnDocument(ReturnDocument.AFTER);
+        Bson update = set("preferences", userPreferences);
+        return profile(
+                "updateUserPreferences",
+                () -> findAndModifyCommand("users", emailFilter, update),
+                () -> usersCollection.findOneAndUpdate(emailFilter, update, options));
     }
 }
@@ -0,0 +1,241 @@
+package mflix.api.index;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.DecoderContext;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Memory mapped file holding the movie catalog of the filter index, with the change stream
+ * checkpoint it is current as of. Loading a snapshot and resuming the change stream from its
+ * checkpoint replaces a scan of the movies collection at startup.
+ *
+ * <p>The values of every field are stored once, in a dictionary, and movies refer to them by their
+ * position in it. The file layout is, in big endian:
+ *
+ * <pre>
+ * int magic, int version, long saved at (ms), int checkpoint length, checkpoint BSON,
+ * for every field of MovieFilterPostings.FIELDS: int value count, (int length, UTF-8 bytes)*,
+ * int movie count, (12 bytes id, int sort value, for every field: int count, int value position*)*,
+ * long CRC32 of all the preceding bytes
+ * </pre>
+ *
+ * <p>Snapshots are written to a temporary file first, then moved over the previous one, so that a
+ * crash never leaves a partial snapshot behind.
+ */
+public class MovieCatalogSnapshot {
+
+    private static final int MAGIC = 0x4d464c58;
+    private static final int VERSION = 1;
+
+    private final MovieFilterPostings postings;
+    private final BsonDocument checkpoint;
+    private final long savedAt;
+
+    MovieCatalogSnapshot(MovieFilterPostings postings, BsonDocument checkpoint, long savedAt) {
+        this.postings = postings;
+        this.checkpoint = checkpoint;
+        this.savedAt = savedAt;
+    }
+
+    public MovieFilterPostings getPostings() {
+        return postings;
+    }
+
+    /** @return change stream checkpoint the catalog is current as of. */
+    public BsonDocument getCheckpoint() {
+        return checkpoint;
+    }
+
+    public long getSavedAt() {
+        return savedAt;
+    }
+
+    /**
+     * Writes a snapshot.
+     *
+     * @param path       - snapshot file.
+     * @param postings   - catalog to save.
+     * @param checkpoint - change stream checkpoint the catalog is current as of.
+     * @return size of the snapshot in bytes.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public static long write(Path path, MovieFilterPostings postings, BsonDocument checkpoint)
+            throws IOException {
+        int fieldCount = MovieFilterPostings.FIELDS.size();
+        List<Map<String, Integer>> positions = new ArrayList<>(fieldCount);
+        List<List<byte[]>> dictionaries = new ArrayList<>(fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+            positions.add(new HashMap<>());
+            dictionaries.add(new ArrayList<>());
+        }
+        long[] moviesSize = new long[1];
+        int[] movieCount = new int[1];
+        postings.forEachMovie(
+                (id, values, sortValue) -> {
+                    moviesSize[0] += 12 + 4;
+                    for (int i = 0; i < fieldCount; i++) {
+                        moviesSize[0] += 4 + 4L * values[i].length;
+                        for (String value : values[i]) {
+                            List<byte[]> dictionary = dictionaries.get(i);
+                            positions
+                                    .get(i)
+                                    .computeIfAbsent(
+                                            value,
+                                            k -> {
+                                                dictionary.add(k.getBytes(StandardCharsets.UTF_8));
+                                                return dictionary.size() - 1;
+                                            });
+                        }
+                    }
+                    movieCount[0]++;
+                });
+
+        byte[] checkpointBytes = toBytes(checkpoint);
+        long size = 4 + 4 + 8 + 4 + checkpointBytes.length + 4 + moviesSize[0] + 8;
+        for (List<byte[]> dictionary : dictionaries) {
+            size += 4;
+            for (byte[] value : dictionary) {
+                size += 4 + value.length;
+            }
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("movie catalog snapshot of " + size + " bytes is too large");
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel =
+                FileChannel.open(
+                        temporary,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+            buffer.putInt(checkpointBytes.length).put(checkpointBytes);
+            for (List<byte[]> dictionary : dictionaries) {
+                buffer.putInt(dictionary.size());
+                for (byte[] value : dictionary) {
+                    buffer.putInt(value.length).put(value);
+                }
+            }
+            buffer.putInt(movieCount[0]);
+            postings.forEachMovie(
+                    (id, values, sortValue) -> {
+                        buffer.put(id.toByteArray()).putInt(sortValue);
+                        for (int i = 0; i < fieldCount; i++) {
+                            buffer.putInt(values[i].length);
+                            for (String value : values[i]) {
+                                buffer.putInt(positions.get(i).get(value));
+                            }
+                        }
+                    });
+            buffer.putLong(checksum(buffer, buffer.position()));
+            buffer.force();
+        }
+        Files.move(
+                temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    /**
+     * Reads a snapshot, decoding the catalog straight from the mapped file.
+     *
+     * @param path - snapshot file.
+     * @return the snapshot.
+     * @throws IOException if the snapshot cannot be read, or is corrupt or of another version.
+     */
+    public static MovieCatalogSnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < 16 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException(path + " is not a movie catalog snapshot of version " + VERSION);
+            }
+            if (buffer.getLong(buffer.limit() - 8) != checksum(buffer, buffer.limit() - 8)) {
+                throw new IOException("movie catalog snapshot " + path + " is corrupt");
+            }
+            long savedAt = buffer.getLong();
+            byte[] checkpointBytes = new byte[buffer.getInt()];
+            buffer.get(checkpointBytes);
+
+            int fieldCount = MovieFilterPostings.FIELDS.size();
+            String[][] dictionaries = new String[fieldCount][];
+            for (int i = 0; i < fieldCount; i++) {
+                dictionaries[i] = new String[buffer.getInt()];
+                for (int j = 0; j < dictionaries[i].length; j++) {
+                    byte[] value = new byte[buffer.getInt()];
+                    buffer.get(value);
+                    dictionaries[i][j] = new String(value, StandardCharsets.UTF_8);
+                }
+            }
+
+            MovieFilterPostings postings = new MovieFilterPostings();
+            int movieCount = buffer.getInt();
+            byte[] id = new byte[12];
+            for (int movie = 0; movie < movieCount; movie++) {
+                buffer.get(id);
+                int sortValue = buffer.getInt();
+                Map<String, List<String>> fields = new LinkedHashMap<>();
+                for (int i = 0; i < fieldCount; i++) {
+                    String[] values = new String[buffer.getInt()];
+                    for (int j = 0; j < values.length; j++) {
+                        values[j] = dictionaries[i][buffer.getInt()];
+                    }
+                    fields.put(MovieFilterPostings.FIELDS.get(i), Arrays.asList(values));
+                }
+                postings.put(new ObjectId(id), fields, sortValue);
+            }
+            return new MovieCatalogSnapshot(postings, fromBytes(checkpointBytes), savedAt);
+        } catch (RuntimeException e) {
+            // buffer underflows and bad positions of a snapshot passing its checksum
+            throw new IOException("unable to read movie catalog snapshot " + path, e);
+        }
+    }
+
+    private static long checksum(ByteBuffer buffer, int length) {
+        ByteBuffer content = buffer.duplicate();
+        content.position(0).limit(length);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    private static byte[] toBytes(BsonDocument document) {
+        if (document == null) {
+            return new byte[0];
+        }
+        ByteBuffer bytes = new RawBsonDocument(document, new BsonDocumentCodec()).getByteBuffer().asNIO();
+        byte[] copy = new byte[bytes.remaining()];
+        bytes.get(copy);
+        return copy;
+    }
+
+    private static BsonDocument fromBytes(byte[] bytes) {
+        if (bytes.length == 0) {
+            return null;
+        }
+        try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bytes))) {
+            return new BsonDocumentCodec().decode(reader, DecoderContext.builder().build());
+        }
+    }
+}
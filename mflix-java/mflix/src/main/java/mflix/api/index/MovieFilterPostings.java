@@ -0,0 +1,225 @@
+package mflix.api.index;
+
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Maps every cast member, genre and country to the bitmap of the movies that have it. Movies are
+ * numbered with dense ordinals, in the order they are first indexed, and keep their ordinal when
+ * deleted and indexed again.
+ *
+ * <p>Every movie also keeps the values it was indexed with, to update its postings when it changes,
+ * and its sort value, to page matches without reading them from MongoDB.
+ *
+ * <p>Instances are not thread safe.
+ */
+public class MovieFilterPostings {
+
+    /** Receives the indexed movies. */
+    public interface MovieConsumer {
+
+        /**
+         * @param id        - movie id.
+         * @param values    - values of the movie, per field in the order of FIELDS. Not to be
+         *                  modified.
+         * @param sortValue - sort value of the movie.
+         */
+        void accept(ObjectId id, String[][] values, int sortValue);
+    }
+
+    public static final String CAST = "cast";
+    public static final String GENRES = "genres";
+    public static final String COUNTRIES = "countries";
+    public static final List<String> FIELDS =
+            Collections.unmodifiableList(Arrays.asList(CAST, GENRES, COUNTRIES));
+
+    private final Map<ObjectId, Integer> ordinals = new HashMap<>();
+    private final List<ObjectId> ids = new ArrayList<>();
+    // values of FIELDS per ordinal, null for deleted movies
+    private final List<String[][]> values = new ArrayList<>();
+    private int[] sortValues = new int[1024];
+    private final Map<String, Map<String, CompressedBitmap>> postings = new LinkedHashMap<>();
+    private final CompressedBitmap live = new CompressedBitmap();
+
+    public MovieFilterPostings() {
+        for (String field : FIELDS) {
+            postings.put(field, new HashMap<>());
+        }
+    }
+
+    /**
+     * Indexes a movie, replacing the values it was previously indexed with.
+     *
+     * @param id        - movie id.
+     * @param fields    - values of the movie, by field among FIELDS. Missing fields have no value.
+     * @param sortValue - value the matches are sorted by, descending.
+     */
+    public void put(ObjectId id, Map<String, List<String>> fields, int sortValue) {
+        Integer ordinal = ordinals.get(id);
+        if (ordinal == null) {
+            ordinal = ids.size();
+            ordinals.put(id, ordinal);
+            ids.add(id);
+            values.add(null);
+            if (ordinal == sortValues.length) {
+                sortValues = Arrays.copyOf(sortValues, ordinal * 2);
+            }
+        } else {
+            unindex(ordinal);
+        }
+        String[][] movieValues = new String[FIELDS.size()][];
+        for (int i = 0; i < FIELDS.size(); i++) {
+            List<String> fieldValues = fields.get(FIELDS.get(i));
+            movieValues[i] =
+                    fieldValues == null
+                            ? new String[0]
+                            : fieldValues.stream().distinct().toArray(String[]::new);
+            Map<String, CompressedBitmap> fieldPostings = postings.get(FIELDS.get(i));
+            for (String value : movieValues[i]) {
+                fieldPostings.computeIfAbsent(value, k -> new CompressedBitmap()).add(ordinal);
+            }
+        }
+        values.set(ordinal, movieValues);
+        sortValues[ordinal] = sortValue;
+        live.add(ordinal);
+    }
+
+    /**
+     * Removes a movie.
+     *
+     * @param id - movie id.
+     */
+    public void remove(ObjectId id) {
+        Integer ordinal = ordinals.get(id);
+        if (ordinal != null) {
+            unindex(ordinal);
+        }
+    }
+
+    private void unindex(int ordinal) {
+        String[][] movieValues = values.get(ordinal);
+        if (movieValues == null) {
+            return;
+        }
+        for (int i = 0; i < FIELDS.size(); i++) {
+            Map<String, CompressedBitmap> fieldPostings = postings.get(FIELDS.get(i));
+            for (String value : movieValues[i]) {
+                CompressedBitmap bitmap = fieldPostings.get(value);
+                bitmap.remove(ordinal);
+                if (bitmap.isEmpty()) {
+                    fieldPostings.remove(value);
+                }
+            }
+        }
+        values.set(ordinal, null);
+        live.remove(ordinal);
+    }
+
+    /**
+     * Matches movies having any of the values of every field filtered on.
+     *
+     * @param filters - accepted values, by field among FIELDS. Fields without values are not
+     *                filtered on.
+     * @return the ordinals of the matching movies, all the movies without filters.
+     */
+    public CompressedBitmap match(Map<String, List<String>> filters) {
+        CompressedBitmap matches = null;
+        for (Map.Entry<String, List<String>> filter : filters.entrySet()) {
+            if (filter.getValue() == null || filter.getValue().isEmpty()) {
+                continue;
+            }
+            Map<String, CompressedBitmap> fieldPostings = postings.get(filter.getKey());
+            if (fieldPostings == null) {
+                throw new IllegalArgumentException("field `" + filter.getKey() + "` is not indexed");
+            }
+            CompressedBitmap any = new CompressedBitmap();
+            for (String value : filter.getValue()) {
+                CompressedBitmap bitmap = fieldPostings.get(value);
+                if (bitmap != null) {
+                    any = CompressedBitmap.or(any, bitmap);
+                }
+            }
+            matches = matches == null ? any : CompressedBitmap.and(matches, any);
+        }
+        return matches == null ? CompressedBitmap.or(live, new CompressedBitmap()) : matches;
+    }
+
+    /**
+     * Returns a page of matches, sorted by descending sort value, then by ordinal. Only the best
+     * `skip + limit` matches are kept while sorting.
+     *
+     * @param matches - ordinals of the matching movies.
+     * @param skip    - number of matches before the page.
+     * @param limit   - page size.
+     * @return ids of the page movies, in order.
+     */
+    public List<ObjectId> page(CompressedBitmap matches, int skip, int limit) {
+        int wanted = skip + limit;
+        if (limit <= 0 || skip >= matches.cardinality()) {
+            return new ArrayList<>();
+        }
+        // ranks pack the sort value in the high bits, and the reversed ordinal in the low ones
+        PriorityQueue<Long> best = new PriorityQueue<>(Math.min(wanted, matches.cardinality()));
+        matches.forEach(
+                ordinal -> {
+                    long rank = ((long) sortValues[ordinal] << 32) | (0xFFFFFFFFL - ordinal);
+                    if (best.size() < wanted) {
+                        best.add(rank);
+                    } else if (rank > best.peek()) {
+                        best.poll();
+                        best.add(rank);
+                    }
+                });
+        long[] ranks = new long[best.size()];
+        for (int i = ranks.length - 1; i >= 0; i--) {
+            ranks[i] = best.poll();
+        }
+        List<ObjectId> page = new ArrayList<>(limit);
+        for (int i = skip; i < ranks.length; i++) {
+            page.add(ids.get((int) (0xFFFFFFFFL - (ranks[i] & 0xFFFFFFFFL))));
+        }
+        return page;
+    }
+
+    /**
+     * Calls a consumer with every indexed movie, in ordinal order.
+     *
+     * @param consumer - movie consumer.
+     */
+    public void forEachMovie(MovieConsumer consumer) {
+        live.forEach(ordinal -> consumer.accept(ids.get(ordinal), values.get(ordinal), sortValues[ordinal]));
+    }
+
+    public int getMovieCount() {
+        return live.cardinality();
+    }
+
+    /**
+     * Summarizes the postings.
+     *
+     * @return Map with the number of movies, of distinct values per field, and the estimated size
+     * of the bitmaps.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("movies", live.cardinality());
+        snapshot.put("ordinals", ids.size());
+        long bytes = live.sizeInBytes();
+        for (Map.Entry<String, Map<String, CompressedBitmap>> field : postings.entrySet()) {
+            snapshot.put(field.getKey(), field.getValue().size());
+            for (CompressedBitmap bitmap : field.getValue().values()) {
+                bytes += bitmap.sizeInBytes();
+            }
+        }
+        snapshot.put("bitmap_bytes", bytes);
+        return snapshot;
+    }
+}
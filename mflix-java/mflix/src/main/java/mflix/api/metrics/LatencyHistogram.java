@@ -0,0 +1,105 @@
+package mflix.api.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free log-linear latency histogram. Values are recorded in microseconds into buckets that
+ * split every power of two in 8 linear sub-buckets, which keeps the relative error of any reported
+ * percentile under 12.5% while using a fixed amount of memory.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(micros, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (micros >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    /**
+     * Records a single measurement.
+     *
+     * @param duration - measured duration.
+     * @param unit     - time unit of the duration value.
+     */
+    public void record(long duration, TimeUnit unit) {
+        long micros = unit.toMicros(duration);
+        buckets.incrementAndGet(bucketIndex(micros));
+        count.increment();
+        sum.add(micros);
+        max.accumulate(micros);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Estimates the value below which the given fraction of the measurements fall.
+     *
+     * @param quantile - value between 0 and 1.
+     * @return estimated latency in microseconds.
+     */
+    public long percentile(double quantile) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Summarizes the histogram in milliseconds, ready to be rendered as json.
+     *
+     * @return Map with count, mean, p50, p99, p999 and max values.
+     */
+    public Map<String, Object> snapshot() {
+        long total = count.sum();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", total);
+        snapshot.put("mean_ms", total == 0 ? 0.0 : toMillis(sum.sum() / total));
+        snapshot.put("p50_ms", toMillis(percentile(0.5)));
+        snapshot.put("p99_ms", toMillis(percentile(0.99)));
+        snapshot.put("p999_ms", toMillis(percentile(0.999)));
+        snapshot.put("max_ms", toMillis(max.get()));
+        return snapshot;
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+}
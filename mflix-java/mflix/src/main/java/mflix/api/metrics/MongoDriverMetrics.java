@@ -0,0 +1,171 @@
+package mflix.api.metrics;
+
+import com.mongodb.event.*;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MongoDB driver listener that collects per command latency and payload sizes, and connection
+ * pool usage. Command sizes are measured on the BSON command and reply documents, which excludes
+ * the wire protocol message headers.
+ */
+public class MongoDriverMetrics implements CommandListener, ConnectionPoolListener {
+
+    private static final BsonDocumentCodec DOCUMENT_CODEC = new BsonDocumentCodec();
+
+    private final boolean measureBytes;
+    private final ConcurrentMap<String, CommandMetrics> commands = new ConcurrentHashMap<>();
+
+    private final AtomicInteger poolSize = new AtomicInteger();
+    private final AtomicInteger checkedOut = new AtomicInteger();
+    private final AtomicInteger waitQueueSize = new AtomicInteger();
+    private final LatencyHistogram checkoutWait = new LatencyHistogram();
+    private final ThreadLocal<Long> waitQueueEnteredAt = new ThreadLocal<>();
+
+    /**
+     * Creates a driver metrics listener.
+     *
+     * @param measureBytes - if true, command and reply documents are measured, which requires
+     *                     encoding the documents that are not already backed by raw bytes.
+     */
+    public MongoDriverMetrics(boolean measureBytes) {
+        this.measureBytes = measureBytes;
+    }
+
+    private CommandMetrics command(String commandName) {
+        return commands.computeIfAbsent(commandName, k -> new CommandMetrics());
+    }
+
+    private static long sizeOf(BsonDocument document) {
+        if (document == null) {
+            return 0;
+        }
+        if (document instanceof RawBsonDocument) {
+            return ((RawBsonDocument) document).getByteBuffer().remaining();
+        }
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            DOCUMENT_CODEC.encode(writer, document, EncoderContext.builder().build());
+        }
+        return buffer.getPosition();
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (measureBytes) {
+            command(event.getCommandName()).bytesSent.add(sizeOf(event.getCommand()));
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        CommandMetrics metrics = command(event.getCommandName());
+        metrics.latency.record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        if (measureBytes) {
+            metrics.bytesReceived.add(sizeOf(event.getResponse()));
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        CommandMetrics metrics = command(event.getCommandName());
+        metrics.latency.record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        metrics.failures.increment();
+    }
+
+    @Override
+    public void connectionPoolOpened(ConnectionPoolOpenedEvent event) {
+    }
+
+    @Override
+    public void connectionPoolClosed(ConnectionPoolClosedEvent event) {
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        checkedOut.incrementAndGet();
+    }
+
+    @Override
+    public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+        checkedOut.decrementAndGet();
+    }
+
+    @Override
+    public void waitQueueEntered(ConnectionPoolWaitQueueEnteredEvent event) {
+        waitQueueSize.incrementAndGet();
+        waitQueueEnteredAt.set(System.nanoTime());
+    }
+
+    @Override
+    public void waitQueueExited(ConnectionPoolWaitQueueExitedEvent event) {
+        waitQueueSize.decrementAndGet();
+        // the pool fires both wait queue events from the thread requesting the connection
+        Long enteredAt = waitQueueEnteredAt.get();
+        if (enteredAt != null) {
+            checkoutWait.record(System.nanoTime() - enteredAt, TimeUnit.NANOSECONDS);
+            waitQueueEnteredAt.remove();
+        }
+    }
+
+    @Override
+    public void connectionAdded(ConnectionAddedEvent event) {
+        poolSize.incrementAndGet();
+    }
+
+    @Override
+    public void connectionRemoved(ConnectionRemovedEvent event) {
+        poolSize.decrementAndGet();
+    }
+
+    /**
+     * Summarizes the collected metrics.
+     *
+     * @return Map with `commands` metrics per command name and `connection_pool` metrics.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> commandsSnapshot = new TreeMap<>();
+        commands.forEach((name, metrics) -> commandsSnapshot.put(name, metrics.snapshot()));
+
+        Map<String, Object> pool = new LinkedHashMap<>();
+        pool.put("size", poolSize.get());
+        pool.put("checked_out", checkedOut.get());
+        pool.put("wait_queue_size", waitQueueSize.get());
+        pool.put("checkout_wait", checkoutWait.snapshot());
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("commands", commandsSnapshot);
+        snapshot.put("connection_pool", pool);
+        return snapshot;
+    }
+
+    private static class CommandMetrics {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("latency", latency.snapshot());
+            snapshot.put("failures", failures.sum());
+            snapshot.put("bytes_sent", bytesSent.sum());
+            snapshot.put("bytes_received", bytesReceived.sum());
+            return snapshot;
+        }
+    }
+}
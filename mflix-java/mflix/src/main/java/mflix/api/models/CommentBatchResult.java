@@ -0,0 +1,59 @@
+package mflix.api.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Outcome of a batch comment insert, with the error of every comment that was not inserted. */
+public class CommentBatchResult {
+
+    @JsonIgnore
+    private final List<Comment> inserted = new ArrayList<>();
+
+    private final Map<Integer, String> errors = new TreeMap<>();
+
+    public CommentBatchResult() {
+        super();
+    }
+
+    public void addInserted(Comment comment) {
+        inserted.add(comment);
+    }
+
+    /**
+     * Records the failure of a comment of the batch.
+     *
+     * @param index - position of the comment in the submitted batch.
+     * @param error - failure reason.
+     */
+    public void addError(int index, String error) {
+        errors.put(index, error);
+    }
+
+    public List<Comment> getInserted() {
+        return Collections.unmodifiableList(inserted);
+    }
+
+    @JsonProperty("inserted_count")
+    public int getInsertedCount() {
+        return inserted.size();
+    }
+
+    /** @return Map of batch position to failure reason, ordered by position. */
+    public Map<Integer, String> getErrors() {
+        return Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * @param index - position of the comment in the submitted batch.
+     * @return the failure reason of the comment, or null if it was inserted.
+     */
+    public String getError(int index) {
+        return errors.get(index);
+    }
+}
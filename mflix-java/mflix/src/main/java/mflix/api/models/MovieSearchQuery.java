@@ -0,0 +1,161 @@
+package mflix.api.models;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Criteria of a compound movie search. Every criterion left unset matches all movies, and the set
+ * ones must all match.
+ */
+public class MovieSearchQuery {
+
+    private List<String> text = Collections.emptyList();
+    private List<String> cast = Collections.emptyList();
+    private List<String> genres = Collections.emptyList();
+    private List<String> countries = Collections.emptyList();
+    private Integer minYear;
+    private Integer maxYear;
+    private Double minRating;
+    private Double maxRating;
+    private Integer minRuntime;
+    private Integer maxRuntime;
+
+    public MovieSearchQuery() {
+        super();
+    }
+
+    /**
+     * Copies the criteria of another query.
+     *
+     * @param other - query to copy.
+     */
+    public MovieSearchQuery(MovieSearchQuery other) {
+        this.text = other.text;
+        this.cast = other.cast;
+        this.genres = other.genres;
+        this.countries = other.countries;
+        this.minYear = other.minYear;
+        this.maxYear = other.maxYear;
+        this.minRating = other.minRating;
+        this.maxRating = other.maxRating;
+        this.minRuntime = other.minRuntime;
+        this.maxRuntime = other.maxRuntime;
+    }
+
+    public List<String> getText() {
+        return text;
+    }
+
+    /** @param text - text search keywords, matched by any of them. */
+    public void setText(List<String> text) {
+        this.text = text == null ? Collections.emptyList() : text;
+    }
+
+    public List<String> getCast() {
+        return cast;
+    }
+
+    /** @param cast - cast members, matched by any of them. */
+    public void setCast(List<String> cast) {
+        this.cast = cast == null ? Collections.emptyList() : cast;
+    }
+
+    public List<String> getGenres() {
+        return genres;
+    }
+
+    /** @param genres - genres, matched by any of them. */
+    public void setGenres(List<String> genres) {
+        this.genres = genres == null ? Collections.emptyList() : genres;
+    }
+
+    public List<String> getCountries() {
+        return countries;
+    }
+
+    /** @param countries - production countries, matched by any of them. */
+    public void setCountries(List<String> countries) {
+        this.countries = countries == null ? Collections.emptyList() : countries;
+    }
+
+    public Integer getMinYear() {
+        return minYear;
+    }
+
+    public void setMinYear(Integer minYear) {
+        this.minYear = minYear;
+    }
+
+    public Integer getMaxYear() {
+        return maxYear;
+    }
+
+    public void setMaxYear(Integer maxYear) {
+        this.maxYear = maxYear;
+    }
+
+    public Double getMinRating() {
+        return minRating;
+    }
+
+    /** @param minRating - minimum IMDb rating, inclusive. */
+    public void setMinRating(Double minRating) {
+        this.minRating = minRating;
+    }
+
+    public Double getMaxRating() {
+        return maxRating;
+    }
+
+    /** @param maxRating - maximum IMDb rating, inclusive. */
+    public void setMaxRating(Double maxRating) {
+        this.maxRating = maxRating;
+    }
+
+    public Integer getMinRuntime() {
+        return minRuntime;
+    }
+
+    /** @param minRuntime - minimum runtime in minutes, inclusive. */
+    public void setMinRuntime(Integer minRuntime) {
+        this.minRuntime = minRuntime;
+    }
+
+    public Integer getMaxRuntime() {
+        return maxRuntime;
+    }
+
+    /** @param maxRuntime - maximum runtime in minutes, inclusive. */
+    public void setMaxRuntime(Integer maxRuntime) {
+        this.maxRuntime = maxRuntime;
+    }
+
+    public boolean hasText() {
+        return !text.isEmpty();
+    }
+
+    /**
+     * Counts the criteria set.
+     *
+     * @return number of criteria, a range counting once however many of its bounds are set.
+     */
+    public int getCriteriaCount() {
+        int count = 0;
+        for (List<String> terms : Arrays.asList(text, cast, genres, countries)) {
+            if (!terms.isEmpty()) {
+                count++;
+            }
+        }
+        if (minYear != null || maxYear != null) {
+            count++;
+        }
+        if (minRating != null || maxRating != null) {
+            count++;
+        }
+        if (minRuntime != null || maxRuntime != null) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,72 @@
+package mflix.api.models;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/** Progress of the deletion of an user and of its comments. */
+public class UserDeletionProgress {
+
+    private final String email;
+
+    @JsonProperty("anonymize_comments")
+    private final boolean anonymizeComments;
+
+    @JsonProperty("total_comments")
+    private final long totalComments;
+
+    @JsonProperty("processed_comments")
+    private volatile long processedComments;
+
+    @JsonProperty("user_deleted")
+    private volatile boolean userDeleted;
+
+    private volatile boolean done;
+
+    public UserDeletionProgress(String email, boolean anonymizeComments, long totalComments) {
+        super();
+        this.email = email;
+        this.anonymizeComments = anonymizeComments;
+        this.totalComments = totalComments;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public boolean isAnonymizeComments() {
+        return anonymizeComments;
+    }
+
+    /**
+     * Number of comments the user had when the deletion started. Comments added during the
+     * deletion are processed too, so the processed count may end up slightly higher.
+     *
+     * @return number of comments to be processed.
+     */
+    public long getTotalComments() {
+        return totalComments;
+    }
+
+    public long getProcessedComments() {
+        return processedComments;
+    }
+
+    public void addProcessedComments(long count) {
+        this.processedComments += count;
+    }
+
+    public boolean isUserDeleted() {
+        return userDeleted;
+    }
+
+    public void setUserDeleted(boolean userDeleted) {
+        this.userDeleted = userDeleted;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public void setDone(boolean done) {
+        this.done = done;
+    }
+}
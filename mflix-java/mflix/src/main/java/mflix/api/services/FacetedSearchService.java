@@ -0,0 +1,276 @@
+package mflix.api.services;
+
+import mflix.api.cache.BoundedTtlCache;
+import mflix.api.daos.MovieDao;
+import mflix.api.models.MovieSearchQuery;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Searches movies together with the facets of the results: counts per genre and country, and per
+ * bucket of year, runtime and IMDb rating.
+ *
+ * <p>The counts of a facet ignore the criteria on its own dimension, so that they show how many
+ * movies every other value of that dimension would match. Each facet is therefore its own
+ * aggregation, and the facets and the page of movies run in parallel on a bounded pool. Facet
+ * counts are cached per facet and normalized criteria: every filter combination sharing the
+ * criteria outside of a dimension shares that facet. Cached facets expire with their TTL or when
+ * the search cache epoch is bumped.
+ */
+@Service
+public class FacetedSearchService {
+
+    public static final String GENRES = "genres";
+    public static final String COUNTRIES = "countries";
+    public static final String YEAR = "year";
+    public static final String RUNTIME = "runtime";
+    public static final String RATING = "rating";
+
+    private final MovieDao movieDao;
+    private final MoviesService moviesService;
+    private final SearchResultCache searchResultCache;
+    private final Map<String, List<Number>> boundaries = new LinkedHashMap<>();
+    private final int valueLimit;
+    private final BoundedTtlCache<List<Object>, List<Document>> facets;
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public FacetedSearchService(
+            MovieDao movieDao,
+            MoviesService moviesService,
+            SearchResultCache searchResultCache,
+            @Value("${mflix.facets.year_boundaries:1900,1950,1970,1980,1990,2000,2010,2020}")
+                    String yearBoundaries,
+            @Value("${mflix.facets.runtime_boundaries:0,60,90,120,180}") String runtimeBoundaries,
+            @Value("${mflix.facets.rating_boundaries:0,5,6,7,8,9,10.1}") String ratingBoundaries,
+            @Value("${mflix.facets.value_limit:20}") int valueLimit,
+            @Value("${mflix.facets.cache_size:1000}") int cacheSize,
+            @Value("${mflix.facets.cache_ttl_seconds:300}") long ttlSeconds,
+            @Value("${mflix.facets.pool_size:8}") int poolSize) {
+        this.movieDao = movieDao;
+        this.moviesService = moviesService;
+        this.searchResultCache = searchResultCache;
+        boundaries.put(YEAR, parseBoundaries(YEAR, yearBoundaries));
+        boundaries.put(RUNTIME, parseBoundaries(RUNTIME, runtimeBoundaries));
+        boundaries.put(RATING, parseBoundaries(RATING, ratingBoundaries));
+        this.valueLimit = valueLimit;
+        this.facets = new BoundedTtlCache<>(cacheSize, ttlSeconds, TimeUnit.SECONDS);
+        AtomicInteger threads = new AtomicInteger();
+        // a full queue runs the pipelines on the request thread rather than failing the search
+        this.executor =
+                new ThreadPoolExecutor(
+                        poolSize,
+                        poolSize,
+                        0,
+                        TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(poolSize * 16),
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "faceted-search-" + threads.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        },
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Parses comma separated bucket boundaries.
+     *
+     * @param facet - facet of the boundaries, for error messages.
+     * @param value - comma separated numbers.
+     * @return the boundaries, as integers when they all are.
+     */
+    static List<Number> parseBoundaries(String facet, String value) {
+        List<Number> parsed = new ArrayList<>();
+        for (String boundary : value.split(",")) {
+            String trimmed = boundary.trim();
+            try {
+                parsed.add(
+                        trimmed.contains(".") ? Double.valueOf(trimmed) : (Number) Integer.valueOf(trimmed));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(
+                        "invalid " + facet + " facet boundary `" + trimmed + "`", e);
+            }
+        }
+        if (parsed.size() < 2) {
+            throw new IllegalArgumentException(facet + " facet needs at least two boundaries");
+        }
+        for (int i = 1; i < parsed.size(); i++) {
+            if (parsed.get(i).doubleValue() <= parsed.get(i - 1).doubleValue()) {
+                throw new IllegalArgumentException(facet + " facet boundaries must be ascending");
+            }
+        }
+        return Collections.unmodifiableList(parsed);
+    }
+
+    /**
+     * Finds a page of the movies matching a search, with the facets of all the matches.
+     *
+     * @param query          - search criteria.
+     * @param resultsPerPage - max number of movies per page.
+     * @param page           - wanted page number.
+     * @return Map containing the movies array under `movies_list`, the total results under
+     * `movies_count` and the counts of every facet under `facets`.
+     */
+    public Map<String, ?> search(MovieSearchQuery query, int resultsPerPage, int page) {
+        CompletableFuture<Map<String, ?>> movies =
+                CompletableFuture.supplyAsync(
+                        () -> moviesService.searchMovies(query, resultsPerPage, page), executor);
+        Map<String, CompletableFuture<List<Document>>> pending = new LinkedHashMap<>();
+        for (String facet : Arrays.asList(GENRES, COUNTRIES, YEAR, RUNTIME, RATING)) {
+            pending.put(facet, CompletableFuture.supplyAsync(() -> getFacet(facet, query), executor));
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>(join(movies));
+        Map<String, Object> facetCounts = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<List<Document>>> facet : pending.entrySet()) {
+            facetCounts.put(facet.getKey(), join(facet.getValue()));
+        }
+        result.put("facets", facetCounts);
+        return result;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the counts of a facet, from the cache when possible.
+     *
+     * @param facet - facet name.
+     * @param query - search criteria.
+     * @return the facet counts, not to be modified.
+     */
+    List<Document> getFacet(String facet, MovieSearchQuery query) {
+        MovieSearchQuery others = withoutDimension(facet, query);
+        return facets.get(cacheKey(facet, others), key -> computeFacet(facet, others));
+    }
+
+    private List<Document> computeFacet(String facet, MovieSearchQuery query) {
+        Supplier<List<Document>> pipeline;
+        switch (facet) {
+            case GENRES:
+                pipeline = () -> movieDao.getValueFacet(query, "genres", valueLimit);
+                break;
+            case COUNTRIES:
+                pipeline = () -> movieDao.getValueFacet(query, "countries", valueLimit);
+                break;
+            case YEAR:
+                pipeline = () -> movieDao.getBucketFacet(query, "year", boundaries.get(YEAR));
+                break;
+            case RUNTIME:
+                pipeline = () -> movieDao.getBucketFacet(query, "runtime", boundaries.get(RUNTIME));
+                break;
+            case RATING:
+                pipeline = () -> movieDao.getBucketFacet(query, "imdb.rating", boundaries.get(RATING));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown facet `" + facet + "`");
+        }
+        return Collections.unmodifiableList(pipeline.get());
+    }
+
+    /**
+     * Copies a query without its criteria on the dimension of a facet.
+     *
+     * @param facet - facet name.
+     * @param query - search criteria.
+     * @return the criteria the facet is counted with.
+     */
+    static MovieSearchQuery withoutDimension(String facet, MovieSearchQuery query) {
+        MovieSearchQuery others = new MovieSearchQuery(query);
+        switch (facet) {
+            case GENRES:
+                others.setGenres(null);
+                break;
+            case COUNTRIES:
+                others.setCountries(null);
+                break;
+            case YEAR:
+                others.setMinYear(null);
+                others.setMaxYear(null);
+                break;
+            case RUNTIME:
+                others.setMinRuntime(null);
+                others.setMaxRuntime(null);
+                break;
+            case RATING:
+                others.setMinRating(null);
+                others.setMaxRating(null);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown facet `" + facet + "`");
+        }
+        return others;
+    }
+
+    /**
+     * Builds the cache key of a facet, with normalized criteria so that equivalent searches share
+     * their facets.
+     *
+     * @param facet - facet name.
+     * @param query - criteria the facet is counted with.
+     * @return the cache key.
+     */
+    List<Object> cacheKey(String facet, MovieSearchQuery query) {
+        return Arrays.asList(
+                facet,
+                searchResultCache.getEpoch(),
+                SearchResultCache.normalize(SearchResultCache.TEXT, query.getText()),
+                SearchResultCache.normalize(SearchResultCache.CAST, query.getCast()),
+                SearchResultCache.normalize(SearchResultCache.GENRE, query.getGenres()),
+                SearchResultCache.normalize(COUNTRIES, query.getCountries()),
+                query.getMinYear(),
+                query.getMaxYear(),
+                query.getMinRating(),
+                query.getMaxRating(),
+                query.getMinRuntime(),
+                query.getMaxRuntime());
+    }
+
+    /**
+     * Summarizes the facet cache and the pipeline pool.
+     *
+     * @return Map with the bucket boundaries, the facet cache statistics and the pool activity.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> pool = new LinkedHashMap<>();
+        pool.put("size", executor.getMaximumPoolSize());
+        pool.put("active", executor.getActiveCount());
+        pool.put("queued", executor.getQueue().size());
+        pool.put("completed", executor.getCompletedTaskCount());
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("boundaries", boundaries);
+        snapshot.put("cache", facets.snapshot());
+        snapshot.put("pool", pool);
+        return snapshot;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -1,16 +1,24 @@
 package mflix.api.services;
 
+import com.mongodb.client.ClientSession;
+import mflix.api.cache.SingleFlight;
 import mflix.api.daos.CommentDao;
+import mflix.api.daos.CommentWriteCoalescer;
+import mflix.api.daos.DaoOperationTimeout;
+import mflix.api.daos.IncorrectDaoOperation;
 import mflix.api.daos.MovieDao;
 import mflix.api.daos.MovieDocumentMapper;
-import mflix.api.daos.UserDao;
+import mflix.api.daos.MovieFilterIndex;
 import mflix.api.models.Comment;
+import mflix.api.models.CommentBatchResult;
 import mflix.api.models.Critic;
 import mflix.api.models.Movie;
+import mflix.api.models.MovieSearchQuery;
 import mflix.api.models.User;
 import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Service;
 
@@ -27,7 +35,26 @@ public class MoviesService {
     @Autowired
     private CommentDao commentDao;
     @Autowired
-    private UserDao userDao;
+    private UserService userService;
+    @Autowired
+    private CommentWriteCoalescer commentWriteCoalescer;
+    @Autowired
+    private SearchResultCache searchResultCache;
+    @Autowired
+    private TextSearchSnapshots textSearchSnapshots;
+    @Autowired
+    private ResponseVersions responseVersions;
+    @Autowired
+    private MovieFilterIndex movieFilterIndex;
+    @Autowired
+    private TopMoviesFeed topMoviesFeed;
+
+    // concurrent identical reads share one query
+    private final SingleFlight<String, Document> movieFlight = new SingleFlight<>();
+    private final SingleFlight<List<Object>, Map<String, ?>> textSearchFlight = new SingleFlight<>();
+
+    @Value("${mflix.comments.bulk_max_size:1000}")
+    private int bulkMaxSize = 1000;
 
     public MoviesService() {
         super();
@@ -40,8 +67,23 @@ public class MoviesService {
      * @return Movie object or null if no match applies.
      */
     public Movie getMovie(String id) {
+        return getMovie(id, "");
+    }
+
+    /**
+     * Finds the Movie object that matches the `id` value, for a response tagged with a version of
+     * the movie. Only reads started for the same version are shared, so that a read started before
+     * a change is never served under the version of that change.
+     *
+     * @param id      - matching movie id.
+     * @param version - version the response is tagged with, read before calling this method.
+     * @return Movie object or null if no match applies.
+     */
+    public Movie getMovie(String id, String version) {
 
-        Movie movie = MovieDocumentMapper.mapToMovie(movieDao.getMovie(id));
+        Movie movie =
+                MovieDocumentMapper.mapToMovie(
+                        movieFlight.run(id + "@" + version, () -> movieDao.getMovie(id)));
         if (movie.getId() == null || movie.getId().isEmpty()) {
             return null;
         }
@@ -70,6 +112,10 @@ public class MoviesService {
      * key.
      */
     public Map<String, ?> getMovies(int resultsPerPage, int page) {
+        Map<String, ?> fed = topMoviesFeed.getPage(null, resultsPerPage, page);
+        if (fed != null) {
+            return fed;
+        }
         int skip = resultsPerPage * page;
 
         List<Movie> movies =
@@ -115,20 +161,59 @@ public class MoviesService {
      * @return Map containing the movies array and total results matching filter criteria.
      */
     public Map<String, ?> getMoviesByText(int resultsPerPage, int page, ArrayList<String> filter) {
+        return getMoviesByText(resultsPerPage, page, filter, null);
+    }
+
+    /**
+     * Collects the list of movies that match the Text search for the provided filter. Pages are
+     * sliced from the ranking computed by a previous page of the same search when `searchToken`
+     * still identifies it.
+     *
+     * @param resultsPerPage - max number of results per page
+     * @param page           - wanted page number
+     * @param filter         - List of keywords to be matched
+     * @param searchToken    - `search_token` returned with a previous page, or null.
+     * @return Map containing the movies array, total results matching filter criteria on the first
+     * page, and the search token of the ranking.
+     */
+    public Map<String, ?> getMoviesByText(
+            int resultsPerPage, int page, ArrayList<String> filter, String searchToken) {
+        return searchResultCache.get(
+                SearchResultCache.TEXT,
+                filter,
+                page,
+                resultsPerPage,
+                () ->
+                        textSearchFlight.run(
+                                Arrays.asList(
+                                        SearchResultCache.normalize(SearchResultCache.TEXT, filter),
+                                        page,
+                                        resultsPerPage),
+                                () -> searchMoviesByText(resultsPerPage, page, filter, searchToken)));
+    }
+
+    private Map<String, ?> searchMoviesByText(
+            int resultsPerPage, int page, List<String> filter, String searchToken) {
         int skip = resultsPerPage * page;
         String keywords = String.join(" ", filter);
 
+        TextSearchSnapshots.Snapshot snapshot =
+                textSearchSnapshots.get(
+                        searchToken, keywords, maxIds -> movieDao.getRankedTextSearchIds(keywords, maxIds));
+        // pages past a truncated ranking are still served by a skip
+        List<Document> movies =
+                snapshot.covers(skip, resultsPerPage)
+                        ? movieDao.getMoviesByIds(snapshot.page(skip, resultsPerPage))
+                        : movieDao.getMoviesByText(resultsPerPage, skip, keywords);
         List<Movie> movieList =
-                movieDao
-                        .getMoviesByText(resultsPerPage, skip, keywords)
-                        .stream()
-                        .map(MovieDocumentMapper::mapToMovie)
-                        .collect(Collectors.toList());
+                movies.stream().map(MovieDocumentMapper::mapToMovie).collect(Collectors.toList());
         Map<String, Object> result = new HashMap<>();
         result.put("movies_list", movieList);
+        result.put("search_token", snapshot.getToken());
 
         if (page == 0) {
-            result.put("movies_count", movieDao.getTextSearchCount(keywords));
+            long count = snapshot.getCount();
+            result.put("movies_count", count >= 0 ? count : movieDao.getTextSearchCount(keywords));
         }
         return result;
     }
@@ -143,6 +228,20 @@ public class MoviesService {
      */
     public Map<String, ?> getMoviesByCast(
             int resultsPerPage, int page, ArrayList<String> castFilter) {
+        return searchResultCache.get(
+                SearchResultCache.CAST,
+                castFilter,
+                page,
+                resultsPerPage,
+                () -> searchMoviesByCast(resultsPerPage, page, castFilter));
+    }
+
+    private Map<String, ?> searchMoviesByCast(int resultsPerPage, int page, List<String> castFilter) {
+        MovieSearchQuery query = new MovieSearchQuery();
+        query.setCast(castFilter);
+        if (movieFilterIndex.supports(query)) {
+            return searchIndexedMovies(query, resultsPerPage, page, page == 0);
+        }
         int skip = page * resultsPerPage;
 
         String[] cast = castFilter.toArray(new String[0]);
@@ -173,6 +272,32 @@ public class MoviesService {
      */
     public Map<String, ?> getMoviesByGenre(
             int resultsPerPage, int page, ArrayList<String> genreFilters) {
+        List<String> genres = SearchResultCache.normalize(SearchResultCache.GENRE, genreFilters);
+        // pages of a single genre come from the top movies feed, and change with its refreshes
+        return searchResultCache.get(
+                SearchResultCache.GENRE,
+                genreFilters,
+                page,
+                resultsPerPage,
+                topMoviesFeed.getRefreshedAt(),
+                () -> {
+                    if (genres.size() == 1) {
+                        Map<String, ?> fed = topMoviesFeed.getPage(genres.get(0), resultsPerPage, page);
+                        if (fed != null) {
+                            return fed;
+                        }
+                    }
+                    return searchMoviesByGenre(resultsPerPage, page, genreFilters);
+                });
+    }
+
+    private Map<String, ?> searchMoviesByGenre(
+            int resultsPerPage, int page, List<String> genreFilters) {
+        MovieSearchQuery query = new MovieSearchQuery();
+        query.setGenres(genreFilters);
+        if (movieFilterIndex.supports(query)) {
+            return searchIndexedMovies(query, resultsPerPage, page, page == 0);
+        }
         int skip = page * resultsPerPage;
 
         String[] genres = genreFilters.toArray(new String[0]);
@@ -188,11 +313,74 @@ public class MoviesService {
         result.put("movies_list", movieList);
 
         if (page == 0) {
-            result.put("movies_count", movieDao.getCastSearchCount(genres));
+            result.put("movies_count", movieDao.getGenresSearchCount(genres));
+        }
+        return result;
+    }
+
+    /**
+     * Finds the movies matching all the criteria of a compound search, in a single query that also
+     * counts them.
+     *
+     * @param query          - search criteria.
+     * @param resultsPerPage - max number of movies per page.
+     * @param page           - wanted page number.
+     * @return Map containing the movies array and total results matching all the criteria.
+     */
+    public Map<String, ?> searchMovies(MovieSearchQuery query, int resultsPerPage, int page) {
+        if (movieFilterIndex.supports(query)) {
+            return searchIndexedMovies(query, resultsPerPage, page, true);
         }
+        Document found =
+                movieDao.searchMovies(
+                        query, "tomatoes.viewer.numReviews", resultsPerPage, page * resultsPerPage);
+        List<Movie> movieList =
+                ((List<?>) found.get("movies", List.class))
+                        .stream()
+                        .map(movie -> MovieDocumentMapper.mapToMovie((Document) movie))
+                        .collect(Collectors.toList());
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("movies_list", movieList);
+        result.put("movies_count", found.getLong("count"));
         return result;
     }
 
+    /**
+     * Matches and counts a search with the movie filter index, then reads only the movies of the
+     * page.
+     */
+    private Map<String, ?> searchIndexedMovies(
+            MovieSearchQuery query, int resultsPerPage, int page, boolean withCount) {
+        Map<String, Object> found =
+                movieFilterIndex.search(query, resultsPerPage, page * resultsPerPage);
+        List<Movie> movieList =
+                movieDao
+                        .getMoviesByIds((List<ObjectId>) found.get("ids"))
+                        .stream()
+                        .map(MovieDocumentMapper::mapToMovie)
+                        .collect(Collectors.toList());
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("movies_list", movieList);
+        if (withCount) {
+            result.put("movies_count", found.get("count"));
+        }
+        return result;
+    }
+
+    /**
+     * Summarizes the calls collapsed into an identical call in flight.
+     *
+     * @return Map with the statistics of `getMovie` and `getMoviesByText` calls.
+     */
+    public Map<String, Object> getCollapsedCallStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("getMovie", movieFlight.snapshot());
+        stats.put("getMoviesByText", textSearchFlight.snapshot());
+        return stats;
+    }
+
     /**
      * Counts all movies in the database.
      *
@@ -250,23 +438,35 @@ public class MoviesService {
         updateComment.setId(commentBody.get("comment_id"));
         updateComment.setDate(new Date());
         updateComment.setText(commentBody.get("updated_comment"));
-        if (!commentDao.updateComment(updateComment.getId(), updateComment.getText(), email)) {
-            // check if the email matches the current user
-            Comment currentComment = commentDao.getComment(updateComment.getId());
-            if (currentComment == null) {
-                results.put(
-                        "error", MessageFormat.format("comment {0} does not exist", updateComment.getId()));
-                return false;
-            }
-            if (!email.equals(currentComment.getEmail())) {
+        // read-your-writes: the movie comments are read in the same causally consistent session
+        try (ClientSession session = commentDao.startCausalSession()) {
+            if (!commentDao.updateComment(
+                    session, updateComment.getId(), updateComment.getText(), email)) {
+                // check if the email matches the current user
+                Comment currentComment = commentDao.getComment(session, updateComment.getId());
+                if (currentComment == null) {
+                    results.put(
+                            "error", MessageFormat.format("comment {0} does not exist", updateComment.getId()));
+                    return false;
+                }
+                if (!email.equals(currentComment.getEmail())) {
+                    results.put(
+                            "error", "Could not update comment. Not authorized to update comments of other users");
+                    return false;
+                }
+                // the comment was deleted, or changed owner, between the update and the read
                 results.put(
-                        "error", "Could not update comment. Not authorized to update comments of other users");
+                        "error",
+                        MessageFormat.format(
+                                "comment {0} changed while being updated, please try again", updateComment.getId()));
                 return false;
             }
-        }
+            responseVersions.movieChanged(updateComment.getMovieId());
 
-        Movie movie = MovieDocumentMapper.mapToMovie(movieDao.getMovie(updateComment.getMovieId()));
-        results.put("comments", movie.getComments());
+            Movie movie =
+                    MovieDocumentMapper.mapToMovie(movieDao.getMovie(session, updateComment.getMovieId()));
+            results.put("comments", movie.getComments());
+        }
         return true;
     }
 
@@ -283,7 +483,7 @@ public class MoviesService {
             String movieId, String email, String text, HashMap<String, Object> results) {
 
         Comment newComment = new Comment();
-        User user = userDao.getUser(email);
+        User user = userService.loadUser(email);
         if (user == null) {
             results.put("error", MessageFormat.format("not able to add comment " +
                     "for `{0}` email. Not a valid user email", email));
@@ -296,14 +496,82 @@ public class MoviesService {
         newComment.setText(text);
         newComment.setName(user.getName());
 
-        if (commentDao.addComment(newComment) == null) {
+        // read-your-writes: the movie comments are read in the same causally consistent session
+        try (ClientSession session = commentDao.startCausalSession()) {
+            try {
+                commentWriteCoalescer.addComment(session, newComment);
+            } catch (DaoOperationTimeout e) {
+                results.put(
+                        "error",
+                        MessageFormat.format(
+                                "comment to movie `{0}` is taking too long to be added, "
+                                        + "please check the movie comments before trying again",
+                                movieId));
+                return false;
+            } catch (IncorrectDaoOperation e) {
+                results.put(
+                        "error", MessageFormat.format("not able to add comment to movie `{0}` ", movieId));
+                return false;
+            }
+            responseVersions.movieChanged(movieId);
+
+            Movie movie = MovieDocumentMapper.mapToMovie(movieDao.getMovie(session, movieId));
+            results.put("comments", movie.getComments());
+        }
+        return true;
+    }
+
+    /**
+     * Adds a batch of comments, possibly on different movies, with a single write. Each comment is
+     * validated individually: invalid or rejected comments are reported under `errors` by their
+     * position in the batch, without preventing the insert of the others.
+     *
+     * @param email   - email of the user that submitted the comments.
+     * @param items   - list of maps with `movie_id` and `comment` keys.
+     * @param results - map with reference to be populated with error message or with the number of
+     *                inserted comments under `inserted_count` and the failures under `errors`.
+     * @return false if the request as a whole is rejected, true otherwise.
+     */
+    public boolean addMovieComments(
+            String email, List<Map<String, String>> items, Map<String, Object> results) {
+        if (items == null || items.isEmpty()) {
+            results.put("error", "no comments to add");
+            return false;
+        }
+        if (items.size() > bulkMaxSize) {
             results.put(
-                    "error", MessageFormat.format("not able to add comment to movie `{0}` ", movieId));
+                    "error",
+                    MessageFormat.format("at most {0} comments can be added at once", bulkMaxSize));
             return false;
         }
+        User user = userService.loadUser(email);
+        if (user == null) {
+            results.put("error", MessageFormat.format("not able to add comment " +
+                    "for `{0}` email. Not a valid user email", email));
+            return false;
+        }
+
+        Date now = new Date();
+        List<Comment> comments = new ArrayList<>(items.size());
+        for (Map<String, String> item : items) {
+            Comment comment = new Comment();
+            comment.setOid(new ObjectId());
+            String movieId = item == null ? null : item.get("movie_id");
+            // an invalid movie id is left unset and reported by the batch validation
+            if (movieId != null && ObjectId.isValid(movieId)) {
+                comment.setMovieId(movieId);
+            }
+            comment.setEmail(email);
+            comment.setName(user.getName());
+            comment.setDate(now);
+            comment.setText(item == null ? null : item.get("comment"));
+            comments.add(comment);
+        }
 
-        Movie movie = MovieDocumentMapper.mapToMovie(movieDao.getMovie(movieId));
-        results.put("comments", movie.getComments());
+        CommentBatchResult batchResult = commentDao.addComments(comments);
+        batchResult.getInserted().forEach(comment -> responseVersions.movieChanged(comment.getMovieId()));
+        results.put("inserted_count", batchResult.getInsertedCount());
+        results.put("errors", batchResult.getErrors());
         return true;
     }
 
@@ -319,15 +587,22 @@ public class MoviesService {
     public boolean deleteMovieComment(
             String movieId, String email, String commentId, Map<String, Object> results) {
 
-        if (!commentDao.deleteComment(commentId, email)) {
-            results.put(
-                    "error",
-                    MessageFormat.format("user `{0}` cannot delete comment `{1}`", email, commentId));
-            return false;
-        }
+        // read-your-writes: the movie comments are read in the same causally consistent session
+        try (ClientSession session = commentDao.startCausalSession()) {
+            Comment deleted = commentDao.findAndDeleteComment(session, commentId, email);
+            if (deleted == null) {
+                results.put(
+                        "error",
+                        MessageFormat.format("user `{0}` cannot delete comment `{1}`", email, commentId));
+                return false;
+            }
+            // the movie of the deleted comment, whatever movie the request named
+            String deletedMovieId = deleted.getMovieId() == null ? movieId : deleted.getMovieId();
+            responseVersions.movieChanged(deletedMovieId);
 
-        Movie movie = MovieDocumentMapper.mapToMovie(movieDao.getMovie(movieId));
-        results.put("comments", movie.getComments());
+            Movie movie = MovieDocumentMapper.mapToMovie(movieDao.getMovie(session, deletedMovieId));
+            results.put("comments", movie.getComments());
+        }
         return true;
     }
 
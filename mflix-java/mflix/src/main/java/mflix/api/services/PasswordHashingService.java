@@ -0,0 +1,184 @@
+package mflix.api.services;
+
+import mflix.api.metrics.LatencyHistogram;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt password encoder running every hash and verification on a dedicated, bounded thread
+ * pool. The pool caps the number of cores spent on password hashing, so that login bursts cannot
+ * starve the request threads, and its bounded queue rejects work beyond what can be processed in
+ * reasonable time instead of letting requests pile up.
+ *
+ * <p>The {@link PasswordEncoder} methods wait for the pool on the calling thread: they cap the
+ * hashing work, not the threads waiting for it. Request handlers use {@link #encodeAsync} and
+ * {@link #matchesAsync} instead, which release the request thread while the hash is computed.
+ *
+ * <p>Hashes produced with a cost factor other than the configured one can be upgraded at login,
+ * see {@link #needsRehash(String)}.
+ */
+public class PasswordHashingService implements PasswordEncoder {
+
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[aby]?\\$(\\d\\d)\\$");
+
+    private final BCryptPasswordEncoder encoder;
+    private final int strength;
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    private final LatencyHistogram hashLatency = new LatencyHistogram();
+    private final LatencyHistogram verifyLatency = new LatencyHistogram();
+
+    /**
+     * @param strength  - BCrypt cost factor, between 4 and 31.
+     * @param poolSize  - number of threads hashing passwords.
+     * @param queueSize - maximum number of hashes waiting for a thread.
+     */
+    public PasswordHashingService(int strength, int poolSize, int queueSize) {
+        this.encoder = new BCryptPasswordEncoder(strength);
+        this.strength = strength;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor =
+                new ThreadPoolExecutor(
+                        poolSize,
+                        poolSize,
+                        0,
+                        TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(queueSize),
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "password-hashing-" + threads.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return await(submit(() -> encoder.encode(rawPassword), hashLatency));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return await(submit(() -> encoder.matches(rawPassword, encodedPassword), verifyLatency));
+    }
+
+    /**
+     * Hashes a password without waiting for the result.
+     *
+     * @param rawPassword - password to hash.
+     * @return future completed with the hash, or exceptionally if the pool is saturated.
+     */
+    public CompletableFuture<String> encodeAsync(CharSequence rawPassword) {
+        return submitAsync(() -> encoder.encode(rawPassword), hashLatency);
+    }
+
+    /**
+     * Verifies a password without waiting for the result.
+     *
+     * @param rawPassword     - password to verify.
+     * @param encodedPassword - stored password hash.
+     * @return future completed with the verification result, or exceptionally if the pool is
+     * saturated.
+     */
+    public CompletableFuture<Boolean> matchesAsync(CharSequence rawPassword, String encodedPassword) {
+        return submitAsync(() -> encoder.matches(rawPassword, encodedPassword), verifyLatency);
+    }
+
+    private <T> CompletableFuture<T> submitAsync(Supplier<T> task, LatencyHistogram latency) {
+        try {
+            return submit(task, latency);
+        } catch (AuthenticationServiceException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * Checks whether a hash was produced with another cost factor than the configured one.
+     *
+     * @param encodedPassword - stored password hash.
+     * @return true if the password should be hashed again.
+     */
+    public boolean needsRehash(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task, LatencyHistogram latency) {
+        long submittedAt = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(
+                    () -> {
+                        long startedAt = System.nanoTime();
+                        queueLatency.record(startedAt - submittedAt, TimeUnit.NANOSECONDS);
+                        try {
+                            return task.get();
+                        } finally {
+                            latency.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                        }
+                    },
+                    executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new AuthenticationServiceException("Too many password verifications in progress", e);
+        }
+    }
+
+    /**
+     * Summarizes the pool activity.
+     *
+     * @return Map with the pool and queue sizes, the number of rejected tasks, and the latency
+     * histograms of the time spent queued, hashing and verifying.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("strength", strength);
+        snapshot.put("pool_size", executor.getMaximumPoolSize());
+        snapshot.put("active", executor.getActiveCount());
+        snapshot.put("queued", executor.getQueue().size());
+        snapshot.put("queue_capacity", executor.getQueue().size() + executor.getQueue().remainingCapacity());
+        snapshot.put("completed", executor.getCompletedTaskCount());
+        snapshot.put("rejected", rejected.sum());
+        snapshot.put("queue_wait", queueLatency.snapshot());
+        snapshot.put("hash", hashLatency.snapshot());
+        snapshot.put("verify", verifyLatency.snapshot());
+        return snapshot;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
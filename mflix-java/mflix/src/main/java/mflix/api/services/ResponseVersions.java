@@ -0,0 +1,189 @@
+package mflix.api.services;
+
+import mflix.api.daos.CommentCountBuffer;
+import mflix.api.daos.MovieFilterIndex;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In memory versions of the movie detail and search responses, used to answer conditional
+ * requests without reading MongoDB.
+ *
+ * <p>A movie version counts the changes of the movie seen since it was first served: comments
+ * written through this process, and the flushes of their `num_comments` increments. Search
+ * versions are the search cache epoch and the version of its comment counts, which the same
+ * flushes move at most once per search cache TTL. ETags also carry the id of this process start and the search cache epoch, so that a
+ * restart, or an epoch bump for movies changed elsewhere, invalidates every ETag handed out.
+ *
+ * <p>Changes of the movies themselves, made by any process, bump the epoch as the movie filter
+ * index applies them from its change stream. Comments written by other instances of the service,
+ * and their `num_comments` increments, are not seen: their movie and search ETags are only
+ * invalidated by an epoch bump, such as `DELETE /api/v1/admin/search-cache`, or a restart. Nor
+ * are movie changes seen while the filter index is disabled.
+ *
+ * <p>Versions must be read before the response is built: a change racing with the request then
+ * makes the ETag older than the body, never newer, which only costs a full response later.
+ */
+@Component
+public class ResponseVersions {
+
+    private final String bootId = new ObjectId().toHexString();
+    private final SearchResultCache searchResultCache;
+    // only movies that exist are registered, which bounds the map by the number of movies
+    private final ConcurrentMap<String, Version> movieVersions = new ConcurrentHashMap<>();
+    // tells apart the versions of a movie registered again after moviesChanged()
+    private final AtomicLong generation = new AtomicLong();
+
+    public ResponseVersions(SearchResultCache searchResultCache) {
+        this.searchResultCache = searchResultCache;
+    }
+
+    @Autowired
+    public ResponseVersions(
+            SearchResultCache searchResultCache,
+            CommentCountBuffer commentCountBuffer,
+            MovieFilterIndex movieFilterIndex) {
+        this(searchResultCache);
+        commentCountBuffer.addFlushListener(this::commentCountsChanged);
+        movieFilterIndex.addChangeListener(movieId -> searchResultCache.bumpEpoch());
+    }
+
+    /**
+     * Returns the known version of a movie.
+     *
+     * @param movieId - movie identifier.
+     * @return the movie version, or null if the movie has not been served yet.
+     */
+    public Version getMovieVersion(String movieId) {
+        return movieVersions.get(movieId);
+    }
+
+    /**
+     * Returns the version of a movie, starting to track it if needed.
+     *
+     * @param movieId - identifier of an existing movie.
+     * @return the movie version.
+     */
+    public Version registerMovie(String movieId) {
+        return movieVersions.computeIfAbsent(
+                movieId, k -> new Version(generation.get(), 0, System.currentTimeMillis()));
+    }
+
+    /**
+     * Stops tracking a movie, for ids registered before finding out the movie does not exist.
+     *
+     * @param movieId - movie identifier.
+     */
+    public void unregisterMovie(String movieId) {
+        movieVersions.remove(movieId);
+    }
+
+    /**
+     * Records a change of the comments of a movie.
+     *
+     * @param movieId - movie identifier.
+     */
+    public void movieChanged(String movieId) {
+        if (movieId != null) {
+            movieVersions.computeIfPresent(
+                    movieId,
+                    (k, version) ->
+                            new Version(version.generation, version.counter + 1, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Records written comment counts, which are part of the movie and search responses.
+     *
+     * @param movieIds - identifiers of the movies whose `num_comments` was written.
+     */
+    public void commentCountsChanged(Collection<ObjectId> movieIds) {
+        for (ObjectId movieId : movieIds) {
+            movieChanged(movieId.toHexString());
+        }
+        searchResultCache.countsChanged();
+    }
+
+    /** Records a change of any number of movies, invalidating all the movie versions. */
+    public void moviesChanged() {
+        generation.incrementAndGet();
+        movieVersions.clear();
+    }
+
+    /**
+     * Builds the ETag of a movie detail response.
+     *
+     * @param version - movie version.
+     * @return weak ETag value.
+     */
+    public String movieETag(Version version) {
+        return "W/\""
+                + bootId
+                + "-"
+                + searchResultCache.getEpoch()
+                + "-"
+                + version.generation
+                + "."
+                + version.counter
+                + "\"";
+    }
+
+    /**
+     * Last modification time of a movie detail response.
+     *
+     * @param version - movie version.
+     * @return modification time in milliseconds.
+     */
+    public long movieLastModified(Version version) {
+        return Math.max(version.changedAt, searchResultCache.getEpochChangedAt());
+    }
+
+    /**
+     * Builds the ETag of a search response.
+     *
+     * @param query - normalized search query, including the page.
+     * @return weak ETag value.
+     */
+    public String searchETag(String query) {
+        return "W/\""
+                + bootId
+                + "-"
+                + searchResultCache.getEpoch()
+                + "."
+                + searchResultCache.getCountsVersion()
+                + "-"
+                + Integer.toHexString(query.hashCode())
+                + "\"";
+    }
+
+    /**
+     * Last modification time of the search responses.
+     *
+     * @return modification time in milliseconds.
+     */
+    public long searchLastModified() {
+        // publishes a pending counts version first, as the ETag built with it
+        searchResultCache.getCountsVersion();
+        return searchResultCache.getChangedAt();
+    }
+
+    /** Version of a movie: number of changes since it was registered and time of the last one. */
+    public static class Version {
+
+        private final long generation;
+        private final long counter;
+        private final long changedAt;
+
+        Version(long generation, long counter, long changedAt) {
+            this.generation = generation;
+            this.counter = counter;
+            this.changedAt = changedAt;
+        }
+    }
+}
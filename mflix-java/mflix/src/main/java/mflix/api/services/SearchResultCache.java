@@ -0,0 +1,208 @@
+package mflix.api.services;
+
+import mflix.api.cache.BoundedTtlCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Caches the result pages of the movie searches. Pages are keyed by search type, normalized
+ * terms, page number and page size, so that the same search written with its terms in another
+ * order, duplicated or padded with spaces shares the cached pages.
+ *
+ * <p>Every key also holds the current epoch. Bumping the epoch when movies change makes all the
+ * cached pages unreachable at once, including pages being loaded while the epoch moved.
+ *
+ * <p>Comment counts, which pages show but which do not change what matches a search, are not part
+ * of the keys: pages keep the counts they were loaded with until they expire, so the counts shown
+ * lag by up to the TTL. The counts version given to the response ETags follows the same bound: it
+ * moves at most once per TTL, so that comments, written about every second under load, do not
+ * change every search ETag on each flush.
+ */
+@Component
+public class SearchResultCache {
+
+    public static final String TEXT = "text";
+    public static final String CAST = "cast";
+    public static final String GENRE = "genre";
+
+    private final BoundedTtlCache<List<Object>, Map<String, ?>> pages;
+    private final AtomicLong epoch = new AtomicLong();
+    private volatile long epochChangedAt = System.currentTimeMillis();
+    private final long ttlMillis;
+    private final AtomicLong countsVersion = new AtomicLong();
+    private final AtomicBoolean countsPending = new AtomicBoolean();
+    private volatile long countsChangedAt;
+    private final ConcurrentMap<String, LongAdder> hits = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> misses = new ConcurrentHashMap<>();
+
+    public SearchResultCache(
+            @Value("${mflix.search.cache_size:1000}") int cacheSize,
+            @Value("${mflix.search.cache_ttl_seconds:60}") long ttlSeconds) {
+        this.pages = new BoundedTtlCache<>(cacheSize, ttlSeconds, TimeUnit.SECONDS);
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+    }
+
+    /**
+     * Returns a cached result page, running the search on a miss.
+     *
+     * @param type   - search type, one of TEXT, CAST or GENRE.
+     * @param terms  - search terms.
+     * @param page   - page number.
+     * @param size   - page size.
+     * @param search - runs the search.
+     * @return the result page, not to be modified.
+     */
+    public Map<String, ?> get(
+            String type, List<String> terms, int page, int size, Supplier<Map<String, ?>> search) {
+        return get(type, terms, page, size, 0, search);
+    }
+
+    /**
+     * Returns a cached result page, running the search on a miss.
+     *
+     * @param type    - search type, one of TEXT, CAST or GENRE.
+     * @param terms   - search terms.
+     * @param page    - page number.
+     * @param size    - page size.
+     * @param version - version of the data the search reads besides the movies, such as the top
+     *                movies feed. Pages of other versions are not returned.
+     * @param search  - runs the search.
+     * @return the result page, not to be modified.
+     */
+    public Map<String, ?> get(
+            String type,
+            List<String> terms,
+            int page,
+            int size,
+            long version,
+            Supplier<Map<String, ?>> search) {
+        List<Object> key =
+                Arrays.asList(type, epoch.get(), version, normalize(type, terms), page, size);
+        Map<String, ?> result = pages.get(key);
+        if (result != null) {
+            counter(hits, type).increment();
+            return result;
+        }
+        counter(misses, type).increment();
+        result = Collections.unmodifiableMap(search.get());
+        pages.put(key, result);
+        return result;
+    }
+
+    /**
+     * Normalizes search terms: trims them, drops the empty ones and duplicates, and sorts them. Text
+     * searches are case insensitive, so their terms are lower cased too.
+     *
+     * @param type  - search type.
+     * @param terms - search terms.
+     * @return the normalized terms.
+     */
+    static List<String> normalize(String type, List<String> terms) {
+        TreeSet<String> normalized = new TreeSet<>();
+        for (String term : terms) {
+            String trimmed = term == null ? "" : term.trim();
+            if (!trimmed.isEmpty()) {
+                normalized.add(TEXT.equals(type) ? trimmed.toLowerCase(Locale.ROOT) : trimmed);
+            }
+        }
+        return new ArrayList<>(normalized);
+    }
+
+    /** Invalidates every cached page, to be called whenever movies change. */
+    public void bumpEpoch() {
+        epochChangedAt = System.currentTimeMillis();
+        epoch.incrementAndGet();
+        // the pages of older epochs are unreachable: free them instead of waiting for their expiry
+        pages.invalidateAll();
+    }
+
+    /**
+     * Records a change of the comment counts of movies. Cached pages are kept: the next counts
+     * version is published once the pages older than the change have expired.
+     */
+    public void countsChanged() {
+        countsPending.set(true);
+    }
+
+    public long getEpoch() {
+        return epoch.get();
+    }
+
+    /**
+     * Version of the comment counts, bumped at most once per TTL while counts change.
+     *
+     * @return counts version.
+     */
+    public long getCountsVersion() {
+        long now = System.currentTimeMillis();
+        if (now - countsChangedAt >= ttlMillis && countsPending.compareAndSet(true, false)) {
+            countsChangedAt = now;
+            countsVersion.incrementAndGet();
+        }
+        return countsVersion.get();
+    }
+
+    /**
+     * Time of the last change of the cached pages: epoch bump or comment counts change.
+     *
+     * @return change time in milliseconds.
+     */
+    public long getChangedAt() {
+        return Math.max(epochChangedAt, countsChangedAt);
+    }
+
+    /**
+     * Time of the last epoch change, or of the start of the cache.
+     *
+     * @return epoch change time in milliseconds.
+     */
+    public long getEpochChangedAt() {
+        return epochChangedAt;
+    }
+
+    private static LongAdder counter(ConcurrentMap<String, LongAdder> counters, String type) {
+        return counters.computeIfAbsent(type, k -> new LongAdder());
+    }
+
+    /**
+     * Summarizes the cache activity.
+     *
+     * @return Map with the current epoch, the cache statistics, and the hits, misses and hit ratio
+     * of every search type.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> types = new LinkedHashMap<>();
+        for (String type : Arrays.asList(TEXT, CAST, GENRE)) {
+            long hitCount = counter(hits, type).sum();
+            long missCount = counter(misses, type).sum();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("hits", hitCount);
+            stats.put("misses", missCount);
+            stats.put(
+                    "hit_ratio", hitCount + missCount == 0 ? 0 : (double) hitCount / (hitCount + missCount));
+            types.put(type, stats);
+        }
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("epoch", epoch.get());
+        snapshot.put("counts_version", countsVersion.get());
+        snapshot.put("cache", pages.snapshot());
+        snapshot.put("types", types);
+        return snapshot;
+    }
+}
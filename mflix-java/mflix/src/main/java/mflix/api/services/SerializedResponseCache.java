@@ -0,0 +1,271 @@
+package mflix.api.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Caches hot responses as serialized JSON bytes, so that serving them again skips both MongoDB
+ * and Jackson. Bodies of at least `mflix.responses.gzip_min_bytes` bytes are kept gzip compressed
+ * and written as is to clients accepting gzip.
+ *
+ * <p>Every entry is stored with a tag, the version of the response it was built for. Looking an
+ * entry up with another tag misses and drops it, so responses are invalidated by the version
+ * changes of their movies without being tracked here. The cache is bounded by the total size of
+ * the stored bytes, evicting the least recently used entries first.
+ */
+@Component
+public class SerializedResponseCache {
+
+    private final ObjectMapper objectMapper;
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final int gzipMinBytes;
+    private final LongSupplier nanoTime;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // total size of the stored bytes, guarded by `entries`
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param objectMapper - mapper of the message converters, to serialize bodies the same way.
+     * @param maxBytes     - maximum size of the stored bytes, 0 disables the cache.
+     * @param ttlSeconds   - time to live of the entries.
+     * @param gzipMinBytes - minimum size of the bodies to compress, negative disables compression.
+     */
+    @Autowired
+    public SerializedResponseCache(
+            ObjectMapper objectMapper,
+            @Value("${mflix.responses.cache_bytes:33554432}") long maxBytes,
+            @Value("${mflix.responses.cache_ttl_seconds:60}") long ttlSeconds,
+            @Value("${mflix.responses.gzip_min_bytes:1024}") int gzipMinBytes) {
+        this(objectMapper, maxBytes, ttlSeconds, gzipMinBytes, System::nanoTime);
+    }
+
+    SerializedResponseCache(
+            ObjectMapper objectMapper,
+            long maxBytes,
+            long ttlSeconds,
+            int gzipMinBytes,
+            LongSupplier nanoTime) {
+        this.objectMapper = objectMapper;
+        this.maxBytes = maxBytes;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.gzipMinBytes = gzipMinBytes;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Returns a cached response.
+     *
+     * @param key - response key.
+     * @param tag - current version of the response.
+     * @return the serialized response, or null if it is not cached, has expired or was built for
+     * another version.
+     */
+    public SerializedResponse get(String key, String tag) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.tag.equals(tag) && entry.expiresAt - nanoTime.getAsLong() > 0) {
+                    hits.increment();
+                    return entry.response;
+                }
+                stale.increment();
+                remove(key);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Serializes a response body and caches it.
+     *
+     * @param key  - response key.
+     * @param tag  - version of the response the body was built for, read before building it.
+     * @param body - response body.
+     * @return the serialized response.
+     */
+    public SerializedResponse put(String key, String tag, Object body) {
+        SerializedResponse response = serialize(body);
+        if (response.size() > maxBytes) {
+            return response;
+        }
+        synchronized (entries) {
+            remove(key);
+            entries.put(key, new Entry(tag, response, nanoTime.getAsLong() + ttlNanos));
+            bytes += response.size();
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (bytes > maxBytes) {
+                bytes -= eldest.next().response.size();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+        return response;
+    }
+
+    // guarded by `entries`
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.response.size();
+        }
+    }
+
+    /** Drops every cached response. */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    SerializedResponse serialize(Object body) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (gzipMinBytes < 0 || json.length < gzipMinBytes) {
+            return new SerializedResponse(json, false);
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new SerializedResponse(compressed.toByteArray(), true);
+    }
+
+    /**
+     * Summarizes the cache activity.
+     *
+     * @return Map with the number of entries, the stored and maximum bytes, the hits, the misses,
+     * the entries dropped for being built for another version and the evictions.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        synchronized (entries) {
+            snapshot.put("entries", entries.size());
+            snapshot.put("bytes", bytes);
+        }
+        snapshot.put("max_bytes", maxBytes);
+        snapshot.put("hits", hits.sum());
+        snapshot.put("misses", misses.sum());
+        snapshot.put("stale", stale.sum());
+        snapshot.put("evictions", evictions.sum());
+        return snapshot;
+    }
+
+    private static class Entry {
+
+        private final String tag;
+        private final SerializedResponse response;
+        private final long expiresAt;
+
+        Entry(String tag, SerializedResponse response, long expiresAt) {
+            this.tag = tag;
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /** JSON body serialized once, possibly gzip compressed. */
+    public static class SerializedResponse {
+
+        private final byte[] bytes;
+        private final boolean gzipped;
+
+        SerializedResponse(byte[] bytes, boolean gzipped) {
+            this.bytes = bytes;
+            this.gzipped = gzipped;
+        }
+
+        public int size() {
+            return bytes.length;
+        }
+
+        public boolean isGzipped() {
+            return gzipped;
+        }
+
+        /**
+         * Returns the JSON body, uncompressed.
+         *
+         * @return JSON bytes.
+         */
+        public byte[] getJson() {
+            if (!gzipped) {
+                return bytes;
+            }
+            try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                ByteArrayOutputStream json = new ByteArrayOutputStream(bytes.length * 4);
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = gzip.read(buffer)) > 0) {
+                    json.write(buffer, 0, read);
+                }
+                return json.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Completes a response with the serialized body, compressed if the current request accepts
+         * gzip.
+         *
+         * @param builder - response builder, with its status and headers set.
+         * @return the response.
+         */
+        public ResponseEntity<byte[]> toResponse(ResponseEntity.BodyBuilder builder) {
+            builder.contentType(MediaType.APPLICATION_JSON_UTF8)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (gzipped && acceptsGzip()) {
+                return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(bytes);
+            }
+            return builder.body(getJson());
+        }
+
+        private static boolean acceptsGzip() {
+            RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+            if (!(attributes instanceof ServletRequestAttributes)) {
+                return false;
+            }
+            String acceptEncoding =
+                    ((ServletRequestAttributes) attributes)
+                            .getRequest()
+                            .getHeader(HttpHeaders.ACCEPT_ENCODING);
+            return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package mflix.api.services;
+
+import mflix.api.cache.BoundedTtlCache;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Keeps the ranked ids of recent text searches under short lived search tokens. The first page of
+ * a search scores and sorts all its matches once; the following pages only fetch their slice of
+ * the ranked ids, instead of scoring, sorting and skipping all the matches again.
+ *
+ * <p>Rankings are bounded to `mflix.search.snapshot_max_ids` ids. Pages beyond that bound are not
+ * served from the snapshot.
+ */
+@Component
+public class TextSearchSnapshots {
+
+    private final BoundedTtlCache<String, Snapshot> snapshots;
+    private final int maxIds;
+
+    public TextSearchSnapshots(
+            @Value("${mflix.search.snapshot_cache_size:1000}") int cacheSize,
+            @Value("${mflix.search.snapshot_ttl_seconds:300}") long ttlSeconds,
+            @Value("${mflix.search.snapshot_max_ids:1000}") int maxIds) {
+        this.snapshots = new BoundedTtlCache<>(cacheSize, ttlSeconds, TimeUnit.SECONDS);
+        this.maxIds = maxIds;
+    }
+
+    /**
+     * Returns the snapshot of a search token, or ranks the search again if the token is missing,
+     * has expired or belongs to another search.
+     *
+     * @param token    - search token returned with a previous page, or null.
+     * @param keywords - text search keywords.
+     * @param ranker   - returns the ranked ids matching the keywords, at most the given number.
+     * @return the search snapshot.
+     */
+    public Snapshot get(String token, String keywords, Function<Integer, List<ObjectId>> ranker) {
+        Snapshot snapshot = token == null ? null : snapshots.get(token);
+        if (snapshot != null && snapshot.keywords.equals(keywords)) {
+            return snapshot;
+        }
+        snapshot =
+                new Snapshot(
+                        new ObjectId().toHexString(),
+                        keywords,
+                        Collections.unmodifiableList(ranker.apply(maxIds)),
+                        maxIds);
+        snapshots.put(snapshot.token, snapshot);
+        return snapshot;
+    }
+
+    public Map<String, Object> snapshot() {
+        return snapshots.snapshot();
+    }
+
+    /** Ranked ids of a text search. */
+    public static class Snapshot {
+
+        private final String token;
+        private final String keywords;
+        private final List<ObjectId> ids;
+        private final boolean complete;
+
+        Snapshot(String token, String keywords, List<ObjectId> ids, int maxIds) {
+            this.token = token;
+            this.keywords = keywords;
+            this.ids = ids;
+            this.complete = ids.size() < maxIds;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        /**
+         * Checks whether the snapshot holds a page.
+         *
+         * @param skip  - number of results before the page.
+         * @param limit - page size.
+         * @return true if the page ids are all in the snapshot.
+         */
+        public boolean covers(int skip, int limit) {
+            return complete || skip + limit <= ids.size();
+        }
+
+        /**
+         * Returns the ids of a page, in rank order.
+         *
+         * @param skip  - number of results before the page.
+         * @param limit - page size.
+         * @return ids of the page, empty past the last result.
+         */
+        public List<ObjectId> page(int skip, int limit) {
+            int from = Math.min(skip, ids.size());
+            return ids.subList(from, Math.min(from + limit, ids.size()));
+        }
+
+        /**
+         * Number of matches, known when the ranking holds all of them.
+         *
+         * @return number of matches, or -1 if the ranking was truncated.
+         */
+        public long getCount() {
+            return complete ? ids.size() : -1;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package mflix.api.services;
+
+import mflix.api.daos.MovieDao;
+import mflix.api.daos.MovieDocumentMapper;
+import mflix.api.models.Movie;
+import mflix.api.models.MovieSearchQuery;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Precomputed first pages of the landing page and of the single genre searches: the top
+ * `mflix.feed.depth` movies by `tomatoes.viewer.numReviews`, overall and for each of the most
+ * common genres, with their counts.
+ *
+ * <p>The feed is rebuilt every `mflix.feed.refresh_ms` and swapped in as a whole, so that readers
+ * always see a consistent feed without locking. Pages within the feed depth are served without
+ * querying MongoDB, and lag the movies by up to one refresh. Deeper pages, and all pages until the
+ * first refresh succeeds, are left to the regular queries.
+ */
+@Service
+public class TopMoviesFeed {
+
+    private static final String SORT_KEY = "tomatoes.viewer.numReviews";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final MovieDao movieDao;
+    private final int depth;
+    private final int maxGenres;
+    // null until the first refresh
+    private volatile Feed feed;
+
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile long refreshMillis;
+
+    @Autowired
+    public TopMoviesFeed(
+            MovieDao movieDao,
+            @Value("${mflix.feed.depth:100}") int depth,
+            @Value("${mflix.feed.max_genres:50}") int maxGenres) {
+        this.movieDao = movieDao;
+        this.depth = depth;
+        this.maxGenres = maxGenres;
+    }
+
+    /** Immutable top movies, overall and per genre. */
+    static class Feed {
+
+        private final List<Movie> movies;
+        private final long count;
+        private final Map<String, List<Movie>> genreMovies;
+        private final Map<String, Long> genreCounts;
+        private final long refreshedAt;
+
+        /**
+         * @param movies      - top movies, in order.
+         * @param count       - number of movies.
+         * @param genreMovies - top movies of every genre, in order.
+         * @param genreCounts - number of movies of every genre.
+         * @param refreshedAt - time the feed was built at, in ms.
+         */
+        Feed(
+                List<Movie> movies,
+                long count,
+                Map<String, List<Movie>> genreMovies,
+                Map<String, Long> genreCounts,
+                long refreshedAt) {
+            this.movies = Collections.unmodifiableList(new ArrayList<>(movies));
+            this.count = count;
+            Map<String, List<Movie>> copy = new HashMap<>();
+            genreMovies.forEach(
+                    (genre, top) -> copy.put(genre, Collections.unmodifiableList(new ArrayList<>(top))));
+            this.genreMovies = copy;
+            this.genreCounts = new HashMap<>(genreCounts);
+            this.refreshedAt = refreshedAt;
+        }
+    }
+
+    /** Rebuilds the feed, keeping the current one if that fails. */
+    @Scheduled(fixedDelayString = "${mflix.feed.refresh_ms:60000}")
+    public synchronized void refresh() {
+        long start = System.nanoTime();
+        try {
+            List<Movie> movies = toMovies(movieDao.getMovies(depth, 0));
+            long count = movieDao.getMoviesCount();
+            Map<String, List<Movie>> genreMovies = new HashMap<>();
+            Map<String, Long> genreCounts = new HashMap<>();
+            for (Document genre : movieDao.getValueFacet(new MovieSearchQuery(), "genres", maxGenres)) {
+                if (!(genre.get("_id") instanceof String)) {
+                    continue;
+                }
+                String name = genre.getString("_id");
+                genreMovies.put(
+                        name, toMovies(movieDao.getMoviesByGenre(SORT_KEY, depth, 0, name)));
+                genreCounts.put(name, ((Number) genre.get("count")).longValue());
+            }
+            swap(new Feed(movies, count, genreMovies, genreCounts, System.currentTimeMillis()));
+            refreshes.increment();
+        } catch (RuntimeException e) {
+            failures.increment();
+            log.warn("unable to refresh the top movies feed: {}", e.getMessage());
+        } finally {
+            refreshMillis = (System.nanoTime() - start) / 1_000_000;
+        }
+    }
+
+    private static List<Movie> toMovies(List<Document> documents) {
+        return documents.stream().map(MovieDocumentMapper::mapToMovie).collect(Collectors.toList());
+    }
+
+    void swap(Feed feed) {
+        this.feed = feed;
+    }
+
+    /**
+     * Returns a page of the top movies from the feed.
+     *
+     * @param genre          - genre of the movies, null for all the movies.
+     * @param resultsPerPage - number of results per page.
+     * @param page           - page number.
+     * @return Map with the movies under `movies_list`, and their total count under `movies_count`
+     * for the first page, or null when the feed does not hold the page.
+     */
+    public Map<String, ?> getPage(String genre, int resultsPerPage, int page) {
+        Feed current = feed;
+        int end = (page + 1) * resultsPerPage;
+        if (current == null || resultsPerPage <= 0 || page < 0 || end > depth) {
+            misses.increment();
+            return null;
+        }
+        List<Movie> movies = genre == null ? current.movies : current.genreMovies.get(genre);
+        if (movies == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        Map<String, Object> result = new HashMap<>();
+        int start = Math.min(page * resultsPerPage, movies.size());
+        result.put("movies_list", new ArrayList<>(movies.subList(start, Math.min(end, movies.size()))));
+        if (page == 0) {
+            result.put("movies_count", genre == null ? current.count : current.genreCounts.get(genre));
+        }
+        return result;
+    }
+
+    /** @return time the served feed was built at in ms, 0 before the first refresh. */
+    public long getRefreshedAt() {
+        Feed current = feed;
+        return current == null ? 0 : current.refreshedAt;
+    }
+
+    /**
+     * Summarizes the feed.
+     *
+     * @return Map with the feed depth and genres, its age and the refresh and serving statistics.
+     */
+    public Map<String, Object> snapshot() {
+        Feed current = feed;
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("depth", depth);
+        snapshot.put("ready", current != null);
+        if (current != null) {
+            snapshot.put("movies", current.movies.size());
+            snapshot.put("genres", current.genreMovies.size());
+            snapshot.put("refreshed_at", current.refreshedAt);
+            snapshot.put("age_ms", System.currentTimeMillis() - current.refreshedAt);
+        }
+        snapshot.put("refreshes", refreshes.sum());
+        snapshot.put("failures", failures.sum());
+        snapshot.put("last_refresh_ms", refreshMillis);
+        snapshot.put("hits", hits.sum());
+        snapshot.put("misses", misses.sum());
+        return snapshot;
+    }
+}
@@ -0,0 +1,17 @@
+package mflix.api.services;
+
+/**
+ * Runtime exception thrown when an user is deleted while a deletion of the same user is still
+ * running.
+ */
+public class UserDeletionInProgress extends IllegalStateException {
+
+    /**
+     * Creates a exception for an user already being deleted.
+     *
+     * @param email - email of the user being deleted.
+     */
+    public UserDeletionInProgress(final String email) {
+        super("user " + email + " is already being deleted");
+    }
+}
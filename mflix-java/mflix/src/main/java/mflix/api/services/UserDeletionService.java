@@ -0,0 +1,127 @@
+package mflix.api.services;
+
+import mflix.api.daos.CommentDao;
+import mflix.api.daos.UserDao;
+import mflix.api.models.UserDeletionProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Deletes an user together with its sessions and comments.
+ *
+ * <p>Comments are deleted, or anonymized, in batches first, so that users with very large comment
+ * histories never hold a single long running write. The user document and its sessions are then
+ * removed together, within a multi-document transaction where the deployment supports them.
+ * Comments written by a still logged in user while its history was processed are caught by a
+ * last pass once the user is gone.
+ */
+@Service
+public class UserDeletionService {
+
+    /** Receives the progress of a deletion after every batch of comments. */
+    public interface ProgressListener {
+
+        void onProgress(UserDeletionProgress progress);
+    }
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final ConcurrentMap<String, UserDeletionProgress> inProgress = new ConcurrentHashMap<>();
+
+    @Autowired
+    private UserDao userDao;
+
+    @Autowired
+    private CommentDao commentDao;
+
+    @Autowired
+    private ResponseVersions responseVersions;
+
+    @Value("${mflix.users.delete_batch_size:1000}")
+    private int batchSize = 1000;
+
+    @Value("${mflix.users.anonymize_comments:true}")
+    private boolean anonymizeComments = true;
+
+    /**
+     * Deletes an user, its sessions and its comments, anonymizing the comments instead if
+     * configured to.
+     *
+     * @param email - email that identifies the user.
+     * @return final progress of the deletion.
+     */
+    public UserDeletionProgress deleteUser(String email) {
+        return deleteUser(email, anonymizeComments, null);
+    }
+
+    /**
+     * Deletes an user, its sessions and its comments.
+     *
+     * @param email     - email that identifies the user.
+     * @param anonymize - true to keep the comments without their author, false to delete them.
+     * @param listener  - notified after every batch of comments, can be null.
+     * @return final progress of the deletion.
+     * @throws UserDeletionInProgress if the user is already being deleted.
+     */
+    public UserDeletionProgress deleteUser(String email, boolean anonymize, ProgressListener listener) {
+        UserDeletionProgress progress =
+                new UserDeletionProgress(email, anonymize, commentDao.countUserComments(email));
+        if (inProgress.putIfAbsent(email, progress) != null) {
+            throw new UserDeletionInProgress(email);
+        }
+        try {
+            removeComments(progress, listener);
+            progress.setUserDeleted(userDao.deleteUser(email));
+            removeComments(progress, listener);
+            if (progress.getProcessedComments() > 0) {
+                // the comments of any number of movies changed
+                responseVersions.moviesChanged();
+            }
+            progress.setDone(true);
+            log.info(
+                    "Deleted user `{}` and processed {} comments",
+                    email,
+                    progress.getProcessedComments());
+            return progress;
+        } finally {
+            inProgress.remove(email);
+        }
+    }
+
+    private void removeComments(UserDeletionProgress progress, ProgressListener listener) {
+        long processed;
+        do {
+            processed =
+                    commentDao.removeUserCommentBatch(
+                            progress.getEmail(), batchSize, progress.isAnonymizeComments());
+            if (processed > 0) {
+                progress.addProcessedComments(processed);
+                log.debug(
+                        "Processed {}/{} comments of user `{}`",
+                        progress.getProcessedComments(),
+                        progress.getTotalComments(),
+                        progress.getEmail());
+                if (listener != null) {
+                    listener.onProgress(progress);
+                }
+            }
+        } while (processed > 0);
+    }
+
+    /**
+     * Lists the deletions currently running.
+     *
+     * @return progress of every running deletion.
+     */
+    public List<UserDeletionProgress> getDeletionsInProgress() {
+        return new ArrayList<>(inProgress.values());
+    }
+}
@@ -1,29 +1,45 @@
 package mflix.api.services;
 
+import mflix.api.cache.BoundedTtlCache;
 import mflix.api.daos.IncorrectDaoOperation;
 import mflix.api.daos.UserDao;
 import mflix.api.models.User;
 import mflix.api.models.UserPrincipal;
 import mflix.api.models.UserRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AccountStatusUserDetailsChecker;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @Configuration
 public class UserService implements UserDetailsService {
 
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordEncoder;
 
     @Autowired
     private AuthenticationManager authenticationManager;
@@ -34,10 +50,62 @@ public class UserService implements UserDetailsService {
     @Autowired
     private UserDao userDao;
 
+    @Autowired
+    private UserDeletionService userDeletionService;
+
+    // users by email, hashedpw included: only copies leave the service
+    private BoundedTtlCache<String, User> userCache = new BoundedTtlCache<>(0, 0, TimeUnit.SECONDS);
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final AccountStatusUserDetailsChecker accountChecker = new AccountStatusUserDetailsChecker();
+
+    // stores users and sessions once their password is hashed, keeping the hashing pool for BCrypt
+    private ThreadPoolExecutor sessionExecutor;
+
+    // verified against when the user does not exist, so that unknown emails take as long to reject
+    private String userNotFoundHash;
+
     public UserService() {
         super();
     }
 
+    @Autowired
+    public void setSessionExecutor(@Value("${mflix.users.session_pool_size:16}") int poolSize) {
+        AtomicInteger threads = new AtomicInteger();
+        // a full queue runs the writes on the hashing thread rather than failing the login
+        this.sessionExecutor =
+                new ThreadPoolExecutor(
+                        poolSize,
+                        poolSize,
+                        0,
+                        TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(poolSize * 16),
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "user-sessions-" + threads.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        },
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PostConstruct
+    public void hashUserNotFoundPassword() {
+        userNotFoundHash = passwordEncoder.encode("userNotFoundPassword");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sessionExecutor.shutdown();
+    }
+
+    @Autowired
+    public void setUserCache(
+            @Value("${mflix.users.cache_size:10000}") int cacheSize,
+            @Value("${mflix.users.cache_ttl_seconds:300}") long ttlSeconds) {
+        this.userCache = new BoundedTtlCache<>(cacheSize, ttlSeconds, TimeUnit.SECONDS);
+    }
+
     /**
      * Creates an user from a given UserRegistry object. Encodes the password and saves the user in
      * the database.
@@ -65,16 +133,44 @@ public class UserService implements UserDetailsService {
         return createUser(user, errors);
     }
 
+    /**
+     * Creates an user like {@link #createUser(UserRegistry, Map)}, without holding the calling
+     * thread while the password is hashed. The user is then stored on a session thread.
+     *
+     * @param register - user register object
+     * @param admin    - true to create an admin user.
+     * @param errors   - map contain error information if it occurs
+     * @return future completed with null in case of failure, the new user object in case of
+     * success, or exceptionally if the password hashing pool is saturated.
+     */
+    public CompletableFuture<User> createUserAsync(
+            UserRegistry register, boolean admin, Map<String, String> errors) {
+        return passwordEncoder
+                .encodeAsync(register.getPassword())
+                .thenApplyAsync(
+                        hash -> {
+                            User user = getUserFromRegistry(register, hash);
+                            user.setAdmin(admin);
+                            return createUser(user, errors);
+                        },
+                        sessionExecutor);
+    }
+
     private User getUserFromRegistry(UserRegistry register) {
-        User user = new User();
         // encode password
-        user.setHashedpw(passwordEncoder.encode(register.getPassword()));
+        return getUserFromRegistry(register, passwordEncoder.encode(register.getPassword()));
+    }
+
+    private User getUserFromRegistry(UserRegistry register, String hashedPassword) {
+        User user = new User();
+        user.setHashedpw(hashedPassword);
         user.setEmail(register.getEmail());
         user.setName(register.getName());
         return user;
     }
 
     private User createUser(User user, Map<String, String> errors) {
+        invalidateUser(user.getEmail());
         try {
             return userDao.addUser(user) ? user : null;
         } catch (IncorrectDaoOperation ex) {
@@ -83,8 +179,48 @@ public class UserService implements UserDetailsService {
         return null;
     }
 
+    /**
+     * Returns the profile of an user, from the cache when possible. The password hash is not
+     * part of the returned profile.
+     *
+     * @param email - email that identifies the user.
+     * @return User object without `hashedpw`, or null if no user matches the email.
+     */
     public User loadUser(String email) {
-        return userDao.getUser(email);
+        return copyOf(userCache.get(email, userDao::getUser), false);
+    }
+
+    /**
+     * Removes an user from the cache, to be called whenever the user document changes.
+     *
+     * @param email - email that identifies the user.
+     */
+    public void invalidateUser(String email) {
+        userCache.invalidate(email);
+    }
+
+    /**
+     * Summarizes the user cache activity.
+     *
+     * @return Map with the cache size, hits, misses and evictions.
+     */
+    public Map<String, Object> getUserCacheStats() {
+        return userCache.snapshot();
+    }
+
+    private static User copyOf(User user, boolean withPassword) {
+        if (user == null) {
+            return null;
+        }
+        User copy = new User();
+        copy.setName(user.getName());
+        copy.setEmail(user.getEmail());
+        copy.setAdmin(user.isAdmin());
+        copy.setPreferences(user.getPreferences() == null ? null : new HashMap<>(user.getPreferences()));
+        if (withPassword) {
+            copy.setHashedpw(user.getHashedpw());
+        }
+        return copy;
     }
 
     private String generateUserToken(String email, String password) {
@@ -104,13 +240,111 @@ public class UserService implements UserDetailsService {
      * @return User object that matches the provided email and password.
      */
     public User authenticate(String email, String password, Map<String, String> results) {
-        String jwt = generateUserToken(email, password);
+        String jwt;
+        try {
+            jwt = generateUserToken(email, password);
+        } catch (AuthenticationServiceException e) {
+            results.put("msg", "unable to login user, please try again later");
+            return null;
+        }
+        return startSession(email, password, jwt, results);
+    }
+
+    /**
+     * Authenticates the user like {@link #authenticate(String, String, Map)}, without holding the
+     * calling thread while the password is verified. The session is then stored on a session
+     * thread. Unknown users are verified against a dummy hash, as by the authentication manager.
+     *
+     * @param email    - identifies the user
+     * @param password - user password
+     * @param results  - map to collect any relevant message
+     * @return future completed with the User object that matches the provided email and password,
+     * or null, and completed exceptionally with an AuthenticationException for bad credentials.
+     */
+    public CompletableFuture<User> authenticateAsync(
+            String email, String password, Map<String, String> results) {
+        UserDetails principal;
+        try {
+            principal = loadUserByUsername(email);
+            accountChecker.check(principal);
+        } catch (UsernameNotFoundException e) {
+            principal = null;
+        } catch (AuthenticationException e) {
+            return failed(e);
+        }
+        UserDetails user = principal;
+        // unknown users are hashed too and rejected as bad credentials: neither the response time
+        // nor the error tell whether the email is registered
+        return passwordEncoder
+                .matchesAsync(password, user != null ? user.getPassword() : userNotFoundHash)
+                .thenApplyAsync(
+                        matches -> {
+                            if (user == null || !matches) {
+                                throw new BadCredentialsException("Bad credentials");
+                            }
+                            Authentication authentication =
+                                    new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+                            return startSession(
+                                    email, password, authService.generateToken(authentication), results);
+                        },
+                        sessionExecutor)
+                .exceptionally(
+                        e -> {
+                            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                            if (cause instanceof AuthenticationServiceException) {
+                                results.put("msg", "unable to login user, please try again later");
+                                return null;
+                            }
+                            throw e instanceof CompletionException
+                                    ? (CompletionException) e
+                                    : new CompletionException(e);
+                        });
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+        return failed;
+    }
+
+    private User startSession(String email, String password, String jwt, Map<String, String> results) {
+        rehashPasswordIfNeeded(email, password);
         if (!userDao.createUserSession(email, jwt)) {
             results.put("msg", "unable to login user");
             return null;
         }
         results.put("auth_token", jwt);
-        return userDao.getUser(email);
+        return loadUser(email);
+    }
+
+    /**
+     * Hashes the password of a successfully authenticated user again if its hash was produced with
+     * another cost factor than the configured one. The new hash is computed and stored in the
+     * background, the login does not wait for it.
+     *
+     * @param email    - identifies the user.
+     * @param password - verified user password.
+     */
+    private void rehashPasswordIfNeeded(String email, String password) {
+        User user = userCache.get(email, userDao::getUser);
+        if (user == null || !passwordEncoder.needsRehash(user.getHashedpw())) {
+            return;
+        }
+        String currentHash = user.getHashedpw();
+        passwordEncoder
+                .encodeAsync(password)
+                .thenAcceptAsync(
+                        newHash -> {
+                            if (userDao.updateHashedPassword(email, currentHash, newHash)) {
+                                invalidateUser(email);
+                            }
+                        },
+                        sessionExecutor)
+                .exceptionally(
+                        e -> {
+                            log.warn("Unable to rehash the password of user `{}`: {}", email, e.getMessage());
+                            return null;
+                        });
     }
 
     /**
@@ -132,19 +366,23 @@ public class UserService implements UserDetailsService {
      * @return true if successful deletes the user from mflix
      */
     public boolean deleteUser(String email, String password, Map<String, String> results) {
-        // check if hashed password matches
-        String hpwd = passwordEncoder.encode(password);
-        if (userDao.getUser(email) == null) {
+        // check if the password matches the stored hash
+        User user = userCache.get(email, userDao::getUser);
+        if (user == null) {
             results.put("msg", "user does not exist");
             return false;
         }
 
-        if (!passwordEncoder.matches(password, hpwd)) {
+        if (!passwordEncoder.matches(password, user.getHashedpw())) {
             results.put("msg", "passwords do not match");
             return false;
         }
 
-        return userDao.deleteUser(email);
+        try {
+            return userDeletionService.deleteUser(email).isUserDeleted();
+        } finally {
+            invalidateUser(email);
+        }
     }
 
     /**
@@ -160,21 +398,18 @@ public class UserService implements UserDetailsService {
 
         Map<String, String> preferences =
                 (Map<String, String>) userPreferences.get("preferences");
-        if (userDao.updateUserPreferences(email, preferences)) {
-            User user = userDao.getUser(email);
-            if (user == null) {
-
-                throw new UsernameNotFoundException("Cannot find username.");
-            }
-            results.put("info", user);
-            return true;
+        User user = userDao.findAndUpdateUserPreferences(email, preferences);
+        invalidateUser(email);
+        if (user == null) {
+            return false;
         }
-        return false;
+        results.put("info", user);
+        return true;
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = loadUser(username);
+        User user = copyOf(userCache.get(username, userDao::getUser), true);
         if (user == null || user.isEmpty()) {
             throw new UsernameNotFoundException("Cannot find username.");
         }
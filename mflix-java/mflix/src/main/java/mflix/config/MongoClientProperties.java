@@ -0,0 +1,162 @@
+package mflix.config;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.WriteConcern;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Typed view of the `spring.mongodb.*` properties. Every tuning value is optional: when not set,
+ * the value found in the `spring.mongodb.uri` connection string, or the driver default, applies.
+ */
+@ConfigurationProperties(prefix = "spring.mongodb")
+public class MongoClientProperties {
+
+    private String uri;
+    private String database;
+
+    private Integer maxPoolSize;
+    private Integer minPoolSize;
+    private Long maxIdleTimeMS;
+    private Long waitQueueTimeoutMS;
+    private Integer waitQueueMultiple;
+
+    private Integer connectTimeoutMS;
+    private Integer socketTimeoutMS;
+    private Long serverSelectionTimeoutMS;
+
+    private String writeConcern;
+    private Integer wtimeoutMS;
+    private Boolean journal;
+
+    public String getUri() {
+        return uri;
+    }
+
+    public void setUri(String uri) {
+        this.uri = uri;
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    public void setDatabase(String database) {
+        this.database = database;
+    }
+
+    public Integer getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize(Integer maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    public Integer getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    public void setMinPoolSize(Integer minPoolSize) {
+        this.minPoolSize = minPoolSize;
+    }
+
+    public Long getMaxIdleTimeMS() {
+        return maxIdleTimeMS;
+    }
+
+    public void setMaxIdleTimeMS(Long maxIdleTimeMS) {
+        this.maxIdleTimeMS = maxIdleTimeMS;
+    }
+
+    public Long getWaitQueueTimeoutMS() {
+        return waitQueueTimeoutMS;
+    }
+
+    public void setWaitQueueTimeoutMS(Long waitQueueTimeoutMS) {
+        this.waitQueueTimeoutMS = waitQueueTimeoutMS;
+    }
+
+    public Integer getWaitQueueMultiple() {
+        return waitQueueMultiple;
+    }
+
+    public void setWaitQueueMultiple(Integer waitQueueMultiple) {
+        this.waitQueueMultiple = waitQueueMultiple;
+    }
+
+    public Integer getConnectTimeoutMS() {
+        return connectTimeoutMS;
+    }
+
+    public void setConnectTimeoutMS(Integer connectTimeoutMS) {
+        this.connectTimeoutMS = connectTimeoutMS;
+    }
+
+    public Integer getSocketTimeoutMS() {
+        return socketTimeoutMS;
+    }
+
+    public void setSocketTimeoutMS(Integer socketTimeoutMS) {
+        this.socketTimeoutMS = socketTimeoutMS;
+    }
+
+    public Long getServerSelectionTimeoutMS() {
+        return serverSelectionTimeoutMS;
+    }
+
+    public void setServerSelectionTimeoutMS(Long serverSelectionTimeoutMS) {
+        this.serverSelectionTimeoutMS = serverSelectionTimeoutMS;
+    }
+
+    public String getWriteConcern() {
+        return writeConcern;
+    }
+
+    public void setWriteConcern(String writeConcern) {
+        this.writeConcern = writeConcern;
+    }
+
+    public Integer getWtimeoutMS() {
+        return wtimeoutMS;
+    }
+
+    public void setWtimeoutMS(Integer wtimeoutMS) {
+        this.wtimeoutMS = wtimeoutMS;
+    }
+
+    public Boolean getJournal() {
+        return journal;
+    }
+
+    public void setJournal(Boolean journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Builds the write concern from the `writeConcern`, `wtimeoutMS` and `journal` properties,
+     * falling back to the write concern defined in the connection string.
+     *
+     * @param connectionString - parsed `spring.mongodb.uri` value.
+     * @return the write concern to be applied, or null if nothing has been configured.
+     */
+    public WriteConcern buildWriteConcern(ConnectionString connectionString) {
+        WriteConcern concern = connectionString.getWriteConcern();
+        if (writeConcern != null && !writeConcern.isEmpty()) {
+            concern =
+                    writeConcern.matches("\\d+")
+                            ? new WriteConcern(Integer.parseInt(writeConcern))
+                            : new WriteConcern(writeConcern);
+        }
+        if (wtimeoutMS != null) {
+            concern =
+                    (concern == null ? WriteConcern.ACKNOWLEDGED : concern)
+                            .withWTimeout(wtimeoutMS, TimeUnit.MILLISECONDS);
+        }
+        if (journal != null) {
+            concern = (concern == null ? WriteConcern.ACKNOWLEDGED : concern).withJournal(journal);
+        }
+        return concern;
+    }
+}
@@ -5,8 +5,10 @@ import com.mongodb.MongoClientSettings;
 import com.mongodb.WriteConcern;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
+import mflix.api.metrics.MongoDriverMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
@@ -16,21 +18,70 @@ import java.util.concurrent.TimeUnit;
 
 @Configuration
 @Service
+@EnableConfigurationProperties(MongoClientProperties.class)
 public class MongoDBConfiguration {
 
     @Bean
-    @Scope(value = ConfigurableBeanFactory.SCOPE_SINGLETON)
-    public MongoClient mongoClient(@Value("${spring.mongodb.uri}") String connectionString) {
+    public MongoDriverMetrics mongoDriverMetrics(
+            @Value("${mflix.metrics.command_bytes:true}") boolean measureCommandBytes) {
+        return new MongoDriverMetrics(measureCommandBytes);
+    }
+
+    @Bean
+    public MongoClientSettings mongoClientSettings(
+            @Value("${spring.mongodb.uri}") String connectionString,
+            MongoClientProperties properties,
+            MongoDriverMetrics driverMetrics) {
 
         ConnectionString connString = new ConnectionString(connectionString);
 
-        MongoClientSettings mongoClientSettings = MongoClientSettings.builder()
-                .applyConnectionString(connString).applyToConnectionPoolSettings(builder -> {
-            builder.maxSize(50);
-        }).build();
+        MongoClientSettings.Builder settings = MongoClientSettings.builder()
+                .applyConnectionString(connString)
+                .addCommandListener(driverMetrics)
+                .applyToConnectionPoolSettings(builder -> {
+                    if (properties.getMaxPoolSize() != null) {
+                        builder.maxSize(properties.getMaxPoolSize());
+                    }
+                    if (properties.getMinPoolSize() != null) {
+                        builder.minSize(properties.getMinPoolSize());
+                    }
+                    if (properties.getMaxIdleTimeMS() != null) {
+                        builder.maxConnectionIdleTime(properties.getMaxIdleTimeMS(), TimeUnit.MILLISECONDS);
+                    }
+                    if (properties.getWaitQueueTimeoutMS() != null) {
+                        builder.maxWaitTime(properties.getWaitQueueTimeoutMS(), TimeUnit.MILLISECONDS);
+                    }
+                    if (properties.getWaitQueueMultiple() != null) {
+                        int maxSize = builder.build().getMaxSize();
+                        builder.maxWaitQueueSize(maxSize * properties.getWaitQueueMultiple());
+                    }
+                    builder.addConnectionPoolListener(driverMetrics);
+                })
+                .applyToSocketSettings(builder -> {
+                    if (properties.getConnectTimeoutMS() != null) {
+                        builder.connectTimeout(properties.getConnectTimeoutMS(), TimeUnit.MILLISECONDS);
+                    }
+                    if (properties.getSocketTimeoutMS() != null) {
+                        builder.readTimeout(properties.getSocketTimeoutMS(), TimeUnit.MILLISECONDS);
+                    }
+                })
+                .applyToClusterSettings(builder -> {
+                    if (properties.getServerSelectionTimeoutMS() != null) {
+                        builder.serverSelectionTimeout(
+                                properties.getServerSelectionTimeoutMS(), TimeUnit.MILLISECONDS);
+                    }
+                });
 
-        //TODO> Ticket: Handling Timeouts - configure the expected
-        // WriteConcern `wtimeout` and `connectTimeoutMS` values
+        WriteConcern writeConcern = properties.buildWriteConcern(connString);
+        if (writeConcern != null) {
+            settings.writeConcern(writeConcern);
+        }
+        return settings.build();
+    }
+
+    @Bean
+    @Scope(value = ConfigurableBeanFactory.SCOPE_SINGLETON)
+    public MongoClient mongoClient(MongoClientSettings mongoClientSettings) {
         MongoClient mongoClient = MongoClients.create(mongoClientSettings);
         return mongoClient;
     }
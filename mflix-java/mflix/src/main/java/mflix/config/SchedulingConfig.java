@@ -0,0 +1,10 @@
+package mflix.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/** Enables the `@Scheduled` background jobs, such as the comment count flush. */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
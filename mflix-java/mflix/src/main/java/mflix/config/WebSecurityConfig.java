@@ -2,8 +2,10 @@ package mflix.config;
 
 import mflix.api.security.JWTAuthEntryPoint;
 import mflix.api.security.JWTAuthenticationFilter;
+import mflix.api.services.PasswordHashingService;
 import mflix.api.services.TokenAuthenticationService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -13,8 +15,6 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 @Configuration
@@ -27,8 +27,13 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
     private TokenAuthenticationService authService;
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordHashingService passwordEncoder(
+            @Value("${mflix.passwords.bcrypt_strength:10}") int strength,
+            @Value("${mflix.passwords.pool_size:0}") int poolSize,
+            @Value("${mflix.passwords.queue_size:200}") int queueSize) {
+        // by default, one hashing thread per core
+        int threads = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        return new PasswordHashingService(strength, threads, queueSize);
     }
 
     @Override
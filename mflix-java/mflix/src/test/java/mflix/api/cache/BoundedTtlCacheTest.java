@@ -0,0 +1,75 @@
+package mflix.api.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BoundedTtlCacheTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  private BoundedTtlCache<String, String> cache(int maxSize) {
+    return new BoundedTtlCache<>(maxSize, 10, TimeUnit.SECONDS, now::get);
+  }
+
+  @Test
+  public void testEntriesExpire() {
+    BoundedTtlCache<String, String> cache = cache(10);
+    cache.put("a", "1");
+    now.addAndGet(TimeUnit.SECONDS.toNanos(9));
+    Assert.assertEquals("1", cache.get("a"));
+    now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    Assert.assertNull("Entry should have expired", cache.get("a"));
+    Assert.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() {
+    BoundedTtlCache<String, String> cache = cache(2);
+    cache.put("a", "1");
+    cache.put("b", "2");
+    cache.get("a");
+    cache.put("c", "3");
+    Assert.assertEquals("1", cache.get("a"));
+    Assert.assertNull("Least recently used entry should be evicted", cache.get("b"));
+    Assert.assertEquals("3", cache.get("c"));
+    Assert.assertEquals(1L, cache.snapshot().get("evictions"));
+  }
+
+  @Test
+  public void testLoaderResultIsCached() {
+    BoundedTtlCache<String, String> cache = cache(10);
+    AtomicLong loads = new AtomicLong();
+    cache.get("a", k -> k + loads.incrementAndGet());
+    Assert.assertEquals("a1", cache.get("a", k -> k + loads.incrementAndGet()));
+    Assert.assertNull(cache.get("missing", k -> null));
+    Assert.assertNull(cache.get("missing", k -> null));
+    Assert.assertEquals(1, loads.get());
+    Assert.assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testValueLoadedDuringInvalidationIsNotCached() {
+    BoundedTtlCache<String, String> cache = cache(10);
+    String loaded =
+        cache.get(
+            "a",
+            k -> {
+              cache.invalidate(k);
+              return "stale";
+            });
+    Assert.assertEquals("stale", loaded);
+    Assert.assertNull("A value loaded before an invalidation should not be cached", cache.get("a"));
+  }
+
+  @Test
+  public void testZeroSizeDisablesCaching() {
+    BoundedTtlCache<String, String> cache = cache(0);
+    cache.put("a", "1");
+    Assert.assertNull(cache.get("a"));
+    Assert.assertEquals("2", cache.get("b", k -> "2"));
+    Assert.assertEquals(0, cache.size());
+  }
+}
@@ -0,0 +1,82 @@
+package mflix.api.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+
+  @Test(timeout = 10000)
+  public void testConcurrentCallsShareOneResult() throws Exception {
+    SingleFlight<String, Integer> flight = new SingleFlight<>();
+    AtomicInteger runs = new AtomicInteger();
+    CountDownLatch leaderStarted = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Future<Integer> leader =
+          executor.submit(
+              () ->
+                  flight.run(
+                      "movie",
+                      () -> {
+                        leaderStarted.countDown();
+                        await(release);
+                        return runs.incrementAndGet();
+                      }));
+      leaderStarted.await();
+      List<Future<Integer>> followers = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        followers.add(executor.submit(() -> flight.run("movie", runs::incrementAndGet)));
+      }
+      while ((long) flight.snapshot().get("collapsed") < 3) {
+        Thread.sleep(1);
+      }
+      release.countDown();
+
+      Assert.assertEquals(Integer.valueOf(1), leader.get());
+      for (Future<Integer> follower : followers) {
+        Assert.assertEquals(Integer.valueOf(1), follower.get());
+      }
+      Assert.assertEquals(1, runs.get());
+      Assert.assertEquals(0, flight.snapshot().get("in_flight"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCompletedCallsAreNotCached() {
+    SingleFlight<String, Integer> flight = new SingleFlight<>();
+    AtomicInteger runs = new AtomicInteger();
+    flight.run("movie", runs::incrementAndGet);
+    Assert.assertEquals(Integer.valueOf(2), flight.run("movie", runs::incrementAndGet));
+    Assert.assertEquals(0L, flight.snapshot().get("collapsed"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testExceptionIsRethrown() {
+    new SingleFlight<String, Integer>()
+        .run(
+            "movie",
+            () -> {
+              throw new IllegalStateException("query failed");
+            });
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
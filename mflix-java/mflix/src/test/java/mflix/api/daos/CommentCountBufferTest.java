@@ -0,0 +1,115 @@
+package mflix.api.daos;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CommentCountBufferTest {
+
+  private MongoClient mongoClient;
+  private CommentCountBuffer buffer;
+
+  @Before
+  public void setUp() {
+    // the client connects lazily, these tests never reach the server
+    mongoClient = MongoClients.create("mongodb://localhost:27017");
+    buffer = new CommentCountBuffer(mongoClient, "mflix", 500);
+  }
+
+  @After
+  public void tearDown() {
+    mongoClient.close();
+  }
+
+  @Test
+  public void testCoalescesConcurrentIncrements() throws InterruptedException {
+    ObjectId hotMovie = new ObjectId();
+    ObjectId coldMovie = new ObjectId();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int i = 0; i < 8; i++) {
+      executor.execute(
+          () -> {
+            for (int j = 0; j < 10000; j++) {
+              buffer.increment(hotMovie, 1);
+            }
+          });
+    }
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+    buffer.increment(coldMovie, 1);
+    buffer.increment(coldMovie, -1);
+
+    Map<ObjectId, Long> deltas = buffer.drain();
+    Assert.assertEquals(
+        "Movies whose increments cancel out should not be written",
+        Collections.singletonMap(hotMovie, 80000L),
+        deltas);
+    Assert.assertTrue("Drained increments should be reset", buffer.drain().isEmpty());
+  }
+
+  @Test
+  public void testRestoredIncrementsAreDrainedAgain() {
+    ObjectId movie = new ObjectId();
+    buffer.increment(movie, 2);
+    Map<ObjectId, Long> deltas = buffer.drain();
+
+    buffer.increment(movie, 1);
+    buffer.restore(deltas);
+
+    Assert.assertEquals(Long.valueOf(3), buffer.drain().get(movie));
+  }
+
+  @Test
+  public void testFlushesDoNotLoseConcurrentIncrements() throws InterruptedException {
+    ObjectId movie = new ObjectId();
+    AtomicLong written = new AtomicLong();
+    CommentCountBuffer recordingBuffer =
+        new CommentCountBuffer(mongoClient, "mflix", 500) {
+          @Override
+          List<ObjectId> write(List<ObjectId> movieIds, Map<ObjectId, Long> deltas) {
+            movieIds.forEach(movieId -> written.addAndGet(deltas.get(movieId)));
+            return movieIds;
+          }
+        };
+
+    AtomicBoolean incrementing = new AtomicBoolean(true);
+    Thread flusher =
+        new Thread(
+            () -> {
+              while (incrementing.get()) {
+                recordingBuffer.flush();
+              }
+            });
+    flusher.start();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int i = 0; i < 8; i++) {
+      executor.execute(
+          () -> {
+            for (int j = 0; j < 100000; j++) {
+              recordingBuffer.increment(movie, 1);
+            }
+          });
+    }
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+    incrementing.set(false);
+    flusher.join();
+    recordingBuffer.flush();
+
+    Assert.assertEquals(
+        "Every increment should be written exactly once", 800000L, written.get());
+  }
+}
@@ -0,0 +1,89 @@
+package mflix.api.daos;
+
+import com.mongodb.client.MongoClient;
+import mflix.api.models.MovieSearchQuery;
+import mflix.config.MongoDBConfiguration;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Collections;
+import java.util.List;
+
+@SpringBootTest(classes = {MongoDBConfiguration.class})
+@EnableConfigurationProperties
+@EnableAutoConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+public class CompoundSearchTest extends TicketTest {
+
+  private MovieDao dao;
+  private String sortKey;
+  @Autowired MongoClient mongoClient;
+
+  @Value("${spring.mongodb.database}")
+  String databaseName;
+
+  @Before
+  public void setup() {
+    this.dao = new MovieDao(mongoClient, databaseName);
+    this.sortKey = "tomatoes.viewer.numReviews";
+  }
+
+  @Test
+  public void testSingleCriterionMatchesDedicatedCount() {
+    MovieSearchQuery query = new MovieSearchQuery();
+    query.setCast(Collections.singletonList("Salma Hayek"));
+
+    Document result = dao.searchMovies(query, sortKey, 20, 0);
+
+    Assert.assertEquals(
+        "Compound search count should match the cast search count",
+        dao.getCastSearchCount("Salma Hayek"),
+        (long) result.get("count"));
+  }
+
+  @Test
+  public void testAllCriteriaMustMatch() {
+    MovieSearchQuery query = new MovieSearchQuery();
+    query.setCast(Collections.singletonList("Salma Hayek"));
+    query.setGenres(Collections.singletonList("Comedy"));
+    query.setMinYear(1995);
+    query.setMaxYear(2010);
+
+    Document result = dao.searchMovies(query, sortKey, 20, 0);
+    List<Document> movies = (List<Document>) result.get("movies");
+
+    Assert.assertTrue((long) result.get("count") <= dao.getCastSearchCount("Salma Hayek"));
+    Assert.assertTrue(movies.size() <= 20);
+    for (Document movie : movies) {
+      Assert.assertTrue(((List<?>) movie.get("cast")).contains("Salma Hayek"));
+      Assert.assertTrue(((List<?>) movie.get("genres")).contains("Comedy"));
+      int year = movie.getInteger("year");
+      Assert.assertTrue(year >= 1995 && year <= 2010);
+    }
+  }
+
+  @Test
+  public void testTextWithGenreIsSortedByRelevance() {
+    MovieSearchQuery query = new MovieSearchQuery();
+    query.setText(Collections.singletonList("dress"));
+    query.setGenres(Collections.singletonList("Drama"));
+
+    List<Document> movies = (List<Document>) dao.searchMovies(query, sortKey, 20, 0).get("movies");
+
+    double previous = Double.MAX_VALUE;
+    for (Document movie : movies) {
+      double score = movie.getDouble("score");
+      Assert.assertTrue("Text matches should be sorted by relevance", score <= previous);
+      previous = score;
+    }
+  }
+}
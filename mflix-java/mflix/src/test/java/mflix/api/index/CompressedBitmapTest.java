@@ -0,0 +1,85 @@
+package mflix.api.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+public class CompressedBitmapTest {
+
+  private final Random random = new Random(42);
+
+  private static int[] toArray(TreeSet<Integer> set) {
+    return set.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  private TreeSet<Integer> randomSet(int count, int bound) {
+    TreeSet<Integer> set = new TreeSet<>();
+    while (set.size() < count) {
+      set.add(random.nextInt(bound));
+    }
+    return set;
+  }
+
+  private static CompressedBitmap bitmapOf(TreeSet<Integer> set) {
+    return CompressedBitmap.of(toArray(set));
+  }
+
+  @Test
+  public void testAddRemoveContains() {
+    CompressedBitmap bitmap = CompressedBitmap.of(3, 70000, 1);
+    Assert.assertArrayEquals(new int[] {1, 3, 70000}, bitmap.toArray());
+    Assert.assertTrue(bitmap.contains(70000));
+    bitmap.remove(70000);
+    Assert.assertFalse(bitmap.contains(70000));
+    Assert.assertEquals(2, bitmap.cardinality());
+  }
+
+  @Test
+  public void testDenseChunksConvertBothWays() {
+    TreeSet<Integer> set = randomSet(CompressedBitmap.ARRAY_MAX * 3, 1 << 16);
+    CompressedBitmap bitmap = bitmapOf(set);
+    Assert.assertArrayEquals(toArray(set), bitmap.toArray());
+    long denseBytes = bitmap.sizeInBytes();
+
+    for (Integer value : new TreeSet<>(set)) {
+      if (set.size() <= 100) {
+        break;
+      }
+      bitmap.remove(value);
+      set.remove(value);
+    }
+    Assert.assertArrayEquals(toArray(set), bitmap.toArray());
+    Assert.assertTrue(bitmap.sizeInBytes() < denseBytes);
+  }
+
+  @Test
+  public void testAndOrMatchSets() {
+    for (int[] sizes : new int[][] {{100, 200}, {10000, 50}, {20000, 30000}}) {
+      TreeSet<Integer> a = randomSet(sizes[0], 200000);
+      TreeSet<Integer> b = randomSet(sizes[1], 200000);
+      CompressedBitmap bitmapA = bitmapOf(a);
+      CompressedBitmap bitmapB = bitmapOf(b);
+
+      TreeSet<Integer> intersection = new TreeSet<>(a);
+      intersection.retainAll(b);
+      TreeSet<Integer> union = new TreeSet<>(a);
+      union.addAll(b);
+
+      Assert.assertArrayEquals(toArray(intersection), CompressedBitmap.and(bitmapA, bitmapB).toArray());
+      Assert.assertArrayEquals(toArray(union), CompressedBitmap.or(bitmapA, bitmapB).toArray());
+      Assert.assertEquals(union.size(), CompressedBitmap.or(bitmapB, bitmapA).cardinality());
+    }
+  }
+
+  @Test
+  public void testResultsShareNothingWithOperands() {
+    CompressedBitmap a = CompressedBitmap.of(1, 2);
+    CompressedBitmap union = CompressedBitmap.or(a, new CompressedBitmap());
+    union.add(3);
+    a.remove(1);
+    Assert.assertArrayEquals(new int[] {2}, a.toArray());
+    Assert.assertArrayEquals(new int[] {1, 2, 3}, union.toArray());
+  }
+}
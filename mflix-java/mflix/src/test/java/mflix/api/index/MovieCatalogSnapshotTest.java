@@ -0,0 +1,82 @@
+package mflix.api.index;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MovieCatalogSnapshotTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static Map<String, List<String>> fields(List<String> genres, List<String> cast) {
+    Map<String, List<String>> fields = new HashMap<>();
+    fields.put(MovieFilterPostings.GENRES, genres);
+    fields.put(MovieFilterPostings.CAST, cast);
+    return fields;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    ObjectId amelie = new ObjectId();
+    ObjectId deleted = new ObjectId();
+    ObjectId crouching = new ObjectId();
+    MovieFilterPostings postings = new MovieFilterPostings();
+    postings.put(amelie, fields(Arrays.asList("Comedy", "Romance"), Arrays.asList("Audrey Tautou")), 5);
+    postings.put(deleted, fields(Collections.singletonList("Comedy"), null), 1);
+    postings.put(crouching, fields(Collections.singletonList("Action"), Arrays.asList("Zhang Ziyi")), 9);
+    postings.remove(deleted);
+    BsonDocument checkpoint = new BsonDocument("resumeAfter", new BsonDocument("_data", new BsonString("826")));
+
+    Path path = folder.getRoot().toPath().resolve("catalog.snapshot");
+    MovieCatalogSnapshot.write(path, postings, checkpoint);
+    MovieCatalogSnapshot snapshot = MovieCatalogSnapshot.read(path);
+
+    Assert.assertEquals(checkpoint, snapshot.getCheckpoint());
+    MovieFilterPostings loaded = snapshot.getPostings();
+    Assert.assertEquals(2, loaded.getMovieCount());
+    Assert.assertEquals(
+        Arrays.asList(crouching, amelie), loaded.page(loaded.match(Collections.emptyMap()), 0, 10));
+    Assert.assertEquals(
+        Collections.singletonList(amelie),
+        loaded.page(
+            loaded.match(Collections.singletonMap(MovieFilterPostings.CAST, Arrays.asList("Audrey Tautou"))),
+            0,
+            10));
+    Assert.assertTrue(
+        loaded.match(Collections.singletonMap(MovieFilterPostings.GENRES, Arrays.asList("Comedy")))
+            .contains(0));
+  }
+
+  @Test
+  public void testOperationTimeCheckpoint() throws IOException {
+    BsonDocument checkpoint = new BsonDocument("startAtOperationTime", new BsonTimestamp(1, 2));
+    Path path = folder.getRoot().toPath().resolve("catalog.snapshot");
+    MovieCatalogSnapshot.write(path, new MovieFilterPostings(), checkpoint);
+    Assert.assertEquals(checkpoint, MovieCatalogSnapshot.read(path).getCheckpoint());
+  }
+
+  @Test(expected = IOException.class)
+  public void testCorruptSnapshotIsRejected() throws IOException {
+    Path path = folder.getRoot().toPath().resolve("catalog.snapshot");
+    MovieCatalogSnapshot.write(path, new MovieFilterPostings(), new BsonDocument());
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 1);
+    }
+    MovieCatalogSnapshot.read(path);
+  }
+}
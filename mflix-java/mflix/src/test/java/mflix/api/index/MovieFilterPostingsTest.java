@@ -0,0 +1,74 @@
+package mflix.api.index;
+
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MovieFilterPostingsTest {
+
+  private final MovieFilterPostings postings = new MovieFilterPostings();
+  private final ObjectId drama = new ObjectId();
+  private final ObjectId comedy = new ObjectId();
+  private final ObjectId dramedy = new ObjectId();
+
+  private static Map<String, List<String>> fields(String genre, String... cast) {
+    Map<String, List<String>> fields = new HashMap<>();
+    fields.put(MovieFilterPostings.GENRES, Arrays.asList(genre.split(",")));
+    fields.put(MovieFilterPostings.CAST, Arrays.asList(cast));
+    return fields;
+  }
+
+  private static Map<String, List<String>> filter(String field, String... values) {
+    return Collections.singletonMap(field, Arrays.asList(values));
+  }
+
+  @Before
+  public void setup() {
+    postings.put(drama, fields("Drama", "Meg Ryan"), 10);
+    postings.put(comedy, fields("Comedy", "Tom Hanks", "Meg Ryan"), 30);
+    postings.put(dramedy, fields("Comedy,Drama", "Tom Hanks"), 20);
+  }
+
+  @Test
+  public void testMatchesAnyValueOfEveryField() {
+    Map<String, List<String>> filters = new HashMap<>();
+    filters.put(MovieFilterPostings.GENRES, Arrays.asList("Drama", "Western"));
+    filters.put(MovieFilterPostings.CAST, Collections.singletonList("Tom Hanks"));
+    Assert.assertEquals(
+        Collections.singletonList(dramedy), postings.page(postings.match(filters), 0, 10));
+    Assert.assertEquals(
+        3, postings.match(filter(MovieFilterPostings.GENRES, "Comedy", "Drama")).cardinality());
+  }
+
+  @Test
+  public void testPagesAreSortedBySortValue() {
+    CompressedBitmap all = postings.match(Collections.emptyMap());
+    Assert.assertEquals(Arrays.asList(comedy, dramedy, drama), postings.page(all, 0, 10));
+    Assert.assertEquals(Collections.singletonList(dramedy), postings.page(all, 1, 1));
+    Assert.assertTrue(postings.page(all, 3, 1).isEmpty());
+  }
+
+  @Test
+  public void testUpdatesReplacePostings() {
+    postings.put(drama, fields("Western", "Meg Ryan"), 40);
+    Assert.assertEquals(
+        Collections.singletonList(dramedy),
+        postings.page(postings.match(filter(MovieFilterPostings.GENRES, "Drama")), 0, 10));
+    Assert.assertEquals(
+        Arrays.asList(drama, comedy),
+        postings.page(postings.match(filter(MovieFilterPostings.CAST, "Meg Ryan")), 0, 10));
+
+    postings.remove(comedy);
+    Assert.assertEquals(2, postings.getMovieCount());
+    Assert.assertEquals(
+        Collections.singletonList(drama),
+        postings.page(postings.match(filter(MovieFilterPostings.CAST, "Meg Ryan")), 0, 10));
+  }
+}
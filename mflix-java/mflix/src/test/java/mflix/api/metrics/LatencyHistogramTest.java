@@ -0,0 +1,46 @@
+package mflix.api.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testBucketBoundariesAreContiguous() {
+    long previousUpperBound = -1;
+    for (int index = 0; index < 200; index++) {
+      long upperBound = LatencyHistogram.bucketUpperBound(index);
+      Assert.assertEquals(
+          "Bucket " + index + " should start right after the previous one",
+          index,
+          LatencyHistogram.bucketIndex(previousUpperBound + 1));
+      Assert.assertEquals(index, LatencyHistogram.bucketIndex(upperBound));
+      previousUpperBound = upperBound;
+    }
+  }
+
+  @Test
+  public void testPercentilesWithinPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i, TimeUnit.MILLISECONDS);
+    }
+
+    Assert.assertEquals(1000, histogram.getCount());
+    long p50 = histogram.percentile(0.5);
+    long p99 = histogram.percentile(0.99);
+    Assert.assertTrue("p50 should be close to 500ms", p50 >= 500_000 && p50 <= 500_000 * 1.125);
+    Assert.assertTrue("p99 should be close to 990ms", p99 >= 990_000 && p99 <= 990_000 * 1.125);
+    Assert.assertEquals(1_000_000, histogram.percentile(1.0));
+  }
+
+  @Test
+  public void testEmptySnapshot() {
+    Map<String, Object> snapshot = new LatencyHistogram().snapshot();
+    Assert.assertEquals(0L, snapshot.get("count"));
+    Assert.assertEquals(0.0, snapshot.get("p99_ms"));
+  }
+}
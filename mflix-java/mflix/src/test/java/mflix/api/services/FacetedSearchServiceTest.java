@@ -0,0 +1,47 @@
+package mflix.api.services;
+
+import mflix.api.models.MovieSearchQuery;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class FacetedSearchServiceTest {
+
+  @Test
+  public void testParseBoundaries() {
+    List<Number> boundaries = FacetedSearchService.parseBoundaries("rating", " 0, 5,10.1");
+    Assert.assertEquals(Arrays.<Number>asList(0, 5, 10.1), boundaries);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBoundariesMustBeAscending() {
+    FacetedSearchService.parseBoundaries("year", "2000,1990");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBoundariesMustBeNumbers() {
+    FacetedSearchService.parseBoundaries("year", "1990,later");
+  }
+
+  @Test
+  public void testFacetIgnoresItsOwnDimension() {
+    MovieSearchQuery query = new MovieSearchQuery();
+    query.setGenres(Collections.singletonList("Drama"));
+    query.setMinYear(1990);
+    query.setMaxYear(2000);
+
+    MovieSearchQuery genres = FacetedSearchService.withoutDimension(FacetedSearchService.GENRES, query);
+    Assert.assertTrue(genres.getGenres().isEmpty());
+    Assert.assertEquals(Integer.valueOf(1990), genres.getMinYear());
+
+    MovieSearchQuery years = FacetedSearchService.withoutDimension(FacetedSearchService.YEAR, query);
+    Assert.assertEquals(Collections.singletonList("Drama"), years.getGenres());
+    Assert.assertNull(years.getMinYear());
+    Assert.assertNull(years.getMaxYear());
+
+    Assert.assertEquals("The query is left unchanged", 2, query.getCriteriaCount());
+  }
+}
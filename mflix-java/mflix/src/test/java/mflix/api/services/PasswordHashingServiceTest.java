@@ -0,0 +1,41 @@
+package mflix.api.services;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+public class PasswordHashingServiceTest {
+
+  private final PasswordHashingService service = new PasswordHashingService(5, 2, 10);
+
+  @After
+  public void tearDown() {
+    service.shutdown();
+  }
+
+  @Test
+  public void testEncodeAndMatch() {
+    String hash = service.encode("secret");
+    Assert.assertTrue(service.matches("secret", hash));
+    Assert.assertFalse(service.matches("not the secret", hash));
+    Assert.assertTrue(service.matches("secret", service.encodeAsync("secret").join()));
+    Assert.assertTrue(service.matchesAsync("secret", hash).join());
+    Assert.assertFalse(service.matchesAsync("not the secret", hash).join());
+  }
+
+  @Test
+  public void testNeedsRehashWhenCostChanges() {
+    Assert.assertFalse(service.needsRehash(service.encode("secret")));
+    Assert.assertTrue(service.needsRehash(new BCryptPasswordEncoder(4).encode("secret")));
+    Assert.assertFalse("Unknown hash formats should be left alone", service.needsRehash("plain"));
+    Assert.assertFalse(service.needsRehash(null));
+  }
+
+  @Test
+  public void testSnapshotCountsCompletedTasks() {
+    service.matches("secret", service.encode("secret"));
+    Assert.assertEquals(0L, service.snapshot().get("rejected"));
+    Assert.assertEquals(5, service.snapshot().get("strength"));
+  }
+}
@@ -0,0 +1,74 @@
+package mflix.api.services;
+
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class ResponseVersionsTest {
+
+  private final SearchResultCache searchResultCache = new SearchResultCache(100, 60);
+  private final ResponseVersions versions = new ResponseVersions(searchResultCache);
+
+  private String movieETag(String movieId) {
+    return versions.movieETag(versions.registerMovie(movieId));
+  }
+
+  @Test
+  public void testUnknownMovieHasNoVersion() {
+    Assert.assertNull(versions.getMovieVersion("a"));
+    versions.movieChanged("a");
+    Assert.assertNull("Changes do not register movies", versions.getMovieVersion("a"));
+  }
+
+  @Test
+  public void testMovieChangeUpdatesETag() {
+    String before = movieETag("a");
+    Assert.assertEquals(before, movieETag("a"));
+    versions.movieChanged("a");
+    Assert.assertNotEquals(before, movieETag("a"));
+  }
+
+  @Test
+  public void testMoviesChangedNeverReusesAnETag() {
+    String before = movieETag("a");
+    versions.moviesChanged();
+    Assert.assertNull(versions.getMovieVersion("a"));
+    Assert.assertNotEquals(before, movieETag("a"));
+  }
+
+  @Test
+  public void testEpochBumpUpdatesETags() {
+    String movie = movieETag("a");
+    String search = versions.searchETag("{genre=[Drama]}@0");
+    searchResultCache.bumpEpoch();
+    Assert.assertNotEquals(movie, movieETag("a"));
+    Assert.assertNotEquals(search, versions.searchETag("{genre=[Drama]}@0"));
+    Assert.assertEquals(
+        searchResultCache.getEpochChangedAt(), versions.searchLastModified());
+  }
+
+  @Test
+  public void testCommentCountsChangeUpdatesETags() {
+    ObjectId movieId = new ObjectId();
+    String movie = movieETag(movieId.toHexString());
+    String search = versions.searchETag("{genre=[Drama]}@0");
+    long epoch = searchResultCache.getEpoch();
+    versions.commentCountsChanged(Collections.singletonList(movieId));
+    Assert.assertNotEquals(movie, movieETag(movieId.toHexString()));
+    Assert.assertNotEquals(search, versions.searchETag("{genre=[Drama]}@0"));
+    Assert.assertEquals("Counts do not change the matches", epoch, searchResultCache.getEpoch());
+
+    search = versions.searchETag("{genre=[Drama]}@0");
+    versions.commentCountsChanged(Collections.singletonList(movieId));
+    Assert.assertEquals(
+        "Search ETags change at most once per TTL", search, versions.searchETag("{genre=[Drama]}@0"));
+  }
+
+  @Test
+  public void testETagsAreWeak() {
+    Assert.assertTrue(movieETag("a").startsWith("W/\""));
+    Assert.assertTrue(versions.searchETag("{text=[dark]}@0").startsWith("W/\""));
+  }
+}
@@ -0,0 +1,74 @@
+package mflix.api.services;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SearchResultCacheTest {
+
+  private final SearchResultCache cache = new SearchResultCache(100, 60);
+  private final AtomicInteger searches = new AtomicInteger();
+
+  private Map<String, ?> search(String type, String... terms) {
+    return cache.get(
+        type,
+        Arrays.asList(terms),
+        0,
+        20,
+        () -> Collections.singletonMap("search", searches.incrementAndGet()));
+  }
+
+  @Test
+  public void testEquivalentSearchesShareAPage() {
+    search(SearchResultCache.TEXT, "Dark", " knight");
+    search(SearchResultCache.TEXT, "knight", "dark", "dark", "");
+    Assert.assertEquals(1, searches.get());
+
+    search(SearchResultCache.CAST, "Tom Hanks", "Meg Ryan");
+    search(SearchResultCache.CAST, "Meg Ryan", "Tom Hanks");
+    search(SearchResultCache.CAST, "meg ryan", "Tom Hanks");
+    Assert.assertEquals("Cast search terms are case sensitive", 3, searches.get());
+  }
+
+  @Test
+  public void testVersionsAreCachedSeparately() {
+    cache.get(SearchResultCache.GENRE, Arrays.asList("Drama"), 0, 20, 1, () -> Collections.singletonMap("v", 1));
+    Map<String, ?> refreshed =
+        cache.get(SearchResultCache.GENRE, Arrays.asList(" Drama"), 0, 20, 2, () -> Collections.singletonMap("v", 2));
+    Assert.assertEquals(2, refreshed.get("v"));
+  }
+
+  @Test
+  public void testPagesAreCachedSeparately() {
+    search(SearchResultCache.GENRE, "Drama");
+    Map<String, ?> second =
+        cache.get(
+            SearchResultCache.GENRE,
+            Collections.singletonList("Drama"),
+            1,
+            20,
+            () -> Collections.singletonMap("search", searches.incrementAndGet()));
+    Assert.assertEquals(2, second.get("search"));
+  }
+
+  @Test
+  public void testEpochBumpInvalidates() {
+    search(SearchResultCache.GENRE, "Drama");
+    cache.bumpEpoch();
+    search(SearchResultCache.GENRE, "Drama");
+    Assert.assertEquals(2, searches.get());
+    Assert.assertEquals(1L, cache.snapshot().get("epoch"));
+  }
+
+  @Test
+  public void testCommentCountsChangesKeepPages() {
+    search(SearchResultCache.GENRE, "Drama");
+    cache.countsChanged();
+    search(SearchResultCache.GENRE, "Drama");
+    Assert.assertEquals(1, searches.get());
+  }
+}
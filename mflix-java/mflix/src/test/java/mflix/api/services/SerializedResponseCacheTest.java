@@ -0,0 +1,76 @@
+package mflix.api.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mflix.api.services.SerializedResponseCache.SerializedResponse;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SerializedResponseCacheTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  private SerializedResponseCache cache(long maxBytes, int gzipMinBytes) {
+    return new SerializedResponseCache(new ObjectMapper(), maxBytes, 60, gzipMinBytes, now::get);
+  }
+
+  private static String repeat(char c, int times) {
+    return new String(new char[times]).replace('\0', c);
+  }
+
+  @Test
+  public void testTagMismatchMisses() {
+    SerializedResponseCache cache = cache(1024, -1);
+    cache.put("movie:a", "v1", Collections.singletonMap("title", "Up"));
+    Assert.assertNotNull(cache.get("movie:a", "v1"));
+    Assert.assertNull(cache.get("movie:a", "v2"));
+    Assert.assertNull("Stale entries are dropped", cache.get("movie:a", "v1"));
+    Assert.assertEquals(0, cache.snapshot().get("entries"));
+  }
+
+  @Test
+  public void testEntriesExpire() {
+    SerializedResponseCache cache = cache(1024, -1);
+    cache.put("index", "v1", Collections.singletonMap("title", "Up"));
+    now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+    Assert.assertNull(cache.get("index", "v1"));
+  }
+
+  @Test
+  public void testByteBudgetEvictsLeastRecentlyUsed() {
+    SerializedResponseCache cache = cache(100, -1);
+    String body = repeat('x', 30);
+    cache.put("a", "v", body);
+    cache.put("b", "v", body);
+    cache.put("c", "v", body);
+    cache.get("a", "v");
+    cache.put("d", "v", body);
+    Assert.assertNotNull(cache.get("a", "v"));
+    Assert.assertNull(cache.get("b", "v"));
+    Assert.assertTrue((long) cache.snapshot().get("bytes") <= 100);
+  }
+
+  @Test
+  public void testOversizedBodiesAreNotCached() {
+    SerializedResponseCache cache = cache(10, -1);
+    SerializedResponse response = cache.put("a", "v", repeat('x', 30));
+    Assert.assertEquals(32, response.size());
+    Assert.assertNull(cache.get("a", "v"));
+  }
+
+  @Test
+  public void testLargeBodiesAreGzipped() {
+    SerializedResponseCache cache = cache(1 << 20, 100);
+    String body = repeat('x', 1000);
+    SerializedResponse response = cache.put("a", "v", body);
+    Assert.assertTrue(response.isGzipped());
+    Assert.assertTrue(response.size() < 100);
+    Assert.assertEquals(
+        "\"" + body + "\"", new String(response.getJson(), StandardCharsets.UTF_8));
+    Assert.assertFalse(cache.put("b", "v", "small").isGzipped());
+  }
+}
@@ -0,0 +1,54 @@
+package mflix.api.services;
+
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TextSearchSnapshotsTest {
+
+  private final TextSearchSnapshots snapshots = new TextSearchSnapshots(10, 60, 50);
+  private final AtomicInteger rankings = new AtomicInteger();
+
+  private List<ObjectId> rank(int matches, int maxIds) {
+    rankings.incrementAndGet();
+    List<ObjectId> ids = new ArrayList<>();
+    for (int i = 0; i < Math.min(matches, maxIds); i++) {
+      ids.add(new ObjectId());
+    }
+    return ids;
+  }
+
+  @Test
+  public void testTokenReusesRanking() {
+    TextSearchSnapshots.Snapshot first = snapshots.get(null, "dark knight", max -> rank(30, max));
+    TextSearchSnapshots.Snapshot second =
+        snapshots.get(first.getToken(), "dark knight", max -> rank(30, max));
+    Assert.assertSame(first, second);
+    Assert.assertEquals(1, rankings.get());
+
+    snapshots.get(first.getToken(), "batman", max -> rank(30, max));
+    Assert.assertEquals("A token of another search should not be reused", 2, rankings.get());
+  }
+
+  @Test
+  public void testCompleteRankingCoversEveryPage() {
+    TextSearchSnapshots.Snapshot snapshot = snapshots.get(null, "dark", max -> rank(30, max));
+    Assert.assertEquals(30, snapshot.getCount());
+    Assert.assertTrue(snapshot.covers(20, 20));
+    Assert.assertEquals(10, snapshot.page(20, 20).size());
+    Assert.assertTrue(snapshot.covers(40, 20));
+    Assert.assertTrue(snapshot.page(40, 20).isEmpty());
+  }
+
+  @Test
+  public void testTruncatedRankingDoesNotCoverDeepPages() {
+    TextSearchSnapshots.Snapshot snapshot = snapshots.get(null, "the", max -> rank(500, max));
+    Assert.assertEquals(-1, snapshot.getCount());
+    Assert.assertTrue(snapshot.covers(40, 10));
+    Assert.assertFalse(snapshot.covers(40, 20));
+  }
+}
@@ -0,0 +1,69 @@
+package mflix.api.services;
+
+import mflix.api.models.Movie;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class TopMoviesFeedTest {
+
+  private TopMoviesFeed feed;
+
+  private static List<Movie> movies(String prefix, int count) {
+    List<Movie> movies = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Movie movie = new Movie();
+      movie.setTitle(prefix + i);
+      movies.add(movie);
+    }
+    return movies;
+  }
+
+  @Before
+  public void setUp() {
+    feed = new TopMoviesFeed(null, 10, 50);
+    feed.swap(
+        new TopMoviesFeed.Feed(
+            movies("top", 10),
+            5000,
+            Collections.singletonMap("Western", movies("western", 3)),
+            Collections.singletonMap("Western", 3L),
+            1000));
+  }
+
+  @Test
+  public void testPagesWithinDepth() {
+    Map<String, ?> first = feed.getPage(null, 4, 0);
+    Assert.assertEquals(5000L, first.get("movies_count"));
+    Assert.assertEquals("top0", ((List<Movie>) first.get("movies_list")).get(0).getTitle());
+
+    Map<String, ?> second = feed.getPage(null, 4, 1);
+    Assert.assertFalse(second.containsKey("movies_count"));
+    Assert.assertEquals("top4", ((List<Movie>) second.get("movies_list")).get(0).getTitle());
+    Assert.assertEquals(1000, feed.getRefreshedAt());
+  }
+
+  @Test
+  public void testPagesBeyondDepthMiss() {
+    Assert.assertNotNull(feed.getPage(null, 5, 1));
+    Assert.assertNull(feed.getPage(null, 4, 2));
+    Assert.assertNull(feed.getPage(null, 20, 0));
+    Assert.assertNull(new TopMoviesFeed(null, 10, 50).getPage(null, 4, 0));
+  }
+
+  @Test
+  public void testGenrePages() {
+    Map<String, ?> western = feed.getPage("Western", 2, 0);
+    Assert.assertEquals(3L, western.get("movies_count"));
+    Assert.assertEquals(2, ((List<?>) western.get("movies_list")).size());
+    // the genre has fewer movies than the depth, so the feed holds all of them
+    Assert.assertEquals(1, ((List<?>) feed.getPage("Western", 2, 1).get("movies_list")).size());
+    Assert.assertTrue(((List<?>) feed.getPage("Western", 2, 2).get("movies_list")).isEmpty());
+    Assert.assertNull(feed.getPage("Horror", 2, 0));
+  }
+}